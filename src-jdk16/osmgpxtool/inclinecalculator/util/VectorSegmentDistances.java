@@ -0,0 +1,52 @@
+package osmgpxtool.inclinecalculator.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Calculates the segment lengths with the Vector API, several segments per
+ * instruction. Uses the same haversine formula as
+ * {@link Util#calculateOrthometricDistance(double, double, double, double)},
+ * but the vectorized sin, cos and atan2 may differ from StrictMath in the
+ * last bits, so the results are only equal within a tolerance.
+ *
+ * Only compiled with JDK 16 and newer (profile "vector" of pom.xml) and
+ * needs --add-modules jdk.incubator.vector at runtime. Loaded by
+ * {@link SegmentDistances#create(osmgpxtool.inclinecalculator.InclineConfig)}.
+ *
+ */
+public class VectorSegmentDistances implements SegmentDistances {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final double R = 6371000; // metres
+	private static final double DEG_TO_RAD = Math.PI / 180;
+
+	@Override
+	public String getName() {
+		return VECTOR;
+	}
+
+	@Override
+	public void compute(double[] x, double[] y, int start, int end, double[] out) {
+		int n = end - start - 1;
+		int k = 0;
+		for (int upper = SPECIES.loopBound(n); k < upper; k += SPECIES.length()) {
+			int i = start + k;
+			DoubleVector lon1 = DoubleVector.fromArray(SPECIES, x, i).mul(DEG_TO_RAD);
+			DoubleVector lat1 = DoubleVector.fromArray(SPECIES, y, i).mul(DEG_TO_RAD);
+			DoubleVector lon2 = DoubleVector.fromArray(SPECIES, x, i + 1).mul(DEG_TO_RAD);
+			DoubleVector lat2 = DoubleVector.fromArray(SPECIES, y, i + 1).mul(DEG_TO_RAD);
+			DoubleVector sinDeltaLat = lat2.sub(lat1).mul(0.5).lanewise(VectorOperators.SIN);
+			DoubleVector sinDeltaLon = lon2.sub(lon1).mul(0.5).lanewise(VectorOperators.SIN);
+			DoubleVector cosLat = lat1.lanewise(VectorOperators.COS).mul(lat2.lanewise(VectorOperators.COS));
+			DoubleVector a = sinDeltaLat.mul(sinDeltaLat).add(cosLat.mul(sinDeltaLon).mul(sinDeltaLon));
+			DoubleVector c = a.sqrt().lanewise(VectorOperators.ATAN2, a.neg().add(1).sqrt()).mul(2 * R);
+			c.intoArray(out, k);
+		}
+		// remaining segments
+		for (; k < n; k++) {
+			int i = start + k;
+			out[k] = Util.calculateOrthometricDistance(x[i], y[i], x[i + 1], y[i + 1]);
+		}
+	}
+}
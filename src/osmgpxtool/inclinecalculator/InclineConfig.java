@@ -0,0 +1,464 @@
+package osmgpxtool.inclinecalculator;
+
+import java.util.Properties;
+
+import osmgpxtool.inclinecalculator.estimator.HuberEstimator;
+import osmgpxtool.inclinecalculator.estimator.TrimmedMeanEstimator;
+import osmgpxtool.inclinecalculator.estimator.WeightedMeanEstimator;
+import osmgpxtool.inclinecalculator.estimator.WeightedMedianEstimator;
+import osmgpxtool.inclinecalculator.gps.GeometryVariants;
+import osmgpxtool.inclinecalculator.gps.TraceDecimator;
+import osmgpxtool.inclinecalculator.kernel.BearingKernel;
+import osmgpxtool.inclinecalculator.kernel.InclineKernel;
+import osmgpxtool.inclinecalculator.kernel.InclineKernels;
+import osmgpxtool.inclinecalculator.linearref.LocalProjection;
+import osmgpxtool.inclinecalculator.util.SegmentDistances;
+
+import com.vividsolutions.jts.operation.buffer.BufferParameters;
+
+/**
+ * The settings of the properties file, parsed and validated once at startup.
+ * Invalid values are reported before any data is read.
+ *
+ * Names of tables and columns are only used to build the queries and are
+ * read with {@link #getProperty(String)}.
+ *
+ * An instance is immutable and can be shared between threads.
+ *
+ */
+public final class InclineConfig {
+	public static final String MODE_STREET = "street";
+	public static final String MODE_REGIONAL = "regional";
+	public static final String MODE_SERVER = "server";
+	public static final String MODE_VIRTUAL = "virtual";
+
+	private final Properties properties;
+
+	private final String executionMode;
+	private final GeometryVariants variants;
+	private final double bearingThreshold;
+	private final double minAlignment;
+	// buffer of the streets, either in meters or in degrees
+	private final double bufferMeters;
+	private final double bufferDistance;
+	private final int bufferCap;
+	private final double streetDensifyDistance;
+	private final double profileSectionLength;
+
+	private final String inclineKernel;
+	private final String inclineEstimator;
+	private final double estimatorTrimFraction;
+	private final double estimatorHuberK;
+	private final String segmentMath;
+	private final String decimation;
+	private final double decimationTolerance;
+
+	private final String pathToLidar;
+	private final String pathToSrtm;
+	private final String demCacheDir;
+
+	private final String region;
+	private final int regionWorkers;
+	private final int streetConnections;
+	private final int virtualConcurrency;
+	private final int serverParallelWorkers;
+	private final long insertTargetMillis;
+	private final boolean stagingTables;
+	private final String replayFile;
+	private final double replaySampleRate;
+
+	private InclineConfig(Properties p) {
+		properties = new Properties();
+		properties.putAll(p);
+
+		executionMode = getString(p, "executionMode", MODE_STREET);
+		if (!executionMode.equals(MODE_STREET) && !executionMode.equals(MODE_REGIONAL)
+				&& !executionMode.equals(MODE_SERVER) && !executionMode.equals(MODE_VIRTUAL)) {
+			throw new IllegalArgumentException("Wrong argument in properties file. The key \"executionMode\" must have value either \""
+					+ MODE_STREET + "\", \"" + MODE_REGIONAL + "\", \"" + MODE_SERVER + "\" or \"" + MODE_VIRTUAL + "\".");
+		}
+		variants = GeometryVariants.create(p);
+		bearingThreshold = getDouble(p, "bearingThreshold", null);
+		if (!(bearingThreshold >= 0 && bearingThreshold <= 90)) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"bearingThreshold\" must be between 0 and 90.");
+		}
+		minAlignment = Math.cos(Math.toRadians(bearingThreshold));
+
+		if (getString(p, "streetBufferMeters", null) != null) {
+			bufferMeters = getDouble(p, "streetBufferMeters", null);
+			bufferDistance = Double.NaN;
+			requirePositive(bufferMeters, "streetBufferMeters");
+		} else {
+			bufferDistance = getDouble(p, "streetBufferDistance", null);
+			bufferMeters = bufferDistance * LocalProjection.METERS_PER_DEGREE;
+			requirePositive(bufferDistance, "streetBufferDistance");
+		}
+		String cap = getString(p, "bufferCap", "CAP_ROUND");
+		if (cap.equals("CAP_FLAT")) {
+			bufferCap = BufferParameters.CAP_FLAT;
+		} else if (cap.equals("CAP_ROUND")) {
+			bufferCap = BufferParameters.CAP_ROUND;
+		} else {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"bufferCap\" must have value either \"CAP_ROUND\" or \"CAP_FLAT\".");
+		}
+		streetDensifyDistance = getDouble(p, "streetDensifyDistance", "0");
+		profileSectionLength = getDouble(p, "profileSectionLength", "0");
+		if (!(profileSectionLength >= 0)) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"profileSectionLength\" must not be negative.");
+		}
+
+		inclineKernel = getString(p, "inclineKernel", BearingKernel.NAME);
+		if (!InclineKernels.getNames().contains(inclineKernel) && !isKernelClass(inclineKernel)) {
+			throw new IllegalArgumentException("Wrong argument in properties file. The key \"inclineKernel\" must be one of "
+					+ InclineKernels.getNames() + " or the class name of a kernel.");
+		}
+		inclineEstimator = getString(p, "inclineEstimator", WeightedMeanEstimator.NAME);
+		if (!inclineEstimator.equals(WeightedMeanEstimator.NAME) && !inclineEstimator.equals(WeightedMedianEstimator.NAME)
+				&& !inclineEstimator.equals(TrimmedMeanEstimator.NAME) && !inclineEstimator.equals(HuberEstimator.NAME)) {
+			throw new IllegalArgumentException("Wrong argument in properties file. The key \"inclineEstimator\" must have value \""
+					+ WeightedMeanEstimator.NAME + "\", \"" + WeightedMedianEstimator.NAME + "\", \""
+					+ TrimmedMeanEstimator.NAME + "\" or \"" + HuberEstimator.NAME + "\".");
+		}
+		estimatorTrimFraction = getDouble(p, "estimatorTrimFraction", "0.1");
+		if (!(estimatorTrimFraction >= 0 && estimatorTrimFraction < 0.5)) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"estimatorTrimFraction\" must be at least 0 and less than 0.5.");
+		}
+		estimatorHuberK = getDouble(p, "estimatorHuberK", "1.345");
+		if (!(estimatorHuberK > 0)) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"estimatorHuberK\" must be positive.");
+		}
+		segmentMath = getString(p, "segmentMath", SegmentDistances.SCALAR);
+		if (!segmentMath.equals(SegmentDistances.SCALAR) && !segmentMath.equals(SegmentDistances.VECTOR)) {
+			throw new IllegalArgumentException("Wrong argument in properties file. The key \"segmentMath\" must have value either \""
+					+ SegmentDistances.SCALAR + "\" or \"" + SegmentDistances.VECTOR + "\".");
+		}
+		decimation = getString(p, "decimation", TraceDecimator.NONE);
+		if (!decimation.equals(TraceDecimator.NONE) && !decimation.equals(TraceDecimator.DISTANCE)
+				&& !decimation.equals(TraceDecimator.DOUGLAS_PEUCKER)) {
+			throw new IllegalArgumentException("Wrong argument in properties file. The key \"decimation\" must have value \""
+					+ TraceDecimator.NONE + "\", \"" + TraceDecimator.DISTANCE + "\" or \"" + TraceDecimator.DOUGLAS_PEUCKER
+					+ "\".");
+		}
+		decimationTolerance = getDouble(p, "decimationTolerance", "1");
+		if (!(decimationTolerance >= 0)) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"decimationTolerance\" must not be negative.");
+		}
+
+		pathToLidar = getString(p, "pathToLidar", null);
+		pathToSrtm = getString(p, "pathToSrtm", null);
+		demCacheDir = getString(p, "demCacheDir", null);
+		if ((pathToLidar != null || pathToSrtm != null) && !(streetDensifyDistance > 0)) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"streetDensifyDistance\" must be positive, if a DEM is set.");
+		}
+
+		region = getString(p, "region", null);
+		regionWorkers = getInt(p, "regionWorkers", Runtime.getRuntime().availableProcessors());
+		if (regionWorkers < 1) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"regionWorkers\" must be at least 1.");
+		}
+		streetConnections = getInt(p, "streetConnections", 1);
+		if (streetConnections < 1) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"streetConnections\" must be at least 1.");
+		}
+		// the tasks mostly wait for the database
+		virtualConcurrency = getInt(p, "virtualConcurrency", 2 * Runtime.getRuntime().availableProcessors());
+		if (virtualConcurrency < 1) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"virtualConcurrency\" must be at least 1.");
+		}
+		serverParallelWorkers = getInt(p, "serverParallelWorkers", -1);
+		insertTargetMillis = getInt(p, "insertTargetMillis", 500);
+		requirePositive(insertTargetMillis, "insertTargetMillis");
+		String staging = getString(p, "stagingTables", "false");
+		if (!staging.equals("true") && !staging.equals("false")) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"stagingTables\" must have value either \"true\" or \"false\".");
+		}
+		stagingTables = staging.equals("true");
+		replayFile = getString(p, "replayFile", null);
+		replaySampleRate = getDouble(p, "replaySampleRate", "0.01");
+		if (!(replaySampleRate >= 0 && replaySampleRate <= 1)) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"replaySampleRate\" must be between 0 and 1.");
+		}
+
+		if (executionMode.equals(MODE_SERVER)) {
+			// the server mode only implements the bearing kernel and the
+			// weighted mean of the first geometry variant, with one
+			// connection writing directly into the incline table
+			requireInServerMode(inclineKernel.equals(BearingKernel.NAME), "inclineKernel", BearingKernel.NAME);
+			requireInServerMode(inclineEstimator.equals(WeightedMeanEstimator.NAME), "inclineEstimator",
+					WeightedMeanEstimator.NAME);
+			requireInServerMode(decimation.equals(TraceDecimator.NONE), "decimation", TraceDecimator.NONE);
+			requireInServerMode(variants.size() == 1, "usedGeom", "a single geometry");
+			requireInServerMode(profileSectionLength <= 0, "profileSectionLength", "not set");
+			requireInServerMode(!stagingTables, "stagingTables", "false");
+			requireInServerMode(streetConnections == 1, "streetConnections", "1");
+		}
+	}
+
+	private static void requirePositive(double value, String key) {
+		if (!(value > 0)) {
+			throw new IllegalArgumentException("Wrong argument in properties file. The key \"" + key
+					+ "\" must be positive.");
+		}
+	}
+
+	/**
+	 * @return true, if name is the class name of an {@link InclineKernel}
+	 */
+	private static boolean isKernelClass(String name) {
+		if (name.indexOf('.') < 0) {
+			return false;
+		}
+		try {
+			return InclineKernel.class.isAssignableFrom(Class.forName(name));
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	private static void requireInServerMode(boolean supported, String key, String value) {
+		if (!supported) {
+			throw new IllegalArgumentException("Wrong argument in properties file. The key \"" + key
+					+ "\" must be " + value + " in the execution mode \"" + MODE_SERVER + "\".");
+		}
+	}
+
+	/**
+	 * Parses and validates the settings.
+	 *
+	 * @param p
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if a setting is missing or invalid
+	 */
+	public static InclineConfig create(Properties p) {
+		return new InclineConfig(p);
+	}
+
+	/**
+	 * @return the value or the default value, if the key is not set or empty
+	 */
+	private static String getString(Properties p, String key, String defaultValue) {
+		String value = p.getProperty(key);
+		if (value == null || value.trim().equals("")) {
+			return defaultValue;
+		}
+		return value.trim();
+	}
+
+	private static double getDouble(Properties p, String key, String defaultValue) {
+		String value = getString(p, key, defaultValue);
+		if (value == null) {
+			throw new IllegalArgumentException("The key \"" + key + "\" must be set in the properties file.");
+		}
+		try {
+			return Double.valueOf(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Wrong argument in properties file. The key \"" + key
+					+ "\" must be a number.");
+		}
+	}
+
+	private static int getInt(Properties p, String key, int defaultValue) {
+		String value = getString(p, key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.valueOf(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Wrong argument in properties file. The key \"" + key
+					+ "\" must be an integer.");
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return the unparsed value of the key, e.g. the name of a table or
+	 *         column
+	 */
+	public String getProperty(String key) {
+		return properties.getProperty(key);
+	}
+
+	public String getExecutionMode() {
+		return executionMode;
+	}
+
+	public GeometryVariants getVariants() {
+		return variants;
+	}
+
+	public double getBearingThreshold() {
+		return bearingThreshold;
+	}
+
+	/**
+	 * @return cosine of the bearing threshold
+	 */
+	public double getMinAlignment() {
+		return minAlignment;
+	}
+
+	/**
+	 * @return true, if the buffer width is given in meters
+	 *         ("streetBufferMeters")
+	 */
+	public boolean isMetricBuffer() {
+		return Double.isNaN(bufferDistance);
+	}
+
+	/**
+	 * @return width of the buffer in meters, converted from degrees of
+	 *         latitude if "streetBufferDistance" is used
+	 */
+	public double getBufferMeters() {
+		return bufferMeters;
+	}
+
+	/**
+	 * @return width of the buffer in degrees or NaN, if the buffer is given
+	 *         in meters
+	 */
+	public double getBufferDistance() {
+		return bufferDistance;
+	}
+
+	/**
+	 * @return {@link BufferParameters#CAP_ROUND} or
+	 *         {@link BufferParameters#CAP_FLAT}
+	 */
+	public int getBufferCap() {
+		return bufferCap;
+	}
+
+	public double getStreetDensifyDistance() {
+		return streetDensifyDistance;
+	}
+
+	/**
+	 * @return length of the profile sections in meters, 0 if no profiles are
+	 *         calculated
+	 */
+	public double getProfileSectionLength() {
+		return profileSectionLength;
+	}
+
+	public String getInclineKernel() {
+		return inclineKernel;
+	}
+
+	public String getInclineEstimator() {
+		return inclineEstimator;
+	}
+
+	public double getEstimatorTrimFraction() {
+		return estimatorTrimFraction;
+	}
+
+	public double getEstimatorHuberK() {
+		return estimatorHuberK;
+	}
+
+	/**
+	 * @return implementation of {@link SegmentDistances}, "scalar" or
+	 *         "vector"
+	 */
+	public String getSegmentMath() {
+		return segmentMath;
+	}
+
+	public String getDecimation() {
+		return decimation;
+	}
+
+	public double getDecimationTolerance() {
+		return decimationTolerance;
+	}
+
+	/**
+	 * @return path of the lidar DEM or null, if not set
+	 */
+	public String getPathToLidar() {
+		return pathToLidar;
+	}
+
+	/**
+	 * @return path of the srtm DEM or null, if not set
+	 */
+	public String getPathToSrtm() {
+		return pathToSrtm;
+	}
+
+	/**
+	 * @return directory of the DEM caches or null, if not set
+	 */
+	public String getDemCacheDir() {
+		return demCacheDir;
+	}
+
+	/**
+	 * @return region of the regional mode or null, if not set
+	 */
+	public String getRegion() {
+		return region;
+	}
+
+	public int getRegionWorkers() {
+		return regionWorkers;
+	}
+
+	public int getStreetConnections() {
+		return streetConnections;
+	}
+
+	/**
+	 * @return number of streets calculated at once in the virtual mode, each
+	 *         with its own connection
+	 */
+	public int getVirtualConcurrency() {
+		return virtualConcurrency;
+	}
+
+	/**
+	 * @return maximum number of parallel workers of the database or -1, if
+	 *         the setting of the database is used
+	 */
+	public int getServerParallelWorkers() {
+		return serverParallelWorkers;
+	}
+
+	public long getInsertTargetMillis() {
+		return insertTargetMillis;
+	}
+
+	/**
+	 * @return true, if the inclines are written into staging tables and
+	 *         merged at the end
+	 */
+	public boolean isStagingTables() {
+		return stagingTables;
+	}
+
+	/**
+	 * @return the replay file or null, if no replay is recorded
+	 */
+	public String getReplayFile() {
+		return replayFile;
+	}
+
+	public double getReplaySampleRate() {
+		return replaySampleRate;
+	}
+}
@@ -0,0 +1,288 @@
+package osmgpxtool.inclinecalculator;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import osmgpxtool.inclinecalculator.gps.GeometryVariants;
+import osmgpxtool.inclinecalculator.util.Util;
+
+/**
+ * Writes the results into the incline table with multi-row INSERT
+ * statements. Rows of a street that already exists are updated (ON CONFLICT,
+ * PostgreSQL 9.5 or later), results of the same street within a batch are
+ * reduced to the last one. Tables without primary key, e.g. staging tables
+ * (see {@link StagingTables}), and older servers are written with plain
+ * INSERT statements; there a second result of a street fails and is skipped.
+ *
+ * The batch size adapts to the measured duration of the statements: it is
+ * doubled while a batch takes less than half of the target duration and
+ * halved if it takes longer. A batch is at most as large as one statement. If a batch fails, it is bisected until the
+ * failing rows are found, which are logged and skipped.
+ *
+ * Expects a connection in auto commit mode and must only be used by one
+ * thread.
+ *
+ */
+class InclineWriter {
+	static Logger LOGGER = LoggerFactory.getLogger(InclineWriter.class);
+	private static final String COLUMNS = "street_id, street_length, nr_of_traces, incl_gps_std_dev, incline_gps, incline_estimator, incline_lidar, incline_srtm, delta_gps_lidar, delta_gps_srtm, delta_srtm_lidar, gps_length_used, street_coverage, nr_rejected_by_bearing, incline_gps_min, incline_gps_max, nr_points_dropped";
+	// the driver (9.1) sends the number of parameters as signed 16 bit
+	// integer and closes the connection if a statement has more
+	static final int MAX_PARAMETERS = 32767;
+	private static final int MIN_BATCH_SIZE = 50;
+	private static final int MAX_BATCH_SIZE = 20000;
+
+	private Connection con;
+	private String table;
+	private String columns;
+	private int numColumns;
+	private int maxRowsPerStatement;
+	private int maxBatchSize;
+	private int numVariants;
+	private String upsert;
+	private long targetMillis;
+	private int batchSize = 500;
+
+	private Map<Integer, StreetInclineResult> pending = new LinkedHashMap<Integer, StreetInclineResult>();
+	// prepared statement of the last used number of rows
+	private PreparedStatement insert;
+	private int insertRows;
+
+	private int rowsWritten;
+	private int rowsFailed;
+
+	/**
+	 * @param con
+	 * @param table
+	 *            incline table
+	 * @param targetMillis
+	 *            desired duration of writing one batch
+	 * @param upsert
+	 *            true, if existing rows are updated, which needs the primary
+	 *            key of the table and is ignored before PostgreSQL 9.5
+	 */
+	InclineWriter(Connection con, String table, GeometryVariants variants, long targetMillis, boolean upsert) {
+		this.con = con;
+		this.table = table;
+		this.targetMillis = targetMillis;
+		StringBuilder columnList = new StringBuilder(COLUMNS);
+		for (int v = 1; v < variants.size(); v++) {
+			columnList.append(", incline_gps").append(variants.getColumnSuffix(v));
+			columnList.append(", incl_gps_std_dev").append(variants.getColumnSuffix(v));
+		}
+		this.columns = columnList.toString();
+		this.numVariants = variants.size();
+		String[] names = columns.split(", ");
+		this.numColumns = names.length;
+		this.maxRowsPerStatement = getMaxRowsPerStatement(numColumns);
+		this.maxBatchSize = Math.min(MAX_BATCH_SIZE, maxRowsPerStatement);
+		this.batchSize = Math.min(batchSize, maxBatchSize);
+		if (upsert && !supportsUpsert(con)) {
+			LOGGER.warn("ON CONFLICT needs PostgreSQL 9.5 or later, existing rows of " + table + " are not updated.");
+			upsert = false;
+		}
+		if (upsert) {
+			StringBuilder sb = new StringBuilder(" ON CONFLICT (street_id) DO UPDATE SET ");
+			for (int i = 1; i < names.length; i++) {
+				if (i > 1) {
+					sb.append(", ");
+				}
+				sb.append(names[i]).append(" = EXCLUDED.").append(names[i]);
+			}
+			this.upsert = sb.toString();
+		} else {
+			this.upsert = "";
+		}
+	}
+
+	/**
+	 * @param numColumns
+	 * @return number of rows of a statement within {@link #MAX_PARAMETERS}
+	 */
+	static int getMaxRowsPerStatement(int numColumns) {
+		return MAX_PARAMETERS / numColumns;
+	}
+
+	/**
+	 * @return true, if the server supports INSERT ... ON CONFLICT
+	 */
+	private static boolean supportsUpsert(Connection con) {
+		try {
+			DatabaseMetaData meta = con.getMetaData();
+			int major = meta.getDatabaseMajorVersion();
+			return major > 9 || (major == 9 && meta.getDatabaseMinorVersion() >= 5);
+		} catch (SQLException e) {
+			LOGGER.warn("Could not read the version of the database: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Adds a result to the current batch and writes the batch, if it is full.
+	 *
+	 * @param r
+	 */
+	void write(StreetInclineResult r) {
+		pending.put(r.getStreetId(), r);
+		if (pending.size() >= batchSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes all pending results.
+	 */
+	void flush() {
+		if (pending.isEmpty()) {
+			return;
+		}
+		List<StreetInclineResult> rows = new ArrayList<StreetInclineResult>(pending.values());
+		pending.clear();
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < rows.size(); i += maxRowsPerStatement) {
+			writeRows(rows.subList(i, Math.min(rows.size(), i + maxRowsPerStatement)));
+		}
+		adaptBatchSize(System.currentTimeMillis() - start);
+	}
+
+	void adaptBatchSize(long millis) {
+		if (millis < targetMillis / 2 && batchSize < maxBatchSize) {
+			batchSize = Math.min(maxBatchSize, batchSize * 2);
+			LOGGER.debug("Batch size increased to " + batchSize);
+		} else if (millis > targetMillis && batchSize > MIN_BATCH_SIZE) {
+			batchSize = Math.max(MIN_BATCH_SIZE, batchSize / 2);
+			LOGGER.debug("Batch size decreased to " + batchSize);
+		}
+	}
+
+	/**
+	 * Writes the rows with one statement. If the statement fails, both halves
+	 * are written separately.
+	 */
+	private void writeRows(List<StreetInclineResult> rows) {
+		try {
+			PreparedStatement st = getStatement(rows.size());
+			int i = 1;
+			for (StreetInclineResult r : rows) {
+				i = setValues(st, i, r);
+			}
+			st.executeUpdate();
+			rowsWritten += rows.size();
+		} catch (SQLException e) {
+			if (rows.size() == 1) {
+				rowsFailed++;
+				LOGGER.error("Could not write the incline of street " + rows.get(0).getStreetId() + ": "
+						+ e.getMessage());
+			} else {
+				int half = rows.size() / 2;
+				writeRows(rows.subList(0, half));
+				writeRows(rows.subList(half, rows.size()));
+			}
+		}
+	}
+
+	private PreparedStatement getStatement(int rows) throws SQLException {
+		if (insert == null || insertRows != rows) {
+			if (insert != null) {
+				insert.close();
+			}
+			StringBuilder sb = new StringBuilder("INSERT INTO ").append(table).append(" (").append(columns)
+					.append(") VALUES ");
+			for (int r = 0; r < rows; r++) {
+				sb.append(r == 0 ? "(" : ",(");
+				for (int c = 0; c < numColumns; c++) {
+					sb.append(c == 0 ? "?" : ",?");
+				}
+				sb.append(')');
+			}
+			sb.append(upsert).append(';');
+			insert = con.prepareStatement(sb.toString());
+			insertRows = rows;
+		}
+		return insert;
+	}
+
+	/**
+	 * Sets the values of a row, starting with parameter i.
+	 *
+	 * @return index of the first parameter of the next row
+	 */
+	private int setValues(PreparedStatement st, int i, StreetInclineResult r) throws SQLException {
+		double inclineGps = r.getInclineGps();
+		double inclineLidar = r.getInclineLidar();
+		double inclineSrtm = r.getInclineSrtm();
+		st.setInt(i++, r.getStreetId());
+		st.setDouble(i++, r.getStreetLength());
+		st.setInt(i++, r.getNrOfTraces());
+		if (!Double.isNaN(r.getInclineGpsStdDev())) {
+			st.setDouble(i++, r.getInclineGpsStdDev());
+		} else {
+			st.setNull(i++, java.sql.Types.DOUBLE);
+		}
+		st.setDouble(i++, inclineGps);
+		st.setString(i++, r.getEstimator());
+		st.setDouble(i++, inclineLidar);
+		st.setDouble(i++, inclineSrtm);
+		st.setDouble(i++, Util.round(inclineGps - inclineLidar, 7));
+		st.setDouble(i++, Util.round(inclineGps - inclineSrtm, 7));
+		st.setDouble(i++, Util.round(inclineSrtm - inclineLidar, 7));
+		st.setDouble(i++, r.getGpsLengthUsed());
+		st.setDouble(i++, r.getStreetCoverage());
+		st.setInt(i++, r.getNrRejectedByBearing());
+		st.setDouble(i++, r.getInclineGpsMin());
+		st.setDouble(i++, r.getInclineGpsMax());
+		st.setInt(i++, r.getNrPointsDropped());
+		for (int v = 1; v < numVariants; v++) {
+			setDoubleOrNull(st, i++, r.getVariantInclineGps(v));
+			setDoubleOrNull(st, i++, r.getVariantStdDev(v));
+		}
+		return i;
+	}
+
+	private static void setDoubleOrNull(PreparedStatement st, int i, double value) throws SQLException {
+		if (Double.isNaN(value)) {
+			st.setNull(i, java.sql.Types.DOUBLE);
+		} else {
+			st.setDouble(i, value);
+		}
+	}
+
+	/**
+	 * Writes the pending results and closes the statement.
+	 */
+	void close() {
+		flush();
+		if (insert != null) {
+			try {
+				insert.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		LOGGER.info(rowsWritten + " inclines written, " + rowsFailed + " failed.");
+	}
+
+	/**
+	 * @return number of results that could not be written
+	 */
+	int getRowsFailed() {
+		return rowsFailed;
+	}
+
+	int getBatchSize() {
+		return batchSize;
+	}
+
+	int getNumColumns() {
+		return numColumns;
+	}
+}
@@ -33,7 +33,8 @@ public class Main {
 			System.exit(-1);
 		}
 		parseArguments(args, props);
-		dbConnection = getDbConnection(props);
+		dbConnection = getDbConnection(props.getProperty("dbHost"), props.getProperty("dbName"),
+				props.getProperty("dbUser"), props.getProperty("dbPassword"));
 
 		InclineCalculator calc = new InclineCalculator(dbConnection, props);
 		calc.init();
@@ -110,16 +111,16 @@ public class Main {
 	 * 
 	 * @throws ClassNotFoundException
 	 */
-	private static Connection getDbConnection(Properties props) throws ClassNotFoundException {
+	static Connection getDbConnection(String host, String name, String user, String password)
+			throws ClassNotFoundException {
 
 		// load driver
 		Class.forName("org.postgresql.Driver");
 		Connection dbConnection = null;
-		String url = "jdbc:postgresql://" + props.getProperty("dbHost") + "/" + props.getProperty("dbName");
+		String url = "jdbc:postgresql://" + host + "/" + name;
 		try {
 
-			dbConnection = DriverManager.getConnection(url, props.getProperty("dbUser"),
-					props.getProperty("dbPassword"));
+			dbConnection = DriverManager.getConnection(url, user, password);
 			dbConnection.setAutoCommit(true);
 		} catch (SQLException ex) {
 			LOGGER.error("Could not connect to database");
@@ -0,0 +1,338 @@
+package osmgpxtool.inclinecalculator;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import osmgpxtool.inclinecalculator.datasource.DataSourceException;
+import osmgpxtool.inclinecalculator.datasource.GPSDataSource;
+import osmgpxtool.inclinecalculator.datasource.StreetDataSource;
+import osmgpxtool.inclinecalculator.datasource.StreetSource;
+import osmgpxtool.inclinecalculator.datasource.TraceSource;
+import osmgpxtool.inclinecalculator.dem.DemInclineCalculator;
+import osmgpxtool.inclinecalculator.gps.GpsTracePart;
+import osmgpxtool.inclinecalculator.kernel.ReplayRecorder;
+import osmgpxtool.inclinecalculator.util.ConcurrentProgress;
+
+/**
+ * Street execution mode with several connections: the streets are split into
+ * ranges of ids (see {@link StreetDataSource#getIdRanges}) and each range is
+ * processed by a reader thread with its own connection, so the database
+ * clips the traces of several streets at once in separate backends. The
+ * results of all readers are written by the calling thread with the main
+ * connection, or with "stagingTables=true" by each reader into its own
+ * staging table (see {@link StagingTables}).
+ *
+ * If a reader fails, the run is aborted, as the streets of its range would
+ * be missing in the incline table. This includes database errors of the
+ * sources, which throw a {@link DataSourceException}.
+ *
+ * The streets and traces of the readers are opened by {@link Sources}, by
+ * default from the database (see {@link DatabaseSources}).
+ *
+ */
+class PartitionedRunner {
+	static Logger LOGGER = LoggerFactory.getLogger(PartitionedRunner.class);
+	// marks the end of the results of a reader
+	private static final StreetInclineResult END = new StreetInclineResult(-1, 0);
+
+	private InclineConfig config;
+	private Sources sources;
+	private InclineCalculator writer;
+	private int numConnections;
+
+	PartitionedRunner(Connection con, InclineConfig config, InclineCalculator writer, int numConnections) {
+		this(config, new DatabaseSources(con, config, writer), writer, numConnections);
+	}
+
+	PartitionedRunner(InclineConfig config, Sources sources, InclineCalculator writer, int numConnections) {
+		this.config = config;
+		this.sources = sources;
+		this.writer = writer;
+		this.numConnections = numConnections;
+	}
+
+	/**
+	 * Opens the streets and traces of the readers.
+	 */
+	interface Sources {
+
+		/**
+		 * @return the first id of each range in ascending order, see
+		 *         {@link StreetDataSource#getIdRanges}
+		 */
+		int[] getIdRanges(int numRanges) throws SQLException;
+
+		int countStreets() throws SQLException;
+
+		/**
+		 * Opens the sources of the streets with minId &lt;= id &lt; maxId.
+		 *
+		 * @param minId
+		 *            null for no lower bound
+		 * @param maxId
+		 *            null for no upper bound
+		 */
+		ReaderSources open(Integer minId, Integer maxId) throws ClassNotFoundException, SQLException;
+	}
+
+	/**
+	 * The sources of one reader, only used by its thread.
+	 */
+	interface ReaderSources {
+		StreetSource getStreets();
+
+		TraceSource getTraces();
+
+		/**
+		 * @return the writer of the staging table of the reader or null, if
+		 *         the results are written by the calling thread
+		 */
+		InclineWriter getStage();
+
+		/**
+		 * Closes the staging writer and the connection.
+		 */
+		void close();
+	}
+
+	/**
+	 * Sources querying the database, with a connection per reader.
+	 */
+	static class DatabaseSources implements Sources {
+		private Connection con;
+		private InclineConfig config;
+		private InclineCalculator writer;
+
+		DatabaseSources(Connection con, InclineConfig config, InclineCalculator writer) {
+			this.con = con;
+			this.config = config;
+			this.writer = writer;
+		}
+
+		@Override
+		public int[] getIdRanges(int numRanges) throws SQLException {
+			return StreetDataSource.getIdRanges(con, config, numRanges);
+		}
+
+		@Override
+		public int countStreets() throws SQLException {
+			return StreetDataSource.countStreets(con, config);
+		}
+
+		@Override
+		public ReaderSources open(Integer minId, Integer maxId) throws ClassNotFoundException, SQLException {
+			final Connection readerCon = Main.getDbConnection(config.getProperty("dbHost"),
+					config.getProperty("dbName"), config.getProperty("dbUser"), config.getProperty("dbPassword"));
+			final InclineWriter stage;
+			final StreetSource streets;
+			final TraceSource traces;
+			try {
+				stage = writer.createWorkerWriter(readerCon);
+				streets = new StreetDataSource(readerCon, config, minId, maxId);
+				traces = new GPSDataSource(readerCon, config);
+			} catch (SQLException | RuntimeException e) {
+				readerCon.close();
+				throw e;
+			}
+			return new ReaderSources() {
+				@Override
+				public StreetSource getStreets() {
+					return streets;
+				}
+
+				@Override
+				public TraceSource getTraces() {
+					return traces;
+				}
+
+				@Override
+				public InclineWriter getStage() {
+					return stage;
+				}
+
+				@Override
+				public void close() {
+					if (stage != null) {
+						stage.close();
+					}
+					try {
+						readerCon.close();
+					} catch (SQLException e) {
+						e.printStackTrace();
+					}
+				}
+			};
+		}
+	}
+
+	public void run() {
+		int[] starts = null;
+		try {
+			starts = sources.getIdRanges(numConnections);
+		} catch (SQLException e) {
+			LOGGER.error("Could not split the streets into id ranges.");
+			e.printStackTrace();
+			System.exit(1);
+		}
+		int readers = starts.length;
+		LOGGER.info("Calculating inclines with " + readers + " connections.");
+
+		// DEMs for validation, if not set do not init
+		DemInclineCalculator demCalculator = new DemInclineCalculator(config);
+		BlockingQueue<StreetInclineResult> results = new ArrayBlockingQueue<StreetInclineResult>(10000);
+		ReplayRecorder recorder = ReplayRecorder.create(config);
+		ConcurrentProgress pr = new ConcurrentProgress(5);
+		try {
+			pr.start(sources.countStreets());
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		ExecutorService pool = Executors.newFixedThreadPool(readers);
+		for (int i = 0; i < readers; i++) {
+			Integer[] range = getIdRange(starts, i);
+			StreetProcessor processor = new StreetProcessor(config, demCalculator.createWorker());
+			processor.setRecorder(recorder);
+			pool.execute(new Reader(range[0], range[1], processor, pr, results, failure));
+		}
+		pool.shutdown();
+
+		// single writer
+		int finished = 0;
+		while (finished < readers) {
+			StreetInclineResult result;
+			try {
+				result = results.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			if (result == END) {
+				finished++;
+				if (failure.get() != null) {
+					LOGGER.error("Calculation aborted, because a reader failed.");
+					pool.shutdownNow();
+					System.exit(1);
+				}
+			} else if (config.isStagingTables()) {
+				// incline written by the reader
+				writer.writeProfile(result);
+			} else {
+				writer.write(result);
+			}
+			if (pr.pollReport()) {
+				LOGGER.info(pr.getProgressMessage());
+			}
+		}
+		try {
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		LOGGER.info(pr.getProgressMessage());
+		demCalculator.close();
+		if (recorder != null) {
+			recorder.close();
+		}
+	}
+
+	/**
+	 * Returns the id range of reader i, minId &lt;= id &lt; maxId (see
+	 * {@link StreetDataSource#StreetDataSource(Connection, InclineConfig, Integer, Integer)}).
+	 * The first range has no lower and the last range no upper bound, so all
+	 * ids are covered, also of streets added after the split.
+	 *
+	 * @param starts
+	 *            first id of each range in ascending order, see
+	 *            {@link StreetDataSource#getIdRanges}
+	 * @param i
+	 * @return minId and maxId, null if unbounded
+	 */
+	static Integer[] getIdRange(int[] starts, int i) {
+		Integer minId = i == 0 ? null : starts[i];
+		Integer maxId = i == starts.length - 1 ? null : starts[i + 1];
+		return new Integer[] { minId, maxId };
+	}
+
+	/**
+	 * Queries the streets of one id range and their traces with its own
+	 * connection and calculates their inclines.
+	 */
+	private class Reader implements Runnable {
+		private Integer minId;
+		private Integer maxId;
+		private StreetProcessor processor;
+		private ConcurrentProgress pr;
+		private BlockingQueue<StreetInclineResult> results;
+		// set to the first error of any reader
+		private AtomicReference<Throwable> failure;
+
+		Reader(Integer minId, Integer maxId, StreetProcessor processor, ConcurrentProgress pr,
+				BlockingQueue<StreetInclineResult> results, AtomicReference<Throwable> failure) {
+			this.minId = minId;
+			this.maxId = maxId;
+			this.processor = processor;
+			this.pr = pr;
+			this.results = results;
+			this.failure = failure;
+		}
+
+		@Override
+		public void run() {
+			ReaderSources readerSources = null;
+			try {
+				readerSources = sources.open(minId, maxId);
+				InclineWriter stage = readerSources.getStage();
+				StreetSource streets = readerSources.getStreets();
+				TraceSource gpsSource = readerSources.getTraces();
+				while (streets.hasNext()) {
+					pr.increment();
+					StreetSegment s = streets.getCurrentStreet();
+					if (s == null) {
+						continue;
+					}
+					List<GpsTracePart> traces = gpsSource.getClippedTracesWithinBufferOf(s);
+					StreetInclineResult result = processor.process(s, traces);
+					if (result == null) {
+						continue;
+					}
+					if (stage != null) {
+						stage.write(result);
+						if (result.hasProfile()) {
+							results.put(result);
+						}
+					} else {
+						results.put(result);
+					}
+				}
+			} catch (InterruptedException e) {
+				failure.compareAndSet(null, e);
+				Thread.currentThread().interrupt();
+			} catch (ClassNotFoundException | SQLException | RuntimeException e) {
+				LOGGER.error("Reader of the streets " + minId + " to " + maxId + " failed.");
+				e.printStackTrace();
+				failure.compareAndSet(null, e);
+			} finally {
+				if (readerSources != null) {
+					readerSources.close();
+				}
+				try {
+					results.put(END);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package osmgpxtool.inclinecalculator;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import osmgpxtool.inclinecalculator.datasource.RegionalDataSource;
+import osmgpxtool.inclinecalculator.dem.DemInclineCalculator;
+import osmgpxtool.inclinecalculator.gps.GpsTracePart;
+import osmgpxtool.inclinecalculator.kernel.ReplayRecorder;
+import osmgpxtool.inclinecalculator.linearref.StreetMeasure;
+import osmgpxtool.inclinecalculator.linearref.TraceClipper;
+import osmgpxtool.inclinecalculator.util.ConcurrentProgress;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+
+import com.vividsolutions.jts.operation.buffer.BufferParameters;
+
+/**
+ * Regional execution mode: loads all data of a region into memory (see
+ * {@link RegionalDataSource}) and calculates the inclines of its streets with
+ * parallel workers. The traces are clipped to the surrounding of each street
+ * in memory, there is no database call per street. The results are written
+ * by the calling thread, which is the only one using the connection.
+ *
+ * If a worker fails, the run is aborted, as the streets it would have
+ * processed would be missing in the incline table.
+ *
+ */
+class RegionalRunner {
+	static Logger LOGGER = LoggerFactory.getLogger(RegionalRunner.class);
+	// marks the end of the results of a worker
+	private static final StreetInclineResult END = new StreetInclineResult(-1, 0);
+
+	private Connection con;
+	private InclineConfig config;
+	private InclineCalculator writer;
+
+	RegionalRunner(Connection con, InclineConfig config, InclineCalculator writer) {
+		this.con = con;
+		this.config = config;
+		this.writer = writer;
+	}
+
+	public void run() {
+		RegionalDataSource data = new RegionalDataSource(con, config);
+		try {
+			data.load();
+		} catch (SQLException e) {
+			LOGGER.error("Could not load the data of the region.");
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+		int workers = config.getRegionWorkers();
+		LOGGER.info("Calculating inclines with " + workers + " workers.");
+
+		// DEMs for validation, if not set do not init
+		DemInclineCalculator demCalculator = new DemInclineCalculator(config);
+		BlockingQueue<StreetInclineResult> results = new ArrayBlockingQueue<StreetInclineResult>(10000);
+		AtomicInteger nextStreet = new AtomicInteger();
+		ConcurrentProgress pr = new ConcurrentProgress(5);
+		pr.start(data.getNumStreets());
+
+		ReplayRecorder recorder = ReplayRecorder.create(config);
+
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		for (int i = 0; i < workers; i++) {
+			StreetProcessor processor = new StreetProcessor(config, demCalculator.createWorker());
+			processor.setRecorder(recorder);
+			pool.execute(new Worker(data, processor, nextStreet, pr, results, failure));
+		}
+		pool.shutdown();
+
+		// single writer
+		int finished = 0;
+		while (finished < workers) {
+			StreetInclineResult result;
+			try {
+				result = results.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			if (result == END) {
+				finished++;
+				if (failure.get() != null) {
+					LOGGER.error("Calculation aborted, because a worker failed.");
+					pool.shutdownNow();
+					System.exit(1);
+				}
+			} else {
+				writer.write(result);
+			}
+			if (pr.pollReport()) {
+				LOGGER.info(pr.getProgressMessage());
+			}
+		}
+		try {
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		LOGGER.info(pr.getProgressMessage());
+		demCalculator.close();
+		if (recorder != null) {
+			recorder.close();
+		}
+	}
+
+	/**
+	 * Takes the next street, clips its matched traces and calculates its
+	 * incline, until all streets are processed.
+	 */
+	private class Worker implements Runnable {
+		private RegionalDataSource data;
+		private StreetProcessor processor;
+		private AtomicInteger nextStreet;
+		private ConcurrentProgress pr;
+		private BlockingQueue<StreetInclineResult> results;
+		// set to the first error of any worker
+		private AtomicReference<Throwable> failure;
+
+		private StreetMeasure streetMeasure = new StreetMeasure();
+		private TraceClipper clipper;
+		// clipped geometries, reused between streets
+		private List<CoordinateBuffer> buffers = new ArrayList<CoordinateBuffer>();
+		private int usedBuffers;
+
+		Worker(RegionalDataSource data, StreetProcessor processor, AtomicInteger nextStreet, ConcurrentProgress pr,
+				BlockingQueue<StreetInclineResult> results, AtomicReference<Throwable> failure) {
+			this.data = data;
+			this.processor = processor;
+			this.nextStreet = nextStreet;
+			this.pr = pr;
+			this.results = results;
+			this.failure = failure;
+			this.clipper = new TraceClipper(config.getBufferMeters(),
+					config.getBufferCap() == BufferParameters.CAP_FLAT);
+		}
+
+		@Override
+		public void run() {
+			try {
+				int i;
+				while ((i = nextStreet.getAndIncrement()) < data.getNumStreets()) {
+					pr.increment();
+					StreetSegment s = data.getStreet(i);
+					StreetInclineResult result = processor.process(s, getClippedTraces(i, s));
+					if (result != null) {
+						results.put(result);
+					}
+				}
+			} catch (InterruptedException e) {
+				failure.compareAndSet(null, e);
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				LOGGER.error("Worker failed.");
+				e.printStackTrace();
+				failure.compareAndSet(null, e);
+			} finally {
+				try {
+					results.put(END);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		private List<GpsTracePart> getClippedTraces(int streetIndex, StreetSegment s) {
+			List<GpsTracePart> traces = new ArrayList<GpsTracePart>();
+			usedBuffers = 0;
+			streetMeasure.setStreet(s.getCoordinates(), s.getNumPoints());
+			clipper.setStreet(streetMeasure);
+			for (int m = data.getMatchStart(streetIndex); m < data.getMatchEnd(streetIndex); m++) {
+				int first = data.getFirstPart(m);
+				if (first < 0) {
+					continue;
+				}
+				int part = first;
+				do {
+					// the first variant decides, whether the part is within
+					// the buffer
+					CoordinateBuffer geom = nextBuffer();
+					if (clipper.clip(data.getGeom(part, 0), geom)) {
+						CoordinateBuffer[] geoms = new CoordinateBuffer[data.getNumVariants()];
+						geoms[0] = geom;
+						for (int v = 1; v < geoms.length; v++) {
+							geoms[v] = nextBuffer();
+							if (!clipper.clip(data.getGeom(part, v), geoms[v])) {
+								geoms[v] = null;
+							}
+						}
+						traces.add(new GpsTracePart(data.getGpxId(part), data.getTrkId(part), data.getPartId(part),
+								geoms));
+					} else {
+						usedBuffers--;
+					}
+					part++;
+				} while (data.isSameTrace(part, first));
+			}
+			return traces;
+		}
+
+		private CoordinateBuffer nextBuffer() {
+			if (usedBuffers == buffers.size()) {
+				buffers.add(new CoordinateBuffer());
+			}
+			return buffers.get(usedBuffers++);
+		}
+	}
+}
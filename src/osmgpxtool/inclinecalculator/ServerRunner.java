@@ -0,0 +1,240 @@
+package osmgpxtool.inclinecalculator;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import osmgpxtool.inclinecalculator.estimator.WeightedMeanEstimator;
+import osmgpxtool.inclinecalculator.kernel.BearingKernel;
+
+import com.vividsolutions.jts.operation.buffer.BufferParameters;
+
+/**
+ * Server execution mode: calculates the gps inclines of all streets in the
+ * database with set-based statements, so no geometry is transferred to the
+ * client. The statements follow {@link BearingKernel} and the weighted mean,
+ * in stages, each creating an unlogged table "&lt;incline table&gt;_server_&lt;stage&gt;":
+ * <ul>
+ * <li>streets: buffer, direction and length of each street,</li>
+ * <li>lines: the matched traces clipped to the buffer of each street and
+ * split into lines,</li>
+ * <li>line_sign: incline, length and direction of each line, compared with
+ * the direction of its street and bearingThreshold,</li>
+ * <li>agg: the inclines of the used lines aggregated per street,</li>
+ * <li>result: the row of the incline table per street.</li>
+ * </ul>
+ *
+ * The segments of streets and lines are enumerated with generate_series and
+ * ST_PointN. Neither common table expressions nor window functions are used,
+ * because PostgreSQL materializes the former and does not run either in
+ * parallel workers. Each stage is analyzed, so the next one is planned with
+ * the real row counts. The stages are created as tables, as PostgreSQL only
+ * runs statements creating a table, but not INSERT, as parallel query. They
+ * are unlogged instead of temporary tables, because parallel workers never
+ * scan temporary tables. The stages are dropped at the end, also if a
+ * statement fails.
+ *
+ * DEM inclines, the street coverage and the section profiles are not
+ * calculated in this mode. Settings of other kernels, estimators, geometry
+ * variants, decimation, profiles, staging tables and several connections
+ * are rejected by {@link InclineConfig}.
+ * The Java execution modes remain the reference for result checks.
+ *
+ */
+class ServerRunner {
+	static Logger LOGGER = LoggerFactory.getLogger(ServerRunner.class);
+	private static final String[] STAGES = { "streets", "lines", "line_sign", "agg", "result" };
+
+	private Connection con;
+	private InclineConfig config;
+	private String table;
+	// prefix of the tables of the stages
+	private String prefix;
+
+	ServerRunner(Connection con, InclineConfig config, String table) {
+		this.con = con;
+		this.config = config;
+		this.table = table;
+		this.prefix = table + "_server_";
+	}
+
+	public void run() {
+		if (config.getPathToLidar() != null || config.getPathToSrtm() != null) {
+			LOGGER.warn("DEM inclines are not calculated in the server mode.");
+		}
+		boolean failed = false;
+		Statement s = null;
+		try {
+			s = con.createStatement();
+			if (config.getServerParallelWorkers() >= 0) {
+				s.execute("SET max_parallel_workers_per_gather = " + config.getServerParallelWorkers() + ";");
+			}
+			long start = System.currentTimeMillis();
+			dropStages(s);
+			String[] queries = buildQueries();
+			for (int i = 0; i < STAGES.length; i++) {
+				long stageStart = System.currentTimeMillis();
+				s.execute(queries[i]);
+				s.execute("ANALYZE " + prefix + STAGES[i] + ";");
+				LOGGER.info("Stage " + STAGES[i] + " calculated in " + (System.currentTimeMillis() - stageStart)
+						+ " ms.");
+			}
+			int rows = s.executeUpdate("INSERT INTO " + table
+					+ " (street_id, street_length, nr_of_traces, incl_gps_std_dev, incline_gps, incline_estimator, incline_lidar, incline_srtm, delta_gps_lidar, delta_gps_srtm, delta_srtm_lidar, gps_length_used, street_coverage, nr_rejected_by_bearing, incline_gps_min, incline_gps_max, nr_points_dropped)"
+					+ " SELECT street_id, street_length, nr_of_traces, incl_gps_std_dev, incline_gps, incline_estimator, 'NaN', 'NaN', 'NaN', 'NaN', 'NaN', gps_length_used, NULL, nr_rejected_by_bearing, incline_gps_min, incline_gps_max, 0 FROM "
+					+ prefix + "result;");
+			LOGGER.info("Inclines of " + rows + " streets calculated in the database in "
+					+ (System.currentTimeMillis() - start) / 1000 + " s.");
+		} catch (SQLException e) {
+			LOGGER.error("Could not calculate the inclines in the database.");
+			e.printStackTrace();
+			failed = true;
+		} finally {
+			if (s != null) {
+				try {
+					dropStages(s);
+					s.close();
+				} catch (SQLException e) {
+					LOGGER.error("Could not drop the tables of the stages.");
+					e.printStackTrace();
+				}
+			}
+		}
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	private void dropStages(Statement s) throws SQLException {
+		for (int i = STAGES.length - 1; i >= 0; i--) {
+			s.execute("DROP TABLE IF EXISTS " + prefix + STAGES[i] + ";");
+		}
+	}
+
+	/**
+	 * Builds the statements creating the unlogged tables of the stages in
+	 * order of {@link #STAGES}. All values are inserted as literals, as
+	 * parameters are not supported by CREATE TABLE AS.
+	 *
+	 * @return
+	 */
+	String[] buildQueries() {
+		String usedCol = config.getVariants().getColumn(0);
+		double minAlignment = config.getMinAlignment();
+		String streetId = config.getProperty("t_streetIdCol");
+		String streetGeom = config.getProperty("t_streetGeomCol");
+
+		String streets = "CREATE UNLOGGED TABLE " + prefix + "streets AS"
+				+ " SELECT s." + streetId + " AS street_id, " + bufferExpression("s." + streetGeom) + " AS buf, d.e, d.n, d.len"
+				+ " FROM " + config.getProperty("t_streetName") + " s JOIN"
+				// direction and length of the streets
+				+ " (SELECT street_id, " + directionColumns() + ", round(sum(" + haversine() + ")::numeric, 2)::float8 AS len"
+				+ " FROM (SELECT t." + streetId + " AS street_id, " + segmentColumns("t." + streetGeom, "")
+				+ " FROM " + config.getProperty("t_streetName") + " t, " + segmentSeries("t." + streetGeom) + ") seg"
+				+ " GROUP BY street_id) d ON d.street_id = s." + streetId + ";";
+
+		// matched traces clipped to the buffers, split into lines
+		String lines = "CREATE UNLOGGED TABLE " + prefix + "lines AS"
+				+ " SELECT street_id, gpx_id, trk_id, part_id, (d).path AS path, (d).geom AS geom"
+				+ " FROM (SELECT sg." + config.getProperty("t_mmStreetIdCol") + " AS street_id, g."
+				+ config.getProperty("t_PpGpxIdCol") + " AS gpx_id, g." + config.getProperty("t_PpGpxTrkIdCol")
+				+ " AS trk_id, g." + config.getProperty("t_PpGpxPartIdCol") + " AS part_id, ST_Dump(ST_Intersection(g."
+				+ usedCol + ", s.buf)) AS d FROM " + config.getProperty("t_mmName") + " sg JOIN "
+				+ config.getProperty("t_PpGpxName") + " g ON sg." + config.getProperty("t_mmGpxIdCol") + " = g."
+				+ config.getProperty("t_PpGpxIdCol") + " AND sg." + config.getProperty("t_mmTrkIdCol") + " = g."
+				+ config.getProperty("t_PpGpxTrkIdCol") + " JOIN " + prefix + "streets s ON s.street_id = sg."
+				+ config.getProperty("t_mmStreetIdCol") + " WHERE ST_Intersects(g." + config.getProperty("t_PpGpxGeomCol")
+				+ ", s.buf)) c;";
+
+		// incline, length and direction of the lines, compared with the
+		// direction of the street
+		String lineSign = "CREATE UNLOGGED TABLE " + prefix + "line_sign AS"
+				+ " SELECT ls.street_id, ls.len, CASE WHEN ls.len > 0 THEN ls.dh100 / ls.len END AS incl,"
+				+ " CASE WHEN ls.len = 0 THEN 0"
+				+ " WHEN d.e * ls.e + d.n * ls.n > " + minAlignment
+				+ " * sqrt((d.e ^ 2 + d.n ^ 2) * (ls.e ^ 2 + ls.n ^ 2)) THEN 1"
+				+ " WHEN d.e * ls.e + d.n * ls.n < " + (-minAlignment)
+				+ " * sqrt((d.e ^ 2 + d.n ^ 2) * (ls.e ^ 2 + ls.n ^ 2)) THEN -1 ELSE 0 END AS sign"
+				+ " FROM (SELECT street_id, " + directionColumns() + ", round(sum(dis)::numeric, 2)::float8 AS len,"
+				+ " sum(CASE WHEN dis > 0 THEN dh * 100 ELSE 0 END) AS dh100"
+				+ " FROM (SELECT street_id, gpx_id, trk_id, part_id, path, lon1, lat1, lon2, lat2, dh, " + haversine() + " AS dis"
+				+ " FROM (SELECT l.street_id, l.gpx_id, l.trk_id, l.part_id, l.path, "
+				+ segmentColumns("l.geom", ", ST_Z(ST_PointN(l.geom, i + 1)) - ST_Z(ST_PointN(l.geom, i)) AS dh")
+				+ " FROM " + prefix + "lines l, " + segmentSeries("l.geom")
+				+ " WHERE ST_GeometryType(l.geom) = 'ST_LineString') seg) sd"
+				+ " GROUP BY street_id, gpx_id, trk_id, part_id, path) ls"
+				+ " JOIN " + prefix + "streets d ON d.street_id = ls.street_id;";
+
+		// aggregation of the used lines per street
+		String agg = "CREATE UNLOGGED TABLE " + prefix + "agg AS"
+				+ " SELECT street_id, sum(CASE WHEN sign <> 0 THEN 1 ELSE 0 END) AS n,"
+				+ " sum(CASE WHEN sign <> 0 THEN len ELSE 0 END) AS sw,"
+				+ " sum(CASE WHEN sign <> 0 THEN sign * incl * len ELSE 0 END) AS sil,"
+				+ " min(CASE WHEN sign <> 0 THEN sign * incl END) AS mn, max(CASE WHEN sign <> 0 THEN sign * incl END) AS mx,"
+				+ " sum(CASE WHEN sign = 0 THEN 1 ELSE 0 END) AS r"
+				+ " FROM " + prefix + "line_sign GROUP BY street_id;";
+
+		String result = "CREATE UNLOGGED TABLE " + prefix + "result AS"
+				+ " SELECT a.street_id, d.len AS street_length, t.nr::integer AS nr_of_traces,"
+				+ " CASE WHEN a.n > 1 THEN sqrt(sd.ssq / ((a.n - 1) * 2 * a.sw / a.n)) END AS incl_gps_std_dev,"
+				+ " round((a.sil / a.sw)::numeric, 2)::float8 AS incline_gps, '" + WeightedMeanEstimator.NAME
+				+ "'::varchar(32) AS incline_estimator, round(a.sw::numeric, 2)::float8 AS gps_length_used,"
+				+ " a.r::integer AS nr_rejected_by_bearing, round(a.mn::numeric, 2)::float8 AS incline_gps_min,"
+				+ " round(a.mx::numeric, 2)::float8 AS incline_gps_max"
+				+ " FROM " + prefix + "agg a JOIN " + prefix + "streets d ON d.street_id = a.street_id"
+				+ " JOIN (SELECT street_id, count(DISTINCT gpx_id) AS nr FROM " + prefix + "lines GROUP BY street_id) t"
+				+ " ON t.street_id = a.street_id"
+				// same formula as StreetProcessor.calculateWeightedStandardDeviation
+				+ " JOIN (SELECT u.street_id, sum(u.len * (u.sign * u.incl - round((g.sil / g.sw)::numeric, 2)::float8) ^ 2) AS ssq"
+				+ " FROM " + prefix + "line_sign u JOIN " + prefix + "agg g ON g.street_id = u.street_id"
+				+ " WHERE u.sign <> 0 AND g.sw > 0 GROUP BY u.street_id) sd ON sd.street_id = a.street_id"
+				+ " WHERE a.sw > 0;";
+
+		return new String[] { streets, lines, lineSign, agg, result };
+	}
+
+	/**
+	 * @return the buffer of the geometry like in the street execution mode
+	 */
+	private String bufferExpression(String geom) {
+		String cap = config.getBufferCap() == BufferParameters.CAP_FLAT ? "flat" : "round";
+		if (config.isMetricBuffer()) {
+			return "ST_Buffer(" + geom + "::geography, " + config.getBufferMeters() + ", 'quad_segs=5 endcap=" + cap
+					+ "')::geometry";
+		}
+		return "ST_Buffer(" + geom + ", " + config.getBufferDistance() + ", 'quad_segs=5 endcap=" + cap + "')";
+	}
+
+	/**
+	 * @return the segment numbers i of a LineString, from point i to i + 1
+	 */
+	private static String segmentSeries(String geom) {
+		return "generate_series(1, ST_NPoints(" + geom + ") - 1) AS i";
+	}
+
+	/**
+	 * @return columns of the start and end of segment i in radians
+	 */
+	private static String segmentColumns(String geom, String additional) {
+		return "radians(ST_X(ST_PointN(" + geom + ", i))) AS lon1, radians(ST_Y(ST_PointN(" + geom + ", i))) AS lat1,"
+				+ " radians(ST_X(ST_PointN(" + geom + ", i + 1))) AS lon2, radians(ST_Y(ST_PointN(" + geom
+				+ ", i + 1))) AS lat2" + additional;
+	}
+
+	/**
+	 * @return sum of the direction vectors of the segments
+	 */
+	private static String directionColumns() {
+		return "sum(sin(lon2 - lon1) * cos(lat2)) AS e, sum(cos(lat1) * sin(lat2) - sin(lat1) * cos(lat2) * cos(lon2 - lon1)) AS n";
+	}
+
+	/**
+	 * @return orthometric distance of a segment in meters
+	 */
+	private static String haversine() {
+		return "2 * 6371000 * asin(least(1, sqrt(sin((lat2 - lat1) / 2) ^ 2 + cos(lat1) * cos(lat2) * sin((lon2 - lon1) / 2) ^ 2)))";
+	}
+}
@@ -0,0 +1,165 @@
+package osmgpxtool.inclinecalculator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Staging tables of the incline table ("stagingTables=true"). Each writer,
+ * i.e. the main connection and each reader connection of the partitioned and
+ * virtual mode, inserts into its own unlogged table without index, so the
+ * writers do not wait for each other and no index or foreign key is checked
+ * per row. The incline table is created without constraints.
+ *
+ * {@link #merge()} copies all staging tables into the incline table with one
+ * statement, drops them and then builds the primary key and the foreign
+ * key. The index of the primary key is built with parallel workers of the
+ * database (PostgreSQL 11 or later), max_parallel_maintenance_workers is set
+ * to serverParallelWorkers, if given.
+ *
+ * Staging tables of an aborted run are dropped by
+ * {@link #dropLeftovers(Connection, String)} when the next run starts.
+ *
+ */
+class StagingTables {
+	static Logger LOGGER = LoggerFactory.getLogger(StagingTables.class);
+
+	private Connection con;
+	private InclineConfig config;
+	private String table;
+	private List<String> stages = new ArrayList<String>();
+
+	/**
+	 * @param con
+	 *            main connection, which merges the tables
+	 * @param config
+	 * @param table
+	 *            incline table
+	 */
+	StagingTables(Connection con, InclineConfig config, String table) {
+		this.con = con;
+		this.config = config;
+		this.table = table;
+	}
+
+	/**
+	 * Drops the staging tables "&lt;table&gt;_stage_&lt;n&gt;" left by an
+	 * aborted run in the schemas of the search path.
+	 *
+	 * @param con
+	 * @param table
+	 *            incline table
+	 * @throws SQLException
+	 */
+	static void dropLeftovers(Connection con, String table) throws SQLException {
+		PreparedStatement ps = con.prepareStatement("SELECT quote_ident(schemaname) || '.' || quote_ident(tablename)"
+				+ " FROM pg_tables WHERE schemaname = ANY (current_schemas(false)) AND tablename ~ ?;");
+		ps.setString(1, "^" + table.toLowerCase() + "_stage_[0-9]+$");
+		ResultSet rs = ps.executeQuery();
+		List<String> leftovers = new ArrayList<String>();
+		while (rs.next()) {
+			leftovers.add(rs.getString(1));
+		}
+		rs.close();
+		ps.close();
+		Statement s = con.createStatement();
+		for (String stage : leftovers) {
+			LOGGER.warn("Dropping staging table " + stage + " of an aborted run.");
+			s.execute("DROP TABLE IF EXISTS " + stage + ";");
+		}
+		s.close();
+	}
+
+	/**
+	 * Creates a new staging table with the columns of the incline table.
+	 *
+	 * @param writerCon
+	 *            connection of the writer of the table
+	 * @return name of the table
+	 * @throws SQLException
+	 */
+	synchronized String create(Connection writerCon) throws SQLException {
+		String stage = table + "_stage_" + stages.size();
+		Statement s = writerCon.createStatement();
+		s.execute("DROP TABLE IF EXISTS " + stage + ";");
+		s.execute("CREATE UNLOGGED TABLE " + stage + " (LIKE " + table + ");");
+		s.close();
+		stages.add(stage);
+		return stage;
+	}
+
+	/**
+	 * Creates a writer of a new staging table, which must be closed before
+	 * {@link #merge()}.
+	 *
+	 * @param writerCon
+	 * @return
+	 * @throws SQLException
+	 */
+	InclineWriter createWriter(Connection writerCon) throws SQLException {
+		return new InclineWriter(writerCon, create(writerCon), config.getVariants(), config.getInsertTargetMillis(),
+				false);
+	}
+
+	/**
+	 * Copies the rows of all staging tables into the incline table, drops the
+	 * staging tables and adds the primary and foreign key to the incline
+	 * table. All writers must be closed.
+	 *
+	 * @throws SQLException
+	 *             also if a street was written more than once, the incline
+	 *             table is then left without keys
+	 */
+	synchronized void merge() throws SQLException {
+		Statement s = con.createStatement();
+		if (!stages.isEmpty()) {
+			StringBuilder sb = new StringBuilder("INSERT INTO ").append(table);
+			for (int i = 0; i < stages.size(); i++) {
+				sb.append(i == 0 ? " SELECT * FROM " : " UNION ALL SELECT * FROM ").append(stages.get(i));
+			}
+			long start = System.currentTimeMillis();
+			int rows = s.executeUpdate(sb.append(';').toString());
+			LOGGER.info(rows + " inclines of " + stages.size() + " staging tables merged in "
+					+ (System.currentTimeMillis() - start) + " ms.");
+			for (String stage : stages) {
+				s.execute("DROP TABLE " + stage + ";");
+			}
+			stages.clear();
+		}
+
+		if (config.getServerParallelWorkers() >= 0) {
+			try {
+				s.execute("SET max_parallel_maintenance_workers = " + config.getServerParallelWorkers() + ";");
+			} catch (SQLException e) {
+				LOGGER.warn("Could not set the parallel workers of the index build: " + e.getMessage());
+			}
+		}
+		long start = System.currentTimeMillis();
+		ResultSet rs = s.executeQuery("SELECT street_id FROM " + table
+				+ " GROUP BY street_id HAVING count(*) > 1 LIMIT 10;");
+		List<Integer> duplicates = new ArrayList<Integer>();
+		while (rs.next()) {
+			duplicates.add(rs.getInt(1));
+		}
+		rs.close();
+		if (!duplicates.isEmpty()) {
+			s.close();
+			throw new SQLException("The staging tables contain streets more than once, e.g. " + duplicates + ".");
+		}
+		s.execute("CREATE UNIQUE INDEX " + table + "_pk ON " + table + " (street_id);");
+		s.execute("ALTER TABLE " + table + " ADD CONSTRAINT " + table + "_pk PRIMARY KEY USING INDEX " + table
+				+ "_pk;");
+		s.execute("ALTER TABLE " + table + " ADD CONSTRAINT " + table + "_fk FOREIGN KEY (street_id) REFERENCES "
+				+ config.getProperty("t_streetName") + " (" + config.getProperty("t_streetIdCol")
+				+ ") MATCH SIMPLE ON UPDATE CASCADE ON DELETE CASCADE;");
+		LOGGER.info("Keys of " + table + " built in " + (System.currentTimeMillis() - start) + " ms.");
+		s.close();
+	}
+}
@@ -0,0 +1,224 @@
+package osmgpxtool.inclinecalculator;
+
+/**
+ * Result of the incline calculation of one street, as written to the output
+ * table.
+ *
+ */
+public class StreetInclineResult {
+	private int streetId;
+	private double streetLength;
+	private int nrOfTraces;
+	private double inclineGpsStdDev = Double.NaN;
+	private double inclineGps = Double.NaN;
+	private String estimator;
+	private double inclineLidar = Double.NaN;
+	private double inclineSrtm = Double.NaN;
+	private double gpsLengthUsed;
+	private double streetCoverage;
+	private int nrRejectedByBearing;
+	private int nrPointsDropped;
+	private double inclineGpsMin = Double.NaN;
+	private double inclineGpsMax = Double.NaN;
+	// gps inclines of the other geometry variants, null if there are none
+	private double[] variantInclinesGps;
+	private double[] variantStdDevs;
+	// section profiles, null if not calculated
+	private double profileSectionLength;
+	private double[] profileGps;
+	private double[] profileLidar;
+	private double[] profileSrtm;
+
+	public StreetInclineResult(int streetId, double streetLength) {
+		this.streetId = streetId;
+		this.streetLength = streetLength;
+	}
+
+	public int getStreetId() {
+		return streetId;
+	}
+
+	public double getStreetLength() {
+		return streetLength;
+	}
+
+	public int getNrOfTraces() {
+		return nrOfTraces;
+	}
+
+	public void setNrOfTraces(int nrOfTraces) {
+		this.nrOfTraces = nrOfTraces;
+	}
+
+	public double getInclineGpsStdDev() {
+		return inclineGpsStdDev;
+	}
+
+	public void setInclineGpsStdDev(double inclineGpsStdDev) {
+		this.inclineGpsStdDev = inclineGpsStdDev;
+	}
+
+	public double getInclineGps() {
+		return inclineGps;
+	}
+
+	public void setInclineGps(double inclineGps) {
+		this.inclineGps = inclineGps;
+	}
+
+	public String getEstimator() {
+		return estimator;
+	}
+
+	public void setEstimator(String estimator) {
+		this.estimator = estimator;
+	}
+
+	public double getInclineLidar() {
+		return inclineLidar;
+	}
+
+	public void setInclineLidar(double inclineLidar) {
+		this.inclineLidar = inclineLidar;
+	}
+
+	public double getInclineSrtm() {
+		return inclineSrtm;
+	}
+
+	public void setInclineSrtm(double inclineSrtm) {
+		this.inclineSrtm = inclineSrtm;
+	}
+
+	/**
+	 * @return total length in meters of all trace lines used for the gps
+	 *         incline
+	 */
+	public double getGpsLengthUsed() {
+		return gpsLengthUsed;
+	}
+
+	public void setGpsLengthUsed(double gpsLengthUsed) {
+		this.gpsLengthUsed = gpsLengthUsed;
+	}
+
+	/**
+	 * @return share of the street length covered by the used trace lines,
+	 *         between 0 and 1
+	 */
+	public double getStreetCoverage() {
+		return streetCoverage;
+	}
+
+	public void setStreetCoverage(double streetCoverage) {
+		this.streetCoverage = streetCoverage;
+	}
+
+	/**
+	 * @return number of trace lines not used because of their bearing
+	 */
+	public int getNrRejectedByBearing() {
+		return nrRejectedByBearing;
+	}
+
+	public void setNrRejectedByBearing(int nrRejectedByBearing) {
+		this.nrRejectedByBearing = nrRejectedByBearing;
+	}
+
+	/**
+	 * @return number of trace points removed by the decimation
+	 */
+	public int getNrPointsDropped() {
+		return nrPointsDropped;
+	}
+
+	public void setNrPointsDropped(int nrPointsDropped) {
+		this.nrPointsDropped = nrPointsDropped;
+	}
+
+	/**
+	 * Sets the gps inclines of the geometry variants other than the primary
+	 * one.
+	 *
+	 * @param inclines
+	 *            incline of variant i + 1 at index i, NaN if the variant has
+	 *            no usable trace line
+	 * @param stdDevs
+	 */
+	public void setVariantInclines(double[] inclines, double[] stdDevs) {
+		this.variantInclinesGps = inclines;
+		this.variantStdDevs = stdDevs;
+	}
+
+	/**
+	 * @param variant
+	 *            index of the variant, starting with 1
+	 * @return the gps incline of the variant or NaN, if not calculated
+	 */
+	public double getVariantInclineGps(int variant) {
+		return variantInclinesGps == null ? Double.NaN : variantInclinesGps[variant - 1];
+	}
+
+	public double getVariantStdDev(int variant) {
+		return variantStdDevs == null ? Double.NaN : variantStdDevs[variant - 1];
+	}
+
+	public double getInclineGpsMin() {
+		return inclineGpsMin;
+	}
+
+	public void setInclineGpsMin(double inclineGpsMin) {
+		this.inclineGpsMin = inclineGpsMin;
+	}
+
+	public double getInclineGpsMax() {
+		return inclineGpsMax;
+	}
+
+	public void setInclineGpsMax(double inclineGpsMax) {
+		this.inclineGpsMax = inclineGpsMax;
+	}
+
+	/**
+	 * Sets the section profiles. Sections without incline are NaN.
+	 *
+	 * @param sectionLength
+	 *            length of a section in meters
+	 * @param gps
+	 * @param lidar
+	 *            null, if LiDAR is not configured
+	 * @param srtm
+	 *            null, if SRTM is not configured
+	 */
+	public void setProfile(double sectionLength, double[] gps, double[] lidar, double[] srtm) {
+		this.profileSectionLength = sectionLength;
+		this.profileGps = gps;
+		this.profileLidar = lidar;
+		this.profileSrtm = srtm;
+	}
+
+	public boolean hasProfile() {
+		return profileGps != null;
+	}
+
+	public double getProfileSectionLength() {
+		return profileSectionLength;
+	}
+
+	public double[] getProfileGps() {
+		return profileGps;
+	}
+
+	public double[] getProfileLidar() {
+		return profileLidar;
+	}
+
+	public double[] getProfileSrtm() {
+		return profileSrtm;
+	}
+
+	@Override
+	public String toString() {
+		return "StreetInclineResult [streetId=" + streetId + ", inclineGps=" + inclineGps + "]";
+	}
+}
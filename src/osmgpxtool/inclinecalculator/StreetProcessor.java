@@ -0,0 +1,272 @@
+package osmgpxtool.inclinecalculator;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import osmgpxtool.inclinecalculator.dem.DemInclineCalculator;
+import osmgpxtool.inclinecalculator.estimator.InclineEstimator;
+import osmgpxtool.inclinecalculator.estimator.InclineEstimators;
+import osmgpxtool.inclinecalculator.estimator.InclineSamples;
+import osmgpxtool.inclinecalculator.gps.GpsTracePart;
+import osmgpxtool.inclinecalculator.gps.TraceDecimator;
+import osmgpxtool.inclinecalculator.kernel.InclineKernel;
+import osmgpxtool.inclinecalculator.kernel.InclineKernels;
+import osmgpxtool.inclinecalculator.kernel.ReplayRecorder;
+import osmgpxtool.inclinecalculator.kernel.StreetContext;
+import osmgpxtool.inclinecalculator.profile.SectionProfile;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+import osmgpxtool.inclinecalculator.util.Util;
+
+/**
+ * Calculates the incline of a street from the GPS traces clipped to its
+ * buffer and from the configured DEMs. The incline values of the traces are
+ * calculated by the configured {@link InclineKernel}.
+ *
+ * All intermediate values are kept in reused buffers, therefore an instance
+ * must not be shared between threads. Parallel workers use one instance
+ * each.
+ *
+ */
+public class StreetProcessor {
+	private InclineEstimator estimator;
+	private DemInclineCalculator demCalculator;
+	private int lidarIndex;
+	private int srtmIndex;
+	// number of geometry variants, the first one is the primary variant
+	private int numVariants;
+
+	private InclineKernel kernel;
+	private StreetContext street;
+	private ReplayRecorder recorder;
+	// decimation of the traces, null if not configured
+	private TraceDecimator decimator;
+	private CoordinateBuffer decimated = new CoordinateBuffer();
+
+	private InclineSamples gpsInclineValues = new InclineSamples();
+	// section profiles, only if profileSectionLength is set
+	private double profileSectionLength;
+	private SectionProfile[] demSections;
+
+	/**
+	 * @param config
+	 * @param demCalculator
+	 *            DEMs for validation, which must not be used by another
+	 *            thread
+	 */
+	public StreetProcessor(InclineConfig config, DemInclineCalculator demCalculator) {
+		this.estimator = InclineEstimators.create(config);
+		this.demCalculator = demCalculator;
+		this.lidarIndex = demCalculator.indexOf("lidar");
+		this.srtmIndex = demCalculator.indexOf("srtm");
+
+		this.numVariants = config.getVariants().size();
+		this.kernel = InclineKernels.create(config);
+		this.decimator = TraceDecimator.create(config);
+
+		this.profileSectionLength = config.getProfileSectionLength();
+		this.street = new StreetContext(profileSectionLength);
+		if (profileSectionLength > 0) {
+			demSections = new SectionProfile[Math.max(lidarIndex, srtmIndex) + 1];
+			for (int i = 0; i < demSections.length; i++) {
+				demSections[i] = new SectionProfile();
+			}
+		}
+	}
+
+	/**
+	 * Records the inputs of the kernel of a sample of the streets.
+	 *
+	 * @param recorder
+	 *            shared recorder or null
+	 */
+	public void setRecorder(ReplayRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Calculates the incline of the street.
+	 *
+	 * @param s
+	 * @param traces
+	 *            GPS traces clipped to the buffer of the street
+	 * @return the result or null, if no trace line could be used
+	 */
+	public StreetInclineResult process(StreetSegment s, List<GpsTracePart> traces) {
+		if (traces.isEmpty()) {
+			return null;
+		}
+		Set<Integer> gpx_ids = new HashSet<Integer>();
+		for (GpsTracePart t : traces) {
+			gpx_ids.add(t.getId());
+		}
+
+		gpsInclineValues.clear();
+		street.setStreet(s.getCoordinates(), s.getNumPoints());
+		int rejectedByBearing = 0;
+		int pointsDropped = 0;
+
+		// loop through list
+		// calculate deltaHs
+		for (GpsTracePart g : traces) {
+			CoordinateBuffer geom = g.getVariant(0);
+			if (geom != null) {
+				if (decimator != null) {
+					pointsDropped += decimator.decimate(geom, decimated);
+					geom = decimated;
+				}
+				rejectedByBearing += kernel.addTrace(street, geom, gpsInclineValues);
+			}
+		}
+		if (recorder != null) {
+			recorder.record(s, traces);
+		}
+		/*
+		 * deltaHs might be empty, if smoothed geometry is null or the bearing
+		 * is not within the specified threshold
+		 */
+		if (gpsInclineValues.isEmpty()) {
+			return null;
+		}
+		StreetInclineResult result = new StreetInclineResult(s.getId(), s.getOrthometricLength());
+		result.setNrOfTraces(gpx_ids.size());
+		// the standard deviation and the confidence metrics are
+		// computed before the estimator may reorder the values
+		result.setInclineGpsStdDev(calculateWeightedStandardDeviation(gpsInclineValues));
+		setConfidenceMetrics(result, gpsInclineValues);
+		result.setStreetCoverage(Util.round(street.getCoverage().getCoveredFraction(), 4));
+		result.setNrRejectedByBearing(rejectedByBearing);
+		result.setNrPointsDropped(pointsDropped);
+		// the gps incline [%] is estimated from the incline values
+		// weighted by the linelength, by default as weighted mean
+		result.setInclineGps(Util.round(estimator.estimate(gpsInclineValues), 2));
+		result.setEstimator(estimator.getName());
+
+		// if Rasterdatasource is not set, the inclines remain NaN
+		if (!demCalculator.isEmpty()) {
+			if (demSections != null) {
+				for (SectionProfile sections : demSections) {
+					sections.reset(street.getMeasure().getLength(), profileSectionLength);
+				}
+			}
+			double[] demInclines = demCalculator.calculateInclines(s, demSections);
+			if (lidarIndex >= 0) {
+				result.setInclineLidar(demInclines[lidarIndex]);
+			}
+			if (srtmIndex >= 0) {
+				result.setInclineSrtm(demInclines[srtmIndex]);
+			}
+		}
+
+		if (street.getSections() != null) {
+			result.setProfile(profileSectionLength, street.getSections().toArray(),
+					lidarIndex >= 0 ? demSections[lidarIndex].toArray() : null,
+					srtmIndex >= 0 ? demSections[srtmIndex].toArray() : null);
+		}
+		if (numVariants > 1) {
+			calculateOtherVariants(traces, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Calculates the gps incline of the other geometry variants. Must be
+	 * called after the results of the primary variant are set, as the kernel
+	 * also adds to the coverage and profile of the street.
+	 */
+	private void calculateOtherVariants(List<GpsTracePart> traces, StreetInclineResult result) {
+		double[] inclines = new double[numVariants - 1];
+		double[] stdDevs = new double[numVariants - 1];
+		for (int v = 1; v < numVariants; v++) {
+			gpsInclineValues.clear();
+			for (GpsTracePart g : traces) {
+				CoordinateBuffer geom = g.getVariant(v);
+				if (geom != null) {
+					if (decimator != null) {
+						decimator.decimate(geom, decimated);
+						geom = decimated;
+					}
+					kernel.addTrace(street, geom, gpsInclineValues);
+				}
+			}
+			if (gpsInclineValues.isEmpty()) {
+				inclines[v - 1] = Double.NaN;
+				stdDevs[v - 1] = Double.NaN;
+			} else {
+				stdDevs[v - 1] = calculateWeightedStandardDeviation(gpsInclineValues);
+				inclines[v - 1] = Util.round(estimator.estimate(gpsInclineValues), 2);
+			}
+		}
+		result.setVariantInclines(inclines, stdDevs);
+	}
+
+	/**
+	 * http://www.itl.nist.gov/div898/software/dataplot/refman2/ch2/weightsd.pdf
+	 * 
+	 * @param gpsInclineValues
+	 * @return
+	 */
+	private Double calculateWeightedStandardDeviation(InclineSamples gpsInclineValues) {
+		int n = gpsInclineValues.size();
+		if (n > 1) {
+			double[] inclines = gpsInclineValues.getValues();
+			double[] lengths = gpsInclineValues.getWeights();
+			// TODO: find explanation for it
+			double weightedMean = calculateWeightedMeanIncline(gpsInclineValues);
+			double sumSquareOfdifference = 0;
+			double sumWeights = 0;
+			for (int i = 0; i < n; i++) {
+				double weight = lengths[i];
+				sumWeights += weight;
+			}
+
+			for (int i = 0; i < n; i++) {
+				double weight = lengths[i];
+				sumSquareOfdifference += Math.pow(inclines[i] - weightedMean, 2) * weight;
+				sumWeights += weight;
+			}
+			double denominator = ((n - 1) * sumWeights) / n;
+			return Math.sqrt(sumSquareOfdifference / denominator);
+		} else {
+			return Double.NaN;
+		}
+
+	}
+
+	/**
+	 * Sets the total length of the used trace lines and the minimal and
+	 * maximal incline of the lines.
+	 *
+	 * @param result
+	 * @param gpsInclineValues
+	 */
+	private void setConfidenceMetrics(StreetInclineResult result, InclineSamples gpsInclineValues) {
+		double[] inclines = gpsInclineValues.getValues();
+		double[] lengths = gpsInclineValues.getWeights();
+		double sumLength = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < gpsInclineValues.size(); i++) {
+			sumLength += lengths[i];
+			min = Math.min(min, inclines[i]);
+			max = Math.max(max, inclines[i]);
+		}
+		result.setGpsLengthUsed(Util.round(sumLength, 2));
+		result.setInclineGpsMin(Util.round(min, 2));
+		result.setInclineGpsMax(Util.round(max, 2));
+	}
+
+	private double calculateWeightedMeanIncline(InclineSamples gpsInclineValues) {
+		// calculate sum of all distances
+		double sumLength = 0;
+		double sumInclinesTimesLength = 0;
+		double[] inclines = gpsInclineValues.getValues();
+		double[] lengths = gpsInclineValues.getWeights();
+		for (int i = 0; i < gpsInclineValues.size(); i++) {
+			sumInclinesTimesLength += inclines[i] * lengths[i];
+			sumLength += lengths[i];
+		}
+
+		return Util.round(sumInclinesTimesLength / sumLength, 2);
+	}
+}
@@ -1,19 +1,28 @@
 package osmgpxtool.inclinecalculator;
 
 import java.util.List;
-import java.util.Map;
 
 import osmgpxtool.inclinecalculator.datasource.StreetDataSource.Landuse;
+import osmgpxtool.inclinecalculator.util.Geometries;
 
 import com.vividsolutions.jts.geom.LineString;
 
+/**
+ * A street segment. The coordinates are stored packed (x0, y0, x1, y1, ...)
+ * in a double array, the landuse as byte. The LineString is only created on
+ * the first call of {@link #getGeom()}.
+ *
+ */
 public class StreetSegment {
+	private static final Landuse[] LANDUSE_VALUES = Landuse.values();
+
 	private int id;
-	private Map<String, String> tags;
+	private double[] coordinates;
+	private int numPoints;
+	private byte landuse;
 	private LineString geom;
 	private List<LineString> profiles;
 	private double orthometricLength;
-	private Landuse landuse;
 
 	public double getOrthometricLength() {
 		return orthometricLength;
@@ -23,22 +32,43 @@ public class StreetSegment {
 		this.orthometricLength = orthometricLength;
 	}
 
-	public StreetSegment(int id, Map<String, String> tags, LineString geom) {
+	/**
+	 * @param id
+	 * @param landuse
+	 *            ordinal of the {@link Landuse}
+	 * @param coordinates
+	 *            packed coordinates (x0, y0, x1, y1, ...)
+	 * @param numPoints
+	 *            number of points
+	 */
+	public StreetSegment(int id, byte landuse, double[] coordinates, int numPoints) {
 		super();
 		this.id = id;
-		this.tags = tags;
-		this.geom = geom;
+		this.landuse = landuse;
+		this.coordinates = coordinates;
+		this.numPoints = numPoints;
 	}
 
 	public int getId() {
 		return id;
 	}
 
-	public Map<String, String> getTags() {
-		return tags;
+	/**
+	 * @return packed coordinates (x0, y0, x1, y1, ...). Only the first
+	 *         2*{@link #getNumPoints()} values are valid.
+	 */
+	public double[] getCoordinates() {
+		return coordinates;
+	}
+
+	public int getNumPoints() {
+		return numPoints;
 	}
 
 	public LineString getGeom() {
+		if (geom == null) {
+			geom = Geometries.createLineString(coordinates, numPoints);
+		}
 		return geom;
 	}
 
@@ -55,13 +85,8 @@ public class StreetSegment {
 		return "StreetSegment [id=" + id + "]";
 	}
 
-	public void setLanduse(Landuse landuse) {
-		this.landuse = landuse;
-
-	}
-
 	public Landuse getLanduse() {
-		return this.landuse;
+		return LANDUSE_VALUES[landuse];
 
 	}
 
@@ -0,0 +1,252 @@
+package osmgpxtool.inclinecalculator;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import osmgpxtool.inclinecalculator.datasource.GPSDataSource;
+import osmgpxtool.inclinecalculator.datasource.StreetDataSource;
+import osmgpxtool.inclinecalculator.dem.DemInclineCalculator;
+import osmgpxtool.inclinecalculator.gps.GpsTracePart;
+import osmgpxtool.inclinecalculator.kernel.ReplayRecorder;
+import osmgpxtool.inclinecalculator.util.ConcurrentProgress;
+
+/**
+ * Street execution mode with one task per street: the calling thread reads
+ * the streets and starts a task for each of them, which queries the traces
+ * and calculates the incline. The tasks run on virtual threads, if the JVM
+ * supports them (Java 21 and newer), otherwise on a pool of platform
+ * threads. The virtual threads are created by reflection, so the code still
+ * runs on Java 8.
+ *
+ * The number of running tasks is limited by a semaphore to the number of
+ * connections (virtualConcurrency). Each task borrows a connection with its
+ * prepared statements while it waits for the database. The results are
+ * written by the calling thread with the main connection, or with
+ * "stagingTables=true" by the task into the staging table of the borrowed
+ * connection (see {@link StagingTables}).
+ *
+ * The PostgreSQL driver 9.1 executes queries in a synchronized method, which
+ * pins a virtual thread to its carrier thread while it waits for the
+ * database. Virtual threads therefore run no more queries at once than the
+ * platform threads of the fallback; the concurrency is set by
+ * virtualConcurrency in both cases.
+ *
+ * If the calculation of a street fails, the run is aborted, as the street
+ * would be missing in the incline table.
+ *
+ */
+class VirtualThreadRunner {
+	static Logger LOGGER = LoggerFactory.getLogger(VirtualThreadRunner.class);
+
+	private Connection con;
+	private InclineConfig config;
+	private InclineCalculator writer;
+	private int numConnections;
+
+	VirtualThreadRunner(Connection con, InclineConfig config, InclineCalculator writer, int numConnections) {
+		this.con = con;
+		this.config = config;
+		this.writer = writer;
+		this.numConnections = Math.max(1, numConnections);
+	}
+
+	public void run() {
+		// DEMs for validation, if not set do not init
+		DemInclineCalculator demCalculator = new DemInclineCalculator(config);
+		ReplayRecorder recorder = ReplayRecorder.create(config);
+		BlockingQueue<Worker> workers = new ArrayBlockingQueue<Worker>(numConnections);
+		try {
+			for (int i = 0; i < numConnections; i++) {
+				StreetProcessor processor = new StreetProcessor(config, demCalculator.createWorker());
+				processor.setRecorder(recorder);
+				workers.add(new Worker(processor));
+			}
+		} catch (ClassNotFoundException | SQLException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		Semaphore running = new Semaphore(numConnections);
+		BlockingQueue<StreetInclineResult> results = new LinkedBlockingQueue<StreetInclineResult>();
+		ExecutorService executor = createExecutor(numConnections);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		StreetDataSource streets = new StreetDataSource(con, config);
+		ConcurrentProgress pr = new ConcurrentProgress(5);
+		pr.start(streets.getSize());
+		try {
+			while (streets.hasNext()) {
+				StreetSegment s = streets.getCurrentStreet();
+				if (s != null) {
+					running.acquire();
+					executor.execute(new StreetTask(s, workers, running, results, pr, failure));
+				} else {
+					pr.increment();
+				}
+				checkFailure(failure, executor);
+				writeResults(results);
+				if (pr.pollReport()) {
+					LOGGER.info(pr.getProgressMessage());
+				}
+			}
+			// wait for the last tasks
+			running.acquire(numConnections);
+			checkFailure(failure, executor);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writeResults(results);
+		LOGGER.info(pr.getProgressMessage());
+
+		for (Worker w : workers) {
+			w.close();
+		}
+		demCalculator.close();
+		if (recorder != null) {
+			recorder.close();
+		}
+	}
+
+	private static void checkFailure(AtomicReference<Throwable> failure, ExecutorService executor) {
+		if (failure.get() != null) {
+			LOGGER.error("Calculation aborted, because the calculation of a street failed.");
+			executor.shutdownNow();
+			System.exit(1);
+		}
+	}
+
+	private void writeResults(BlockingQueue<StreetInclineResult> results) {
+		StreetInclineResult result;
+		while ((result = results.poll()) != null) {
+			if (config.isStagingTables()) {
+				// incline written by the task
+				writer.writeProfile(result);
+			} else {
+				writer.write(result);
+			}
+		}
+	}
+
+	/**
+	 * @return an executor starting a virtual thread per task or, if the JVM
+	 *         has no virtual threads, a pool of platform threads
+	 */
+	static ExecutorService createExecutor(int numThreads) {
+		try {
+			ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+			LOGGER.info("Calculating inclines on virtual threads with " + numThreads + " connections.");
+			return executor;
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			LOGGER.warn("Virtual threads need Java 21 or newer, using " + numThreads + " platform threads.");
+		} catch (InvocationTargetException e) {
+			// preview feature of Java 19 and 20 not enabled
+			LOGGER.warn("Virtual threads are not available (" + e.getCause() + "), using " + numThreads
+					+ " platform threads.");
+		}
+		return Executors.newFixedThreadPool(numThreads);
+	}
+
+	/**
+	 * A connection with its prepared statements, its staging table and the
+	 * processor using it. Only used by one task at a time.
+	 */
+	private class Worker {
+		private Connection workerCon;
+		private GPSDataSource gpsSource;
+		private StreetProcessor processor;
+		// null, if stagingTables is not set
+		private InclineWriter stage;
+
+		Worker(StreetProcessor processor) throws ClassNotFoundException, SQLException {
+			this.workerCon = Main.getDbConnection(config.getProperty("dbHost"), config.getProperty("dbName"),
+					config.getProperty("dbUser"), config.getProperty("dbPassword"));
+			this.gpsSource = new GPSDataSource(workerCon, config);
+			this.processor = processor;
+			this.stage = writer.createWorkerWriter(workerCon);
+		}
+
+		void close() {
+			if (stage != null) {
+				stage.close();
+			}
+			try {
+				workerCon.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Queries the traces of one street with a borrowed worker and calculates
+	 * its incline.
+	 */
+	private static class StreetTask implements Runnable {
+		private StreetSegment street;
+		private BlockingQueue<Worker> workers;
+		private Semaphore running;
+		private BlockingQueue<StreetInclineResult> results;
+		private ConcurrentProgress pr;
+		// set to the first error of any task
+		private AtomicReference<Throwable> failure;
+
+		StreetTask(StreetSegment street, BlockingQueue<Worker> workers, Semaphore running,
+				BlockingQueue<StreetInclineResult> results, ConcurrentProgress pr, AtomicReference<Throwable> failure) {
+			this.street = street;
+			this.workers = workers;
+			this.running = running;
+			this.results = results;
+			this.pr = pr;
+			this.failure = failure;
+		}
+
+		@Override
+		public void run() {
+			// a worker is free, because the semaphore has as many permits as
+			// there are workers
+			Worker w = workers.poll();
+			try {
+				List<GpsTracePart> traces = w.gpsSource.getClippedTracesWithinBufferOf(street);
+				StreetInclineResult result = w.processor.process(street, traces);
+				if (result == null) {
+					return;
+				}
+				if (w.stage != null) {
+					w.stage.write(result);
+					if (result.hasProfile()) {
+						results.add(result);
+					}
+				} else {
+					results.add(result);
+				}
+			} catch (RuntimeException e) {
+				LOGGER.error("Calculation of street " + street.getId() + " failed.");
+				e.printStackTrace();
+				failure.compareAndSet(null, e);
+			} finally {
+				workers.add(w);
+				pr.increment();
+				running.release();
+			}
+		}
+	}
+}
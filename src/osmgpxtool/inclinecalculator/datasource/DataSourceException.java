@@ -0,0 +1,14 @@
+package osmgpxtool.inclinecalculator.datasource;
+
+/**
+ * Thrown if a source could not read from the database, so that a caller does
+ * not mistake a lost connection for the end of the data.
+ *
+ */
+public class DataSourceException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public DataSourceException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
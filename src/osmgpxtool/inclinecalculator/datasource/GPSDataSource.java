@@ -6,84 +6,119 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import osmgpxtool.inclinecalculator.InclineConfig;
 import osmgpxtool.inclinecalculator.StreetSegment;
+import osmgpxtool.inclinecalculator.gps.GeometryVariants;
 import osmgpxtool.inclinecalculator.gps.GpsTracePart;
-import osmgpxtool.inclinecalculator.util.Util;
+import osmgpxtool.inclinecalculator.linearref.MetricBuffer;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+import osmgpxtool.inclinecalculator.util.GeometryDecoder;
 
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.MultiLineString;
 import com.vividsolutions.jts.io.WKBWriter;
-import com.vividsolutions.jts.operation.buffer.BufferParameters;
 
-public class GPSDataSource {
+public class GPSDataSource implements TraceSource {
 	static Logger LOGGER = LoggerFactory.getLogger(GPSDataSource.class);
-	private Properties p;
+	private InclineConfig config;
 	private PreparedStatement pst = null;
 	private WKBWriter wkbWriter;
+	private double bufferDis;
+	private int bufferCap;
+	// buffer with a width in meters, if streetBufferMeters is set
+	private MetricBuffer metricBuffer;
+	private GeometryVariants variants;
 
-	public GPSDataSource(Connection con, Properties p) {
-		this.p = p;
+	public GPSDataSource(Connection con, InclineConfig config) {
+		this.config = config;
+		this.variants = config.getVariants();
 		wkbWriter = new WKBWriter(3, true);
+		bufferCap = config.getBufferCap();
+		if (config.isMetricBuffer()) {
+			metricBuffer = new MetricBuffer(config.getBufferMeters(), 5, bufferCap);
+		} else {
+			bufferDis = config.getBufferDistance();
+		}
 		try {
-			pst = con.prepareStatement("SELECT g." + p.getProperty("t_PpGpxIdCol") + ", g." + p.getProperty("t_PpGpxTrkIdCol") + ","
-					+ p.getProperty("t_PpGpxPartIdCol") + ", ST_ASGEOJSON(ST_INTERSECTION(g."
-					+ p.getProperty("t_PpGpxGeomCol") + ",ST_GeomFromEWKB(?))) as " + p.getProperty("t_PpGpxGeomCol")
-					+ ",ST_ASGEOJSON(ST_INTERSECTION(g." + p.getProperty("t_PpGpxGeomColSmoothed")
-					+ ",ST_GeomFromEWKB(?))) as " + p.getProperty("t_PpGpxGeomColSmoothed") + "  FROM "
-					+ p.getProperty("t_mmName") + " sg LEFT JOIN " + p.getProperty("t_PpGpxName") + " g ON sg."
-					+ p.getProperty("t_mmGpxIdCol") + " = g." + p.getProperty("t_PpGpxIdCol") + " AND sg."
-					+ p.getProperty("t_mmTrkIdCol") + " = g." + p.getProperty("t_PpGpxTrkIdCol") + "  WHERE sg."
-					+ p.getProperty("t_mmStreetIdCol") + "=? AND ST_INTERSECTS(g." + p.getProperty("t_PpGpxGeomCol")
+			// only the geometry columns of the used variants are clipped and
+			// transferred
+			StringBuilder clipped = new StringBuilder();
+			for (int v = 0; v < variants.size(); v++) {
+				clipped.append(", ST_ASBINARY(ST_INTERSECTION(g.").append(variants.getColumn(v))
+						.append(",ST_GeomFromEWKB(?)))");
+			}
+			pst = con.prepareStatement("SELECT g." + config.getProperty("t_PpGpxIdCol") + ", g." + config.getProperty("t_PpGpxTrkIdCol") + ","
+					+ config.getProperty("t_PpGpxPartIdCol") + clipped + "  FROM "
+					+ config.getProperty("t_mmName") + " sg LEFT JOIN " + config.getProperty("t_PpGpxName") + " g ON sg."
+					+ config.getProperty("t_mmGpxIdCol") + " = g." + config.getProperty("t_PpGpxIdCol") + " AND sg."
+					+ config.getProperty("t_mmTrkIdCol") + " = g." + config.getProperty("t_PpGpxTrkIdCol") + "  WHERE sg."
+					+ config.getProperty("t_mmStreetIdCol") + "=? AND ST_INTERSECTS(g." + config.getProperty("t_PpGpxGeomCol")
 					+ ",ST_GeomFromEWKB(?));");
 		} catch (SQLException e) {
-			e.printStackTrace();
+			throw new DataSourceException("Could not prepare the query of the traces.", e);
 		}
 
 	}
 
+	@Override
 	public List<GpsTracePart> getClippedTracesWithinBufferOf(StreetSegment s) {
 		List<GpsTracePart> partList = new ArrayList<GpsTracePart>();
 
 		try {
-			double bufferDis = Double.valueOf(p.getProperty("streetBufferDistance"));
-			
-			int bufferCap;
-			
-			if (p.getProperty("bufferCap").equals("CAP_FLAT")){
-				bufferCap = BufferParameters.CAP_FLAT;
-			}else{
-				bufferCap = BufferParameters.CAP_ROUND;
+			Geometry buffer;
+			if (metricBuffer != null) {
+				buffer = metricBuffer.buffer(s.getCoordinates(), s.getNumPoints());
+			} else {
+				buffer = s.getGeom().buffer(bufferDis, 5, bufferCap);
+				buffer.setSRID(4326);
 			}
-		
-			Geometry buffer = s.getGeom().buffer(bufferDis, 5, bufferCap);
-			buffer.setSRID(4326);
-			pst.setBytes(1, wkbWriter.write(buffer));
-
-			pst.setBytes(2, wkbWriter.write(buffer));
-			pst.setInt(3, s.getId());
-			pst.setBytes(4, wkbWriter.write(buffer));
+			byte[] bufferWkb = wkbWriter.write(buffer);
+			int n = variants.size();
+			for (int v = 0; v < n; v++) {
+				pst.setBytes(v + 1, bufferWkb);
+			}
+			pst.setInt(n + 1, s.getId());
+			pst.setBytes(n + 2, bufferWkb);
 
 			ResultSet rs1 = pst.executeQuery();
 			while (rs1.next()) {
 				
-				int gpsId = rs1.getInt(p.getProperty("t_PpGpxIdCol"));
-				int trkId = rs1.getInt(p.getProperty("t_PpGpxTrkIdCol"));
-				int partId = rs1.getInt(p.getProperty("t_PpGpxPartIdCol"));
-				MultiLineString geom = Util.parseJson(rs1.getString(p.getProperty("t_PpGpxGeomCol")));
-				MultiLineString geomSmoothed = Util.parseJson(rs1.getString(p.getProperty("t_PpGpxGeomColSmoothed")));
-				partList.add(new GpsTracePart(gpsId, trkId, partId, geom, geomSmoothed));
+				int gpsId = rs1.getInt(1);
+				int trkId = rs1.getInt(2);
+				int partId = rs1.getInt(3);
+				CoordinateBuffer[] geoms = new CoordinateBuffer[n];
+				for (int v = 0; v < n; v++) {
+					geoms[v] = decode(rs1.getBytes(v + 4));
+				}
+				partList.add(new GpsTracePart(gpsId, trkId, partId, geoms));
 
 			}
 
 		} catch (SQLException e) {
-			e.printStackTrace();
+			throw new DataSourceException("Could not query the traces of street " + s.getId() + ".", e);
 		}
 
 		return partList;
 	}
+
+	/**
+	 * Decodes the clipped trace. Due to the clipping the geometry might be a
+	 * LineString, a MultiLineString or another type (e.g. Point, empty
+	 * GeometryCollection).
+	 * 
+	 * @param wkb
+	 * @return the coordinates or null, if the geometry is null or no
+	 *         (Multi)LineString
+	 */
+	private CoordinateBuffer decode(byte[] wkb) {
+		CoordinateBuffer buffer = new CoordinateBuffer();
+		if (GeometryDecoder.decodeWkb(wkb, buffer)) {
+			return buffer;
+		} else {
+			return null;
+		}
+	}
 }
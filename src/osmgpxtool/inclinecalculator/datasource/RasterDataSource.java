@@ -51,4 +51,23 @@ public class RasterDataSource {
 		}
 	}
 
+	/**
+	 * Returns the height at the given position without boxing the result. The
+	 * buffer is used as destination of the raster lookup and must not be
+	 * shared between threads.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param buffer
+	 *            array of at least the number of bands of the raster
+	 * @return height or NaN, if the position is outside of the raster
+	 */
+	public double getHeightAt(double x, double y, float[] buffer) {
+		try {
+			return coverage.evaluate(new DirectPosition2D(crs, x, y), buffer)[0];
+		} catch (PointOutsideCoverageException e) {
+			return Double.NaN;
+		}
+	}
+
 }
@@ -0,0 +1,333 @@
+package osmgpxtool.inclinecalculator.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import osmgpxtool.inclinecalculator.InclineConfig;
+import osmgpxtool.inclinecalculator.StreetSegment;
+import osmgpxtool.inclinecalculator.gps.GeometryVariants;
+import osmgpxtool.inclinecalculator.linearref.LocalProjection;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+import osmgpxtool.inclinecalculator.util.GeometryDecoder;
+import osmgpxtool.inclinecalculator.util.Util;
+
+/**
+ * Loads the streets, the map matching and the GPS traces of a region with
+ * one query per table and keeps them in memory, so that the inclines can be
+ * calculated without further database calls.
+ *
+ * The region is given by the property "region", either as bounding box
+ * "minLon,minLat,maxLon,maxLat" or as polygon in WKT, both in EPSG:4326.
+ * All streets intersecting the region are loaded, together with all traces
+ * matched to any street and within the buffer distance of the region.
+ *
+ * Streets are stored as packed coordinates in one array, the matched traces
+ * of street i as sorted keys (gpx id, trk id) and the trace parts sorted by
+ * these keys. After {@link #load()} the data is only read and can be shared
+ * between threads.
+ *
+ */
+public class RegionalDataSource {
+	static Logger LOGGER = LoggerFactory.getLogger(RegionalDataSource.class);
+	private static final int FETCH_SIZE = 10000;
+
+	private Connection con;
+	private InclineConfig config;
+	private String region;
+
+	// streets
+	private int numStreets;
+	private int[] streetIds = new int[1024];
+	private byte[] landuse = new byte[1024];
+	private int[] streetOffsets = new int[1025];
+	private double[] streetCoords = new double[16384];
+
+	// matches of street i are matchKeys[matchOffsets[i]] to
+	// matchKeys[matchOffsets[i+1]]
+	private int[] matchOffsets;
+	private long[] matchKeys = new long[1024];
+	private int numMatches;
+
+	// trace parts sorted by key
+	private int numParts;
+	private long[] partKeys = new long[1024];
+	private int[] partIds = new int[1024];
+	// partGeoms[v][i] is the geometry variant v of part i
+	private GeometryVariants variants;
+	private CoordinateBuffer[][] partGeoms;
+
+	public RegionalDataSource(Connection con, InclineConfig config) {
+		this.con = con;
+		this.config = config;
+		this.region = toWkt(config.getRegion());
+		this.variants = config.getVariants();
+		this.partGeoms = new CoordinateBuffer[variants.size()][1024];
+	}
+
+	/**
+	 * Converts the region to WKT.
+	 *
+	 * @param region
+	 *            "minLon,minLat,maxLon,maxLat" or WKT
+	 * @return
+	 */
+	static String toWkt(String region) {
+		if (region == null || region.trim().equals("")) {
+			throw new IllegalArgumentException(
+					"The key \"region\" must be set in the properties file in the regional execution mode.");
+		}
+		String[] bbox = region.split(",");
+		if (bbox.length == 4) {
+			try {
+				double minX = Double.valueOf(bbox[0].trim());
+				double minY = Double.valueOf(bbox[1].trim());
+				double maxX = Double.valueOf(bbox[2].trim());
+				double maxY = Double.valueOf(bbox[3].trim());
+				return "POLYGON((" + minX + " " + minY + "," + maxX + " " + minY + "," + maxX + " " + maxY + ","
+						+ minX + " " + maxY + "," + minX + " " + minY + "))";
+			} catch (NumberFormatException e) {
+				// no bounding box, e.g. a polygon with four vertices
+			}
+		}
+		return region.trim();
+	}
+
+	/**
+	 * Loads the streets, matches and traces of the region.
+	 *
+	 * @throws SQLException
+	 */
+	public void load() throws SQLException {
+		boolean autoCommit = con.getAutoCommit();
+		// the results are only streamed with a cursor within a transaction
+		con.setAutoCommit(false);
+		try {
+			loadStreets();
+			loadMatches();
+			loadTraces();
+			con.commit();
+		} finally {
+			con.setAutoCommit(autoCommit);
+		}
+		LOGGER.info("Loaded " + numStreets + " streets, " + numMatches + " matches and " + numParts
+				+ " trace parts of the region.");
+	}
+
+	private void loadStreets() throws SQLException {
+		PreparedStatement pst = con.prepareStatement("SELECT " + config.getProperty("t_streetIdCol") + ","
+				+ config.getProperty("t_streetTags") + "->'incline_landuse', ST_ASBINARY("
+				+ config.getProperty("t_streetGeomCol") + ") FROM " + config.getProperty("t_streetName")
+				+ " WHERE ST_INTERSECTS(" + config.getProperty("t_streetGeomCol") + ", ST_GeomFromText(?, 4326)) ORDER BY "
+				+ config.getProperty("t_streetIdCol") + ";");
+		pst.setFetchSize(FETCH_SIZE);
+		pst.setString(1, region);
+		ResultSet rs = pst.executeQuery();
+		int coordCount = 0;
+		while (rs.next()) {
+			int id = rs.getInt(1);
+			double[] coordinates = GeometryDecoder.decodeWkbLineString2D(rs.getBytes(3));
+			if (coordinates == null) {
+				LOGGER.error("Could not parse LineString of street " + id);
+				continue;
+			}
+			if (numStreets == streetIds.length) {
+				streetIds = Arrays.copyOf(streetIds, numStreets * 2);
+				landuse = Arrays.copyOf(landuse, numStreets * 2);
+				streetOffsets = Arrays.copyOf(streetOffsets, numStreets * 2 + 1);
+			}
+			if (coordCount + coordinates.length > streetCoords.length) {
+				streetCoords = Arrays.copyOf(streetCoords,
+						Math.max(coordCount + coordinates.length, streetCoords.length * 2));
+			}
+			streetIds[numStreets] = id;
+			landuse[numStreets] = StreetDataSource.mapLanduse(rs.getString(2));
+			System.arraycopy(coordinates, 0, streetCoords, coordCount, coordinates.length);
+			coordCount += coordinates.length;
+			numStreets++;
+			streetOffsets[numStreets] = coordCount / 2;
+		}
+		rs.close();
+		pst.close();
+		streetCoords = Arrays.copyOf(streetCoords, coordCount);
+	}
+
+	private void loadMatches() throws SQLException {
+		PreparedStatement pst = con.prepareStatement("SELECT sg." + config.getProperty("t_mmStreetIdCol") + ", sg."
+				+ config.getProperty("t_mmGpxIdCol") + ", sg." + config.getProperty("t_mmTrkIdCol") + " FROM "
+				+ config.getProperty("t_mmName") + " sg JOIN " + config.getProperty("t_streetName") + " s ON sg."
+				+ config.getProperty("t_mmStreetIdCol") + " = s." + config.getProperty("t_streetIdCol")
+				+ " WHERE ST_INTERSECTS(s." + config.getProperty("t_streetGeomCol")
+				+ ", ST_GeomFromText(?, 4326)) ORDER BY sg." + config.getProperty("t_mmStreetIdCol") + ", sg."
+				+ config.getProperty("t_mmGpxIdCol") + ", sg." + config.getProperty("t_mmTrkIdCol") + ";");
+		pst.setFetchSize(FETCH_SIZE);
+		pst.setString(1, region);
+		ResultSet rs = pst.executeQuery();
+		matchOffsets = new int[numStreets + 1];
+		// both streets and matches are sorted by street id
+		int street = 0;
+		while (rs.next()) {
+			int streetId = rs.getInt(1);
+			while (street < numStreets && streetIds[street] < streetId) {
+				street++;
+				matchOffsets[street] = numMatches;
+			}
+			if (street == numStreets || streetIds[street] != streetId) {
+				// street could not be parsed
+				continue;
+			}
+			if (numMatches == matchKeys.length) {
+				matchKeys = Arrays.copyOf(matchKeys, numMatches * 2);
+			}
+			matchKeys[numMatches++] = key(rs.getInt(2), rs.getInt(3));
+		}
+		while (street < numStreets) {
+			street++;
+			matchOffsets[street] = numMatches;
+		}
+		rs.close();
+		pst.close();
+		matchKeys = Arrays.copyOf(matchKeys, numMatches);
+	}
+
+	private void loadTraces() throws SQLException {
+		StringBuilder geomColumns = new StringBuilder();
+		for (int v = 0; v < variants.size(); v++) {
+			geomColumns.append(", ST_ASBINARY(g.").append(variants.getColumn(v)).append(")");
+		}
+		// the buffer width in meters is converted to degrees of longitude at
+		// the latitude of the region farthest from the equator
+		PreparedStatement pst = con.prepareStatement("WITH r AS (SELECT ST_GeomFromText(?, 4326) AS geom) SELECT g."
+				+ config.getProperty("t_PpGpxIdCol") + ", g." + config.getProperty("t_PpGpxTrkIdCol") + ", g."
+				+ config.getProperty("t_PpGpxPartIdCol") + geomColumns + " FROM "
+				+ config.getProperty("t_PpGpxName") + " g, r WHERE ST_DWITHIN(g." + config.getProperty("t_PpGpxGeomCol")
+				+ ", r.geom, ? / (" + LocalProjection.METERS_PER_DEGREE
+				+ " * cos(radians(greatest(abs(ST_YMIN(r.geom)), abs(ST_YMAX(r.geom))))))) AND EXISTS (SELECT 1 FROM "
+				+ config.getProperty("t_mmName") + " sg WHERE sg." + config.getProperty("t_mmGpxIdCol") + " = g."
+				+ config.getProperty("t_PpGpxIdCol") + " AND sg." + config.getProperty("t_mmTrkIdCol") + " = g."
+				+ config.getProperty("t_PpGpxTrkIdCol") + ") ORDER BY g." + config.getProperty("t_PpGpxIdCol") + ", g."
+				+ config.getProperty("t_PpGpxTrkIdCol") + ", g." + config.getProperty("t_PpGpxPartIdCol") + ";");
+		pst.setFetchSize(FETCH_SIZE);
+		pst.setString(1, region);
+		pst.setDouble(2, config.getBufferMeters());
+		ResultSet rs = pst.executeQuery();
+		while (rs.next()) {
+			if (numParts == partKeys.length) {
+				partKeys = Arrays.copyOf(partKeys, numParts * 2);
+				partIds = Arrays.copyOf(partIds, numParts * 2);
+				for (int v = 0; v < partGeoms.length; v++) {
+					partGeoms[v] = Arrays.copyOf(partGeoms[v], numParts * 2);
+				}
+			}
+			partKeys[numParts] = key(rs.getInt(1), rs.getInt(2));
+			partIds[numParts] = rs.getInt(3);
+			for (int v = 0; v < partGeoms.length; v++) {
+				partGeoms[v][numParts] = decode(rs.getBytes(v + 4));
+			}
+			numParts++;
+		}
+		rs.close();
+		pst.close();
+	}
+
+	private CoordinateBuffer decode(byte[] wkb) {
+		CoordinateBuffer buffer = new CoordinateBuffer(0);
+		if (GeometryDecoder.decodeWkb(wkb, buffer)) {
+			buffer.trimToSize();
+			return buffer;
+		} else {
+			return null;
+		}
+	}
+
+	private static long key(int gpxId, int trkId) {
+		return ((long) gpxId << 32) | (trkId & 0xffffffffL);
+	}
+
+	public int getNumStreets() {
+		return numStreets;
+	}
+
+	/**
+	 * Creates the street with the given index.
+	 *
+	 * @param index
+	 *            between 0 and {@link #getNumStreets()}
+	 * @return
+	 */
+	public StreetSegment getStreet(int index) {
+		int start = streetOffsets[index];
+		int numPoints = streetOffsets[index + 1] - start;
+		double[] coordinates = Arrays.copyOfRange(streetCoords, 2 * start, 2 * (start + numPoints));
+		StreetSegment s = new StreetSegment(streetIds[index], landuse[index], coordinates, numPoints);
+		s.setOrthometricLength(Util.calculateOrthometricLength(coordinates, numPoints));
+		return s;
+	}
+
+	public int getMatchStart(int streetIndex) {
+		return matchOffsets[streetIndex];
+	}
+
+	public int getMatchEnd(int streetIndex) {
+		return matchOffsets[streetIndex + 1];
+	}
+
+	/**
+	 * @param match
+	 * @return index of the first part of the matched trace or -1, if the
+	 *         trace was not loaded
+	 */
+	public int getFirstPart(int match) {
+		long key = matchKeys[match];
+		int index = Arrays.binarySearch(partKeys, 0, numParts, key);
+		if (index < 0) {
+			return -1;
+		}
+		// binarySearch returns any of several equal keys
+		while (index > 0 && partKeys[index - 1] == key) {
+			index--;
+		}
+		return index;
+	}
+
+	/**
+	 * @param part
+	 * @return true, if the part belongs to the same trace as the previous
+	 *         part
+	 */
+	public boolean isSameTrace(int part, int previousPart) {
+		return part < numParts && partKeys[part] == partKeys[previousPart];
+	}
+
+	public int getGpxId(int part) {
+		return (int) (partKeys[part] >>> 32);
+	}
+
+	public int getTrkId(int part) {
+		return (int) partKeys[part];
+	}
+
+	public int getPartId(int part) {
+		return partIds[part];
+	}
+
+	/**
+	 * @param part
+	 * @param variant
+	 *            index of the variant in {@link GeometryVariants}
+	 * @return the geometry or null, if the part has no geometry of the
+	 *         variant
+	 */
+	public CoordinateBuffer getGeom(int part, int variant) {
+		return partGeoms[variant][part];
+	}
+
+	public int getNumVariants() {
+		return partGeoms.length;
+	}
+}
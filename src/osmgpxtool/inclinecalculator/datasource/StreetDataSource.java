@@ -4,69 +4,103 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Map;
-import java.util.Properties;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import osmgpxtool.inclinecalculator.InclineConfig;
 import osmgpxtool.inclinecalculator.StreetSegment;
+import osmgpxtool.inclinecalculator.util.GeometryDecoder;
 import osmgpxtool.inclinecalculator.util.Util;
 
-import com.vividsolutions.jts.geom.LineString;
-import com.vividsolutions.jts.io.ParseException;
-import com.vividsolutions.jts.io.WKBReader;
-
-public class StreetDataSource {
+public class StreetDataSource implements StreetSource {
 	static Logger LOGGER = LoggerFactory.getLogger(StreetDataSource.class);
 
 	private Connection con;
-	private Properties p;
+	private InclineConfig config;
 	private ResultSet rs;
-	private WKBReader wkbReader;
+	// id range of the streets, null if unbounded
+	private Integer minId;
+	private Integer maxId;
 
 	public enum Landuse {
 		RURAL, URBAN, FORESTED, NO_LANDUSE
 	}
 
-	public StreetDataSource(Connection con, Properties p) {
+	public StreetDataSource(Connection con, InclineConfig config) {
+		this(con, config, null, null);
+	}
+
+	/**
+	 * Iterates only over the streets with minId <= id < maxId.
+	 *
+	 * @param minId
+	 *            null for no lower bound
+	 * @param maxId
+	 *            null for no upper bound
+	 */
+	public StreetDataSource(Connection con, InclineConfig config, Integer minId, Integer maxId) {
 		this.con = con;
-		this.p = p;
-		wkbReader = new WKBReader();
+		this.config = config;
+		this.minId = minId;
+		this.maxId = maxId;
 		retrieveData();
 
 	}
 
+	/**
+	 * Splits the streets into ranges of ids with about the same number of
+	 * streets.
+	 *
+	 * @param con
+	 * @param config
+	 * @param numRanges
+	 * @return the first id of each range in ascending order, may be less than
+	 *         numRanges if there are only few streets
+	 * @throws SQLException
+	 */
+	public static int[] getIdRanges(Connection con, InclineConfig config, int numRanges) throws SQLException {
+		String id = config.getProperty("t_streetIdCol");
+		Statement s = con.createStatement();
+		ResultSet rs = s.executeQuery("SELECT min(" + id + ") FROM (SELECT " + id + ", ntile(" + numRanges
+				+ ") OVER (ORDER BY " + id + ") AS range FROM " + config.getProperty("t_streetName")
+				+ ") r GROUP BY range ORDER BY range;");
+		int[] starts = new int[numRanges];
+		int n = 0;
+		while (rs.next()) {
+			starts[n++] = rs.getInt(1);
+		}
+		rs.close();
+		s.close();
+		return Arrays.copyOf(starts, n);
+	}
+
+	@Override
 	public boolean hasNext() {
-		boolean hasNext = false;
 		try {
-			hasNext = rs.next();
+			return rs.next();
 		} catch (SQLException e) {
-			e.printStackTrace();
+			throw new DataSourceException("Could not read the next street.", e);
 		}
-		return hasNext;
 	}
 
+	@Override
 	public StreetSegment getCurrentStreet() {
 		StreetSegment currentStreet = null;
 		try {
-			int id = rs.getInt(p.getProperty("t_streetIdCol"));
-			Map<String, String> tags = Util.hstoreToMap(rs.getObject(p.getProperty("t_streetTags")));
-			LineString line = null;
-			try {
-				line = (LineString) wkbReader.read(rs.getBytes(p.getProperty("t_streetGeomCol")));
-				line.setSRID(4326);
-			} catch (ParseException e) {
-				LOGGER.error("Could not parse LineString");
-				e.printStackTrace();
-			}
-			if (line != null) {
-				currentStreet = new StreetSegment(id, tags, line);
-				currentStreet.setLanduse(mapLanduse(currentStreet));
-				currentStreet.setOrthometricLength(Util.calculateOrthometricLength(line));
+			int id = rs.getInt(1);
+			byte landuse = mapLanduse(rs.getString(2));
+			double[] coordinates = GeometryDecoder.decodeWkbLineString2D(rs.getBytes(3));
+			if (coordinates == null) {
+				LOGGER.error("Could not parse LineString of street " + id);
+			} else {
+				int numPoints = coordinates.length / 2;
+				currentStreet = new StreetSegment(id, landuse, coordinates, numPoints);
+				currentStreet.setOrthometricLength(Util.calculateOrthometricLength(coordinates, numPoints));
 			}
 		} catch (SQLException e) {
-			e.printStackTrace();
+			throw new DataSourceException("Could not read the street.", e);
 		}
 
 		return currentStreet;
@@ -77,19 +111,49 @@ public class StreetDataSource {
 		Statement s;
 		try {
 			s = con.createStatement();
-			rs = s.executeQuery("SELECT " + p.getProperty("t_streetIdCol") + "," + p.getProperty("t_streetTags")
-					+ ",ST_ASBINARY(" + p.getProperty("t_streetGeomCol") + ") as " + p.getProperty("t_streetGeomCol")
-					+ " FROM " + p.getProperty("t_streetName") + " ORDER BY " + p.getProperty("t_streetIdCol") + ";");
+			// only the landuse tag is needed, no need to transfer all tags
+			rs = s.executeQuery("SELECT " + config.getProperty("t_streetIdCol") + "," + config.getProperty("t_streetTags")
+					+ "->'incline_landuse' as incline_landuse,ST_ASBINARY(" + config.getProperty("t_streetGeomCol")
+					+ ") as " + config.getProperty("t_streetGeomCol") + " FROM " + config.getProperty("t_streetName")
+					+ getRangeCondition() + " ORDER BY " + config.getProperty("t_streetIdCol") + ";");
 		} catch (SQLException e) {
-			e.printStackTrace();
+			throw new DataSourceException("Could not query the streets.", e);
 		}
 	}
 
+	/**
+	 * @return number of all streets
+	 * @throws SQLException
+	 */
+	public static int countStreets(Connection con, InclineConfig config) throws SQLException {
+		Statement s = con.createStatement();
+		ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM " + config.getProperty("t_streetName") + ";");
+		rs.next();
+		int count = rs.getInt(1);
+		rs.close();
+		s.close();
+		return count;
+	}
+
+	private String getRangeCondition() {
+		String id = config.getProperty("t_streetIdCol");
+		if (minId != null && maxId != null) {
+			return " WHERE " + id + " >= " + minId + " AND " + id + " < " + maxId;
+		} else if (minId != null) {
+			return " WHERE " + id + " >= " + minId;
+		} else if (maxId != null) {
+			return " WHERE " + id + " < " + maxId;
+		}
+		return "";
+	}
+
+	@Override
 	public int getSize() {
 		int count = 0;
 		try {
 			Statement s1 = con.createStatement();
-			ResultSet rs2 = s1.executeQuery("SELECT COUNT(*) AS rowcount FROM " + p.getProperty("t_streetName") + ";");
+			ResultSet rs2 = s1.executeQuery("SELECT COUNT(*) AS rowcount FROM " + config.getProperty("t_streetName")
+					+ getRangeCondition() + ";");
 			rs2.next();
 			count = rs2.getInt("rowcount");
 			rs2.close();
@@ -101,34 +165,36 @@ public class StreetDataSource {
 
 	}
 
-	private Landuse mapLanduse(StreetSegment s) {
-		
-			String landuse_tag = s.getTags().get("incline_landuse");
+	/**
+	 * Maps the value of the tag "incline_landuse" to the ordinal of a
+	 * {@link Landuse}.
+	 */
+	static byte mapLanduse(String landuse_tag) {
 
-			if (landuse_tag != null) {
-				switch (landuse_tag) {
+		if (landuse_tag != null) {
+			switch (landuse_tag) {
 
-				case "forest":
-					return Landuse.FORESTED;
+			case "forest":
+				return (byte) Landuse.FORESTED.ordinal();
 
-				case "commercial":
-				case "residential":
-				case "industrial":
-					return Landuse.URBAN;
+			case "commercial":
+			case "residential":
+			case "industrial":
+				return (byte) Landuse.URBAN.ordinal();
 
-				case "farm":
-				case "farmland":
-				case "allotments":
-				case "grass":
-					return Landuse.RURAL;
+			case "farm":
+			case "farmland":
+			case "allotments":
+			case "grass":
+				return (byte) Landuse.RURAL.ordinal();
 
-				default:
-					return Landuse.NO_LANDUSE;
-				}
-			} else {
-				return Landuse.NO_LANDUSE;
+			default:
+				return (byte) Landuse.NO_LANDUSE.ordinal();
 			}
-
-		} 
+		} else {
+			return (byte) Landuse.NO_LANDUSE.ordinal();
+		}
 
 	}
+
+}
@@ -0,0 +1,31 @@
+package osmgpxtool.inclinecalculator.datasource;
+
+import osmgpxtool.inclinecalculator.StreetSegment;
+
+/**
+ * Iterates over the streets, ordered by id.
+ *
+ */
+public interface StreetSource {
+
+	/**
+	 * Moves to the next street.
+	 *
+	 * @return false, if there are no more streets
+	 * @throws DataSourceException
+	 *             if the streets could not be read
+	 */
+	boolean hasNext();
+
+	/**
+	 * @return the current street or null, if its geometry could not be parsed
+	 * @throws DataSourceException
+	 *             if the street could not be read
+	 */
+	StreetSegment getCurrentStreet();
+
+	/**
+	 * @return number of streets
+	 */
+	int getSize();
+}
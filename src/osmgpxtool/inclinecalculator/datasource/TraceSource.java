@@ -0,0 +1,21 @@
+package osmgpxtool.inclinecalculator.datasource;
+
+import java.util.List;
+
+import osmgpxtool.inclinecalculator.StreetSegment;
+import osmgpxtool.inclinecalculator.gps.GpsTracePart;
+
+/**
+ * Provides the GPS traces matched to a street, clipped to its buffer.
+ *
+ */
+public interface TraceSource {
+
+	/**
+	 * @param s
+	 * @return the clipped trace parts
+	 * @throws DataSourceException
+	 *             if the traces could not be read
+	 */
+	List<GpsTracePart> getClippedTracesWithinBufferOf(StreetSegment s);
+}
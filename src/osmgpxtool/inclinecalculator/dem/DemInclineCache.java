@@ -0,0 +1,334 @@
+package osmgpxtool.inclinecalculator.dem;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of the DEM inclines of streets. The incline of a street
+ * only depends on its geometry, the densify distance and the DEM, so it can
+ * be reused by later runs as long as these do not change.
+ *
+ * There is one cache file per DEM. Its header contains a fingerprint of the
+ * DEM file and the densify distance. A file with a different fingerprint is
+ * ignored and replaced. The records (street id, geometry hash, incline) are
+ * sorted by street id and read through a memory mapping. As streets are
+ * processed in order of their id, a lookup starts at the position of the
+ * previous one.
+ *
+ * New inclines are collected in memory and merged with the old records into
+ * a new file on {@link #close()}.
+ *
+ * All methods are synchronized, so a cache can be shared by parallel
+ * workers.
+ *
+ */
+public class DemInclineCache implements Closeable {
+	static Logger LOGGER = LoggerFactory.getLogger(DemInclineCache.class);
+
+	private static final int MAGIC = 0x44454D43; // "DEMC"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	private static final int RECORD_SIZE = 20;
+	/**
+	 * Number of records per memory mapped chunk
+	 */
+	private static final int CHUNK_RECORDS = 1 << 26;
+
+	private final File file;
+	private final long fingerprint;
+
+	// old records
+	private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+	private long oldCount = 0;
+	private long cursor = 0;
+
+	// new records
+	private int[] newIds = new int[1024];
+	private long[] newHashes = new long[1024];
+	private double[] newInclines = new double[1024];
+	private int newCount = 0;
+
+	private int hits = 0;
+	private int misses = 0;
+
+	/**
+	 * @param cacheDir
+	 *            directory of the cache files
+	 * @param demName
+	 *            name of the DEM, used as file name
+	 * @param demPath
+	 *            path to the DEM file
+	 * @param densifyDistance
+	 *            densify distance used to sample the DEM
+	 * @throws IOException
+	 */
+	public DemInclineCache(File cacheDir, String demName, String demPath, double densifyDistance)
+			throws IOException {
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+			throw new IOException("Could not create cache directory " + cacheDir);
+		}
+		this.file = new File(cacheDir, demName + ".inclinecache");
+		this.fingerprint = fingerprint(new File(demPath), densifyDistance);
+		open();
+	}
+
+	private void open() throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() < HEADER_SIZE) {
+				LOGGER.warn("DEM cache " + file + " is corrupt and will be replaced.");
+				return;
+			}
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				LOGGER.warn("DEM cache " + file + " has an unknown format and will be replaced.");
+				return;
+			}
+			if (header.getLong() != fingerprint) {
+				LOGGER.info("DEM or densify distance changed, DEM cache " + file + " will be replaced.");
+				return;
+			}
+			long count = header.getLong();
+			if (channel.size() != HEADER_SIZE + count * RECORD_SIZE) {
+				LOGGER.warn("DEM cache " + file + " is corrupt and will be replaced.");
+				return;
+			}
+			int chunkCount = (int) ((count + CHUNK_RECORDS - 1) / CHUNK_RECORDS);
+			chunks = new MappedByteBuffer[chunkCount];
+			for (int c = 0; c < chunkCount; c++) {
+				long first = (long) c * CHUNK_RECORDS;
+				long records = Math.min(CHUNK_RECORDS, count - first);
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, records
+						* RECORD_SIZE);
+			}
+			oldCount = count;
+			LOGGER.info("Using DEM cache " + file + " with " + count + " streets.");
+		} finally {
+			// the mappings stay valid after closing the file
+			raf.close();
+		}
+	}
+
+	private int oldId(long index) {
+		return chunks[(int) (index / CHUNK_RECORDS)].getInt((int) (index % CHUNK_RECORDS) * RECORD_SIZE);
+	}
+
+	private long oldHash(long index) {
+		return chunks[(int) (index / CHUNK_RECORDS)].getLong((int) (index % CHUNK_RECORDS) * RECORD_SIZE + 4);
+	}
+
+	private double oldIncline(long index) {
+		return chunks[(int) (index / CHUNK_RECORDS)].getDouble((int) (index % CHUNK_RECORDS) * RECORD_SIZE + 12);
+	}
+
+	/**
+	 * Returns the index of the first old record with an id >= the given id.
+	 */
+	private long lowerBound(int streetId) {
+		long lo = 0;
+		long hi = oldCount;
+		// streets are usually requested in ascending order
+		if (cursor < oldCount && oldId(cursor) <= streetId) {
+			lo = cursor;
+		}
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			if (oldId(mid) < streetId) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Looks up the cached incline of a street. The incline itself is read
+	 * with {@link #getIncline(long)}, because NaN is a valid incline of a
+	 * street, which is not completely covered by the DEM.
+	 *
+	 * @param streetId
+	 * @param geomHash
+	 *            hash of the street geometry, see
+	 *            {@link #hashGeometry(double[], int)}
+	 * @return index of the record or -1, if the street is not cached or its
+	 *         geometry changed.
+	 */
+	public synchronized long find(int streetId, long geomHash) {
+		long index = lowerBound(streetId);
+		cursor = index;
+		if (index < oldCount && oldId(index) == streetId && oldHash(index) == geomHash) {
+			hits++;
+			return index;
+		}
+		misses++;
+		return -1;
+	}
+
+	/**
+	 * @param index
+	 *            index of a record returned by {@link #find(int, long)}
+	 * @return the cached incline, may be NaN
+	 */
+	public synchronized double getIncline(long index) {
+		return oldIncline(index);
+	}
+
+	/**
+	 * Adds the incline of a street to the cache. It will be written on
+	 * {@link #close()}.
+	 *
+	 * @param streetId
+	 * @param geomHash
+	 * @param incline
+	 */
+	public synchronized void put(int streetId, long geomHash, double incline) {
+		if (newCount == newIds.length) {
+			int newLength = newIds.length * 2;
+			newIds = Arrays.copyOf(newIds, newLength);
+			newHashes = Arrays.copyOf(newHashes, newLength);
+			newInclines = Arrays.copyOf(newInclines, newLength);
+		}
+		newIds[newCount] = streetId;
+		newHashes[newCount] = geomHash;
+		newInclines[newCount] = incline;
+		newCount++;
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Merges the new inclines with the valid old ones and writes them to the
+	 * cache file.
+	 */
+	public synchronized void close() throws IOException {
+		if (newCount == 0) {
+			return;
+		}
+		// sort new records by id; for equal ids the record added last wins
+		long[] order = new long[newCount];
+		for (int i = 0; i < newCount; i++) {
+			order[i] = ((long) newIds[i] << 32) | i;
+		}
+		Arrays.sort(order);
+
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		long written = 0;
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+			// placeholder for the number of records
+			out.writeLong(0);
+
+			long o = 0;
+			int n = 0;
+			while (n < newCount) {
+				int i = (int) order[n];
+				// skip superseded records with the same id
+				if (n + 1 < newCount && newIds[(int) order[n + 1]] == newIds[i]) {
+					n++;
+					continue;
+				}
+				while (o < oldCount && oldId(o) < newIds[i]) {
+					writeRecord(out, oldId(o), oldHash(o), oldIncline(o));
+					written++;
+					o++;
+				}
+				if (o < oldCount && oldId(o) == newIds[i]) {
+					o++;
+				}
+				writeRecord(out, newIds[i], newHashes[i], newInclines[i]);
+				written++;
+				n++;
+			}
+			while (o < oldCount) {
+				writeRecord(out, oldId(o), oldHash(o), oldIncline(o));
+				written++;
+				o++;
+			}
+		} finally {
+			out.close();
+		}
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			raf.seek(16);
+			raf.writeLong(written);
+		} finally {
+			raf.close();
+		}
+		chunks = new MappedByteBuffer[0];
+		oldCount = 0;
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		LOGGER.info("Wrote DEM cache " + file + " with " + written + " streets (hits=" + hits + ", misses=" + misses
+				+ ").");
+		newCount = 0;
+	}
+
+	private static void writeRecord(DataOutputStream out, int id, long hash, double incline) throws IOException {
+		out.writeInt(id);
+		out.writeLong(hash);
+		out.writeDouble(incline);
+	}
+
+	/**
+	 * Computes a hash of packed coordinates.
+	 *
+	 * @param xy
+	 *            packed coordinates (x0, y0, x1, y1, ...)
+	 * @param numPoints
+	 * @return
+	 */
+	public static long hashGeometry(double[] xy, int numPoints) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < numPoints * 2; i++) {
+			h = mix(h ^ Double.doubleToLongBits(xy[i]));
+		}
+		return mix(h ^ numPoints);
+	}
+
+	private static long mix(long h) {
+		h *= 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+	/**
+	 * The fingerprint of a DEM consists of its path, size and modification
+	 * date and the densify distance.
+	 */
+	private static long fingerprint(File dem, double densifyDistance) throws IOException {
+		long h = 0xcbf29ce484222325L;
+		String path = dem.getCanonicalPath();
+		for (int i = 0; i < path.length(); i++) {
+			h = mix(h ^ path.charAt(i));
+		}
+		h = mix(h ^ dem.length());
+		h = mix(h ^ dem.lastModified());
+		h = mix(h ^ Double.doubleToLongBits(densifyDistance));
+		return h;
+	}
+}
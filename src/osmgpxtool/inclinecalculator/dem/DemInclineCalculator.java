@@ -0,0 +1,215 @@
+package osmgpxtool.inclinecalculator.dem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import osmgpxtool.inclinecalculator.InclineConfig;
+import osmgpxtool.inclinecalculator.StreetSegment;
+import osmgpxtool.inclinecalculator.datasource.RasterDataSource;
+import osmgpxtool.inclinecalculator.profile.SectionProfile;
+
+/**
+ * Calculates the inclines of streets from all configured DEMs
+ * ("pathToLidar", "pathToSrtm"). If "demCacheDir" is set, inclines are
+ * cached on disk per DEM (see {@link DemInclineCache}) and only streets,
+ * whose geometry or DEM changed, are sampled again.
+ *
+ * An instance must not be shared between threads. Parallel workers use
+ * instances created by {@link #createWorker()}, which share the rasters and
+ * caches.
+ *
+ */
+public class DemInclineCalculator {
+	static Logger LOGGER = LoggerFactory.getLogger(DemInclineCalculator.class);
+
+	private final MultiDemSampler sampler;
+	private DemProfile profile;
+	private double densifyDistance;
+	// only the instance owning the caches writes them on close
+	private final boolean owner;
+	private DemInclineCache[] caches = new DemInclineCache[0];
+
+	private double[] inclines = new double[0];
+	private boolean[] missing = new boolean[0];
+
+	public DemInclineCalculator(InclineConfig config) {
+		sampler = new MultiDemSampler();
+		owner = true;
+		register(config, "lidar", config.getPathToLidar());
+		register(config, "srtm", config.getPathToSrtm());
+	}
+
+	private DemInclineCalculator(DemInclineCalculator other) {
+		sampler = other.sampler.copy();
+		owner = false;
+		densifyDistance = other.densifyDistance;
+		if (other.profile != null) {
+			profile = new DemProfile(densifyDistance);
+		}
+		caches = other.caches;
+		inclines = new double[caches.length];
+		missing = new boolean[caches.length];
+	}
+
+	/**
+	 * Creates a calculator for another thread, which samples the same DEMs
+	 * and uses the same caches.
+	 *
+	 * @return
+	 */
+	public DemInclineCalculator createWorker() {
+		return new DemInclineCalculator(this);
+	}
+
+	private void register(InclineConfig config, String name, String path) {
+		// if not set do not init
+		if (path == null) {
+			return;
+		}
+		densifyDistance = config.getStreetDensifyDistance();
+		if (profile == null) {
+			profile = new DemProfile(densifyDistance);
+		}
+		int index = sampler.register(name, new RasterDataSource(path));
+		caches = Arrays.copyOf(caches, index + 1);
+		inclines = new double[index + 1];
+		missing = new boolean[index + 1];
+
+		String cacheDir = config.getDemCacheDir();
+		if (cacheDir != null) {
+			try {
+				caches[index] = new DemInclineCache(new File(cacheDir), name, path, densifyDistance);
+			} catch (IOException e) {
+				LOGGER.error("Could not open DEM cache in " + cacheDir + ", inclines of " + name
+						+ " will not be cached.");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return true, if no DEM is configured
+	 */
+	public boolean isEmpty() {
+		return sampler.isEmpty();
+	}
+
+	/**
+	 * @param name
+	 *            name of the DEM ("lidar" or "srtm")
+	 * @return index of the DEM or -1, if the DEM is not configured
+	 */
+	public int indexOf(String name) {
+		return sampler.indexOf(name);
+	}
+
+	/**
+	 * Calculates the mean incline [%] of the street for all DEMs.
+	 *
+	 * @param s
+	 * @return inclines in order of {@link #indexOf(String)}. The array is
+	 *         reused.
+	 */
+	public double[] calculateInclines(StreetSegment s) {
+		return calculateInclines(s, null);
+	}
+
+	/**
+	 * Calculates the mean incline [%] of the street for all DEMs and adds the
+	 * inclines between the sample positions to the section profiles. If
+	 * profiles are requested, all DEMs are sampled, as the cache only holds
+	 * the mean inclines.
+	 *
+	 * @param s
+	 * @param sections
+	 *            section profile per DEM in order of {@link #indexOf(String)},
+	 *            which must be reset for the street, or null
+	 * @return inclines in order of {@link #indexOf(String)}. The array is
+	 *         reused.
+	 */
+	public double[] calculateInclines(StreetSegment s, SectionProfile[] sections) {
+		int demCount = sampler.size();
+		if (demCount == 0) {
+			return inclines;
+		}
+		double[] xy = s.getCoordinates();
+		int numPoints = s.getNumPoints();
+
+		long geomHash = 0;
+		boolean hashed = false;
+		int missingCount = demCount;
+		for (int d = 0; d < demCount; d++) {
+			missing[d] = true;
+			if (caches[d] != null) {
+				if (!hashed) {
+					geomHash = DemInclineCache.hashGeometry(xy, numPoints);
+					hashed = true;
+				}
+				long index = sections == null ? caches[d].find(s.getId(), geomHash) : -1;
+				if (index >= 0) {
+					inclines[d] = caches[d].getIncline(index);
+					missing[d] = false;
+					missingCount--;
+				}
+			}
+		}
+
+		if (missingCount > 0) {
+			profile.setStreet(xy, numPoints);
+			double[] sampled = sampler.calculateInclines(profile, missing);
+			for (int d = 0; d < demCount; d++) {
+				if (missing[d]) {
+					inclines[d] = sampled[d];
+					if (caches[d] != null) {
+						caches[d].put(s.getId(), geomHash, sampled[d]);
+					}
+				}
+			}
+			if (sections != null) {
+				addSectionInclines(sections);
+			}
+		}
+		return inclines;
+	}
+
+	private void addSectionInclines(SectionProfile[] sections) {
+		int n = profile.size();
+		double[] dist = profile.getDistances();
+		for (int d = 0; d < sections.length; d++) {
+			if (sections[d] == null) {
+				continue;
+			}
+			double[] heights = sampler.getHeights(d);
+			double measure = 0;
+			for (int i = 0; i < n - 1; i++) {
+				double incline = (heights[i + 1] - heights[i]) / dist[i] * 100;
+				sections[d].add(measure + dist[i] / 2, incline, dist[i]);
+				measure += dist[i];
+			}
+		}
+	}
+
+	/**
+	 * Writes the DEM caches. Calculators created by {@link #createWorker()}
+	 * do not write the caches.
+	 */
+	public void close() {
+		if (!owner) {
+			return;
+		}
+		for (DemInclineCache cache : caches) {
+			if (cache != null) {
+				try {
+					cache.close();
+				} catch (IOException e) {
+					LOGGER.error("Could not write DEM cache.");
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
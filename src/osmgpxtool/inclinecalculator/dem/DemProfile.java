@@ -0,0 +1,183 @@
+package osmgpxtool.inclinecalculator.dem;
+
+import java.util.Arrays;
+
+import osmgpxtool.inclinecalculator.datasource.RasterDataSource;
+import osmgpxtool.inclinecalculator.util.Util;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+/**
+ * Height profile of a street, sampled from a DEM at regular positions along
+ * the street.
+ *
+ * The sample positions are the vertices of the street densified with the
+ * given maximum distance in degrees. They are generated arithmetically and
+ * are equal to the vertices {@link com.vividsolutions.jts.densify.Densifier}
+ * would create, but no geometry is built. Each position is sampled exactly
+ * once. The distance between two samples is derived from one orthometric
+ * distance per original street segment.
+ *
+ * All arrays are reused between streets, therefore an instance must not be
+ * shared between threads.
+ *
+ */
+public class DemProfile {
+	private final double densifyDistance;
+	private final float[] rasterBuffer = new float[4];
+
+	private double[] x = new double[64];
+	private double[] y = new double[64];
+	/**
+	 * dist[i] is the orthometric distance between sample i and i+1 in meters
+	 */
+	private double[] dist = new double[64];
+	private double[] z = new double[64];
+	private int size;
+
+	/**
+	 * @param densifyDistance
+	 *            maximum distance between two sample positions in degrees
+	 */
+	public DemProfile(double densifyDistance) {
+		if (!(densifyDistance > 0)) {
+			throw new IllegalArgumentException("densify distance must be positive");
+		}
+		this.densifyDistance = densifyDistance;
+	}
+
+	public void setStreet(LineString geom) {
+		Coordinate[] coords = geom.getCoordinates();
+		double[] xy = new double[coords.length * 2];
+		for (int i = 0; i < coords.length; i++) {
+			xy[2 * i] = coords[i].x;
+			xy[2 * i + 1] = coords[i].y;
+		}
+		setStreet(xy, coords.length);
+	}
+
+	/**
+	 * Generates the sample positions of a street.
+	 *
+	 * @param xy
+	 *            packed coordinates of the street (x0, y0, x1, y1, ...)
+	 * @param numPoints
+	 *            number of points of the street
+	 */
+	public void setStreet(double[] xy, int numPoints) {
+		size = 0;
+		if (numPoints == 0) {
+			return;
+		}
+		add(xy[0], xy[1]);
+		for (int i = 0; i < numPoints - 1; i++) {
+			double x0 = xy[2 * i];
+			double y0 = xy[2 * i + 1];
+			double x1 = xy[2 * i + 2];
+			double y1 = xy[2 * i + 3];
+			double dx = x1 - x0;
+			double dy = y1 - y0;
+			double len = Math.sqrt(dx * dx + dy * dy);
+			if (len == 0) {
+				// repeated point
+				continue;
+			}
+			int segCount = (int) (len / densifyDistance) + 1;
+			double segDist = Util.calculateOrthometricDistance(x0, y0, x1, y1) / segCount;
+			ensureCapacity(size + segCount);
+			double segLen = len / segCount;
+			for (int j = 1; j < segCount; j++) {
+				double fraction = (j * segLen) / len;
+				dist[size - 1] = segDist;
+				x[size] = x0 + fraction * dx;
+				y[size] = y0 + fraction * dy;
+				size++;
+			}
+			dist[size - 1] = segDist;
+			x[size] = x1;
+			y[size] = y1;
+			size++;
+		}
+	}
+
+	private void add(double px, double py) {
+		ensureCapacity(size + 1);
+		x[size] = px;
+		y[size] = py;
+		size++;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > x.length) {
+			int newLength = Math.max(capacity, x.length * 2);
+			x = Arrays.copyOf(x, newLength);
+			y = Arrays.copyOf(y, newLength);
+			dist = Arrays.copyOf(dist, newLength);
+			z = Arrays.copyOf(z, newLength);
+		}
+	}
+
+	/**
+	 * Samples the heights of all positions from the given raster.
+	 *
+	 * @param raster
+	 * @return the sampled heights. Only the first {@link #size()} values are
+	 *         valid, the array is reused.
+	 */
+	public double[] sample(RasterDataSource raster) {
+		for (int i = 0; i < size; i++) {
+			z[i] = raster.getHeightAt(x[i], y[i], rasterBuffer);
+		}
+		return z;
+	}
+
+	/**
+	 * Calculates the mean incline [%] of the street from the given raster.
+	 * The result is rounded to two decimal places.
+	 *
+	 * @param raster
+	 * @return
+	 */
+	public double calculateIncline(RasterDataSource raster) {
+		return calculateIncline(sample(raster));
+	}
+
+	/**
+	 * Calculates the mean incline [%] of the current sample positions from
+	 * heights sampled at these positions. The result is rounded to two
+	 * decimal places.
+	 *
+	 * @param heights
+	 * @return
+	 */
+	public double calculateIncline(double[] heights) {
+		int segments = size - 1;
+		double[] d = dist;
+		double sumIncline = 0;
+		for (int i = 0; i < segments; i++) {
+			sumIncline += (heights[i + 1] - heights[i]) / d[i];
+		}
+		double meanIncline = sumIncline * 100 / segments;
+		return (double) Math.round(meanIncline * 100) / 100;
+	}
+
+	/**
+	 * @return number of sample positions of the current street
+	 */
+	public int size() {
+		return size;
+	}
+
+	public double[] getX() {
+		return x;
+	}
+
+	public double[] getY() {
+		return y;
+	}
+
+	public double[] getDistances() {
+		return dist;
+	}
+}
@@ -0,0 +1,153 @@
+package osmgpxtool.inclinecalculator.dem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import osmgpxtool.inclinecalculator.datasource.RasterDataSource;
+
+/**
+ * Evaluates any number of registered DEMs (e.g. LiDAR, SRTM) for the sample
+ * positions of a {@link DemProfile} in one traversal. The positions and
+ * distances of the profile are shared by all DEMs, so an additional DEM
+ * only costs its raster lookups.
+ *
+ * The height arrays are reused between streets, therefore an instance must
+ * not be shared between threads.
+ *
+ */
+public class MultiDemSampler {
+	private final List<String> names = new ArrayList<String>();
+	private RasterDataSource[] rasters = new RasterDataSource[0];
+	private double[][] heights = new double[0][];
+	private double[] inclines = new double[0];
+	// scratch arrays of the DEMs selected for sampling
+	private RasterDataSource[] active = new RasterDataSource[0];
+	private double[][] activeHeights = new double[0][];
+	private final float[] rasterBuffer = new float[4];
+
+	/**
+	 * Registers a DEM.
+	 *
+	 * @param name
+	 *            name of the DEM, e.g. "lidar"
+	 * @param raster
+	 * @return index of the DEM in the result of
+	 *         {@link #calculateInclines(DemProfile)}
+	 */
+	public int register(String name, RasterDataSource raster) {
+		if (names.contains(name)) {
+			throw new IllegalArgumentException("DEM \"" + name + "\" is already registered.");
+		}
+		int index = rasters.length;
+		names.add(name);
+		rasters = Arrays.copyOf(rasters, index + 1);
+		rasters[index] = raster;
+		heights = Arrays.copyOf(heights, index + 1);
+		heights[index] = new double[64];
+		inclines = new double[index + 1];
+		active = new RasterDataSource[index + 1];
+		activeHeights = new double[index + 1][];
+		return index;
+	}
+
+	/**
+	 * Creates a sampler of the same DEMs with its own height arrays, e.g.
+	 * for another thread. The rasters are shared.
+	 *
+	 * @return
+	 */
+	public MultiDemSampler copy() {
+		MultiDemSampler copy = new MultiDemSampler();
+		for (int d = 0; d < rasters.length; d++) {
+			copy.register(names.get(d), rasters[d]);
+		}
+		return copy;
+	}
+
+	/**
+	 * @param name
+	 * @return index of the DEM or -1, if no DEM with this name is registered
+	 */
+	public int indexOf(String name) {
+		return names.indexOf(name);
+	}
+
+	public String getName(int index) {
+		return names.get(index);
+	}
+
+	public int size() {
+		return rasters.length;
+	}
+
+	public boolean isEmpty() {
+		return rasters.length == 0;
+	}
+
+	/**
+	 * Samples all registered DEMs at the positions of the profile and
+	 * calculates the mean incline [%] for each of them.
+	 *
+	 * @param profile
+	 * @return inclines in order of registration. The array is reused.
+	 */
+	public double[] calculateInclines(DemProfile profile) {
+		return calculateInclines(profile, null);
+	}
+
+	/**
+	 * Samples the selected DEMs at the positions of the profile and
+	 * calculates the mean incline [%] for each of them.
+	 *
+	 * @param profile
+	 * @param selected
+	 *            DEMs to evaluate by index, null for all DEMs
+	 * @return inclines in order of registration, NaN for DEMs which are not
+	 *         selected. The array is reused.
+	 */
+	public double[] calculateInclines(DemProfile profile, boolean[] selected) {
+		int n = profile.size();
+		int demCount = rasters.length;
+		int activeCount = 0;
+		for (int d = 0; d < demCount; d++) {
+			if (heights[d].length < n) {
+				heights[d] = new double[Math.max(n, heights[d].length * 2)];
+			}
+			if (selected == null || selected[d]) {
+				active[activeCount] = rasters[d];
+				activeHeights[activeCount] = heights[d];
+				activeCount++;
+			}
+		}
+		double[] x = profile.getX();
+		double[] y = profile.getY();
+		for (int i = 0; i < n; i++) {
+			double px = x[i];
+			double py = y[i];
+			for (int d = 0; d < activeCount; d++) {
+				activeHeights[d][i] = active[d].getHeightAt(px, py, rasterBuffer);
+			}
+		}
+		for (int d = 0; d < demCount; d++) {
+			if (selected == null || selected[d]) {
+				inclines[d] = profile.calculateIncline(heights[d]);
+			} else {
+				inclines[d] = Double.NaN;
+			}
+		}
+		return inclines;
+	}
+
+	/**
+	 * Returns the heights of the given DEM sampled by the last call of
+	 * {@link #calculateInclines(DemProfile)}.
+	 *
+	 * @param index
+	 * @return heights, only the first {@link DemProfile#size()} values are
+	 *         valid.
+	 */
+	public double[] getHeights(int index) {
+		return heights[index];
+	}
+}
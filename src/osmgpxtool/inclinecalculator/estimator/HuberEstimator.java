@@ -0,0 +1,80 @@
+package osmgpxtool.inclinecalculator.estimator;
+
+/**
+ * Huber M-estimator of location with length weights. Residuals smaller than
+ * k times the scale are weighted fully, larger ones with k/|residual|. The
+ * scale is the normalized median absolute deviation (MAD) from the weighted
+ * median, which is also the starting point of the iteratively reweighted
+ * mean.
+ *
+ */
+public class HuberEstimator implements InclineEstimator {
+	public static final String NAME = "huber";
+
+	private static final int MAX_ITERATIONS = 30;
+	private static final double TOLERANCE = 1e-6;
+	/**
+	 * Normalizes the MAD to the standard deviation of a normal distribution
+	 */
+	private static final double MAD_TO_SIGMA = 1.4826;
+
+	private final double k;
+
+	private double[] residuals = new double[32];
+	private double[] residualWeights = new double[32];
+
+	/**
+	 * @param k
+	 *            tuning constant in units of the scale, e.g. 1.345
+	 */
+	public HuberEstimator(double k) {
+		if (!(k > 0)) {
+			throw new IllegalArgumentException("Huber tuning constant must be positive, but is " + k);
+		}
+		this.k = k;
+	}
+
+	public String getName() {
+		return NAME;
+	}
+
+	public double estimate(InclineSamples samples) {
+		double[] values = samples.getValues();
+		double[] weights = samples.getWeights();
+		int n = samples.size();
+
+		double mu = WeightedSelection.median(values, weights, n);
+
+		if (residuals.length < n) {
+			residuals = new double[Math.max(n, residuals.length * 2)];
+			residualWeights = new double[residuals.length];
+		}
+		for (int i = 0; i < n; i++) {
+			residuals[i] = Math.abs(values[i] - mu);
+		}
+		System.arraycopy(weights, 0, residualWeights, 0, n);
+		double scale = MAD_TO_SIGMA * WeightedSelection.median(residuals, residualWeights, n);
+		if (!(scale > 0)) {
+			// more than half of the weight has the same value
+			return mu;
+		}
+
+		double threshold = k * scale;
+		for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+			double num = 0;
+			double den = 0;
+			for (int i = 0; i < n; i++) {
+				double r = Math.abs(values[i] - mu);
+				double w = r <= threshold ? weights[i] : weights[i] * threshold / r;
+				num += w * values[i];
+				den += w;
+			}
+			double newMu = num / den;
+			if (Math.abs(newMu - mu) < TOLERANCE * scale) {
+				return newMu;
+			}
+			mu = newMu;
+		}
+		return mu;
+	}
+}
@@ -0,0 +1,27 @@
+package osmgpxtool.inclinecalculator.estimator;
+
+/**
+ * Estimates the incline of a street from the weighted incline values of all
+ * trace lines matched to the street.
+ *
+ * Implementations may keep scratch buffers and must not be shared between
+ * threads.
+ *
+ */
+public interface InclineEstimator {
+
+	/**
+	 * @return the name of the estimator as used in the properties file and
+	 *         written to the output table
+	 */
+	String getName();
+
+	/**
+	 * Estimates the incline. The order of the samples may be changed.
+	 *
+	 * @param samples
+	 *            at least one sample
+	 * @return the estimated incline
+	 */
+	double estimate(InclineSamples samples);
+}
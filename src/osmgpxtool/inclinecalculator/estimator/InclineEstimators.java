@@ -0,0 +1,38 @@
+package osmgpxtool.inclinecalculator.estimator;
+
+import osmgpxtool.inclinecalculator.InclineConfig;
+
+
+/**
+ * Creates the {@link InclineEstimator} configured by the key
+ * "inclineEstimator" of the properties file.
+ *
+ */
+public class InclineEstimators {
+
+	/**
+	 * Creates a new estimator. Defaults to the weighted mean, if
+	 * "inclineEstimator" is not set.
+	 *
+	 * @param config
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the estimator is unknown
+	 */
+	public static InclineEstimator create(InclineConfig config) {
+		String name = config.getInclineEstimator();
+		if (name.equals(WeightedMeanEstimator.NAME)) {
+			return new WeightedMeanEstimator();
+		} else if (name.equals(WeightedMedianEstimator.NAME)) {
+			return new WeightedMedianEstimator();
+		} else if (name.equals(TrimmedMeanEstimator.NAME)) {
+			return new TrimmedMeanEstimator(config.getEstimatorTrimFraction());
+		} else if (name.equals(HuberEstimator.NAME)) {
+			return new HuberEstimator(config.getEstimatorHuberK());
+		} else {
+			throw new IllegalArgumentException("Wrong argument in properties file. The key \"inclineEstimator\" must have value \""
+					+ WeightedMeanEstimator.NAME + "\", \"" + WeightedMedianEstimator.NAME + "\", \""
+					+ TrimmedMeanEstimator.NAME + "\" or \"" + HuberEstimator.NAME + "\".");
+		}
+	}
+}
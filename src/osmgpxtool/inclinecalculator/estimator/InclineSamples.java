@@ -0,0 +1,51 @@
+package osmgpxtool.inclinecalculator.estimator;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of incline values and their weights (the length of the
+ * trace line they were calculated from). The arrays are reused between
+ * streets after calling {@link #clear()}.
+ *
+ */
+public class InclineSamples {
+	private double[] values = new double[32];
+	private double[] weights = new double[32];
+	private int size;
+
+	public void clear() {
+		size = 0;
+	}
+
+	public void add(double incline, double weight) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+			weights = Arrays.copyOf(weights, size * 2);
+		}
+		values[size] = incline;
+		weights[size] = weight;
+		size++;
+	}
+
+	/**
+	 * @return incline values, only the first {@link #size()} values are valid
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * @return weights, only the first {@link #size()} values are valid
+	 */
+	public double[] getWeights() {
+		return weights;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -0,0 +1,75 @@
+package osmgpxtool.inclinecalculator.estimator;
+
+/**
+ * Weighted mean of the incline values after removing the given fraction of
+ * the total weight from both tails of the distribution. Values at the cut
+ * points contribute with the part of their weight within the kept range.
+ *
+ * The cut points are found by two selections, so no sort is needed.
+ *
+ */
+public class TrimmedMeanEstimator implements InclineEstimator {
+	public static final String NAME = "trimmed_mean";
+
+	private final double trim;
+
+	/**
+	 * @param trim
+	 *            fraction of weight to remove from each tail, in [0, 0.5)
+	 */
+	public TrimmedMeanEstimator(double trim) {
+		if (!(trim >= 0 && trim < 0.5)) {
+			throw new IllegalArgumentException("Trim fraction must be within [0, 0.5), but is " + trim);
+		}
+		this.trim = trim;
+	}
+
+	public String getName() {
+		return NAME;
+	}
+
+	public double estimate(InclineSamples samples) {
+		double[] values = samples.getValues();
+		double[] weights = samples.getWeights();
+		int n = samples.size();
+
+		double total = 0;
+		for (int i = 0; i < n; i++) {
+			total += weights[i];
+		}
+		double a = trim * total;
+		double b = (1 - trim) * total;
+		double lower = values[WeightedSelection.select(values, weights, 0, n, a)];
+		double upper = values[WeightedSelection.select(values, weights, 0, n, b)];
+		if (lower == upper) {
+			return lower;
+		}
+
+		double wBelowLower = 0;
+		double wLower = 0;
+		double wBelowUpper = 0;
+		double wUpper = 0;
+		double sumBetween = 0;
+		double wBetween = 0;
+		for (int i = 0; i < n; i++) {
+			double v = values[i];
+			double w = weights[i];
+			if (v < lower) {
+				wBelowLower += w;
+			} else if (v == lower) {
+				wLower += w;
+			} else if (v < upper) {
+				sumBetween += v * w;
+				wBetween += w;
+			} else if (v == upper) {
+				wUpper += w;
+			}
+		}
+		wBelowUpper = wBelowLower + wLower + wBetween;
+		// part of the weight of the cut values within [a, b]
+		double keptLower = Math.max(0, Math.min(wBelowLower + wLower, b) - Math.max(wBelowLower, a));
+		double keptUpper = Math.max(0, Math.min(wBelowUpper + wUpper, b) - Math.max(wBelowUpper, a));
+
+		return (lower * keptLower + sumBetween + upper * keptUpper) / (keptLower + wBetween + keptUpper);
+	}
+}
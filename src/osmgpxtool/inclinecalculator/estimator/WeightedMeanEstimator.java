@@ -0,0 +1,27 @@
+package osmgpxtool.inclinecalculator.estimator;
+
+/**
+ * Mean of all incline values weighted by the length of the trace lines.
+ *
+ */
+public class WeightedMeanEstimator implements InclineEstimator {
+	public static final String NAME = "weighted_mean";
+
+	public String getName() {
+		return NAME;
+	}
+
+	public double estimate(InclineSamples samples) {
+		return weightedMean(samples.getValues(), samples.getWeights(), samples.size());
+	}
+
+	static double weightedMean(double[] values, double[] weights, int n) {
+		double sumLength = 0;
+		double sumInclinesTimesLength = 0;
+		for (int i = 0; i < n; i++) {
+			sumInclinesTimesLength += values[i] * weights[i];
+			sumLength += weights[i];
+		}
+		return sumInclinesTimesLength / sumLength;
+	}
+}
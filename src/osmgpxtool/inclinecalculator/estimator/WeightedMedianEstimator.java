@@ -0,0 +1,18 @@
+package osmgpxtool.inclinecalculator.estimator;
+
+/**
+ * Median of all incline values weighted by the length of the trace lines.
+ * Computed by selection, without sorting.
+ *
+ */
+public class WeightedMedianEstimator implements InclineEstimator {
+	public static final String NAME = "weighted_median";
+
+	public String getName() {
+		return NAME;
+	}
+
+	public double estimate(InclineSamples samples) {
+		return WeightedSelection.median(samples.getValues(), samples.getWeights(), samples.size());
+	}
+}
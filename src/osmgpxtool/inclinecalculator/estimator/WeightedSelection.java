@@ -0,0 +1,87 @@
+package osmgpxtool.inclinecalculator.estimator;
+
+/**
+ * Selection of weighted quantiles in expected linear time (quickselect with
+ * three-way partitioning). The arrays are permuted in place.
+ *
+ */
+class WeightedSelection {
+
+	/**
+	 * Returns the index of the smallest value, whose cumulative weight is
+	 * greater than or equal to the target weight. After the call, the value
+	 * at the returned index is at its sorted position within [lo, hi).
+	 *
+	 * @param values
+	 * @param weights
+	 * @param lo
+	 *            first index (inclusive)
+	 * @param hi
+	 *            last index (exclusive)
+	 * @param target
+	 *            target cumulative weight within [lo, hi)
+	 * @return
+	 */
+	static int select(double[] values, double[] weights, int lo, int hi, double target) {
+		while (hi - lo > 1) {
+			double pivot = medianOfThree(values[lo], values[(lo + hi) >>> 1], values[hi - 1]);
+			// partition into [lo, lt) < pivot, [lt, gt) == pivot, [gt, hi) >
+			// pivot
+			int lt = lo;
+			int gt = hi;
+			int i = lo;
+			double wLess = 0;
+			double wEqual = 0;
+			while (i < gt) {
+				double v = values[i];
+				if (v < pivot) {
+					wLess += weights[i];
+					swap(values, weights, lt++, i++);
+				} else if (v > pivot) {
+					swap(values, weights, i, --gt);
+				} else {
+					wEqual += weights[i];
+					i++;
+				}
+			}
+			if (target <= wLess && lt > lo) {
+				hi = lt;
+			} else if (target <= wLess + wEqual || gt == hi) {
+				return lt;
+			} else {
+				target -= wLess + wEqual;
+				lo = gt;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Weighted median: the smallest value whose cumulative weight reaches half
+	 * of the total weight.
+	 */
+	static double median(double[] values, double[] weights, int n) {
+		double total = 0;
+		for (int i = 0; i < n; i++) {
+			total += weights[i];
+		}
+		return values[select(values, weights, 0, n, total / 2)];
+	}
+
+	private static double medianOfThree(double a, double b, double c) {
+		if (a < b) {
+			return b < c ? b : (a < c ? c : a);
+		} else {
+			return a < c ? a : (b < c ? c : b);
+		}
+	}
+
+	private static void swap(double[] values, double[] weights, int i, int j) {
+		double v = values[i];
+		values[i] = values[j];
+		values[j] = v;
+		double w = weights[i];
+		weights[i] = weights[j];
+		weights[j] = w;
+	}
+}
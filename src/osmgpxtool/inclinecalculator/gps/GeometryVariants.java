@@ -0,0 +1,85 @@
+package osmgpxtool.inclinecalculator.gps;
+
+import java.util.Properties;
+
+/**
+ * The geometry columns of the gpx table, for which gps inclines are
+ * calculated, given as comma separated list by the key "usedGeom". "raw" and
+ * "smoothed" stand for the columns t_PpGpxGeomCol and t_PpGpxGeomColSmoothed,
+ * any other name is taken as name of a geometry column itself.
+ *
+ * The first variant is the primary one, whose results are written to the
+ * columns incline_gps, incl_gps_std_dev etc. The inclines of the other
+ * variants are written to additional columns with the name of the variant
+ * as suffix, see {@link #getColumnSuffix(int)}.
+ *
+ */
+public class GeometryVariants {
+	public static final String RAW = "raw";
+	public static final String SMOOTHED = "smoothed";
+
+	private final String[] names;
+	private final String[] columns;
+
+	GeometryVariants(String[] names, String[] columns) {
+		this.names = names;
+		this.columns = columns;
+	}
+
+	/**
+	 * @param p
+	 * @return the variants configured by the key "usedGeom"
+	 */
+	public static GeometryVariants create(Properties p) {
+		String usedGeom = p.getProperty("usedGeom");
+		if (usedGeom == null || usedGeom.trim().equals("")) {
+			throw new IllegalArgumentException(
+					"Wrong argument in properties file. The key \"usedGeom\" must have value \"raw\", \"smoothed\", the name of a geometry column or a comma separated list of them.");
+		}
+		String[] names = usedGeom.split(",");
+		String[] columns = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = names[i].trim();
+			if (names[i].equals(RAW)) {
+				columns[i] = p.getProperty("t_PpGpxGeomCol");
+			} else if (names[i].equals(SMOOTHED)) {
+				columns[i] = p.getProperty("t_PpGpxGeomColSmoothed");
+			} else if (names[i].matches("[a-z_][a-z0-9_]*")) {
+				columns[i] = names[i];
+			} else {
+				throw new IllegalArgumentException("Wrong argument in properties file. \"" + names[i]
+						+ "\" in \"usedGeom\" is neither \"raw\", \"smoothed\" nor the name of a column.");
+			}
+			for (int j = 0; j < i; j++) {
+				if (names[j].equals(names[i])) {
+					throw new IllegalArgumentException("Wrong argument in properties file. \"" + names[i]
+							+ "\" is given twice in \"usedGeom\".");
+				}
+			}
+		}
+		return new GeometryVariants(names, columns);
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public String getName(int variant) {
+		return names[variant];
+	}
+
+	/**
+	 * @return name of the geometry column in the gpx table
+	 */
+	public String getColumn(int variant) {
+		return columns[variant];
+	}
+
+	/**
+	 * @return suffix of the result columns of the variant, empty for the
+	 *         primary variant
+	 */
+	public String getColumnSuffix(int variant) {
+		return variant == 0 ? "" : "_" + names[variant];
+	}
+}
@@ -1,11 +1,14 @@
 package osmgpxtool.inclinecalculator.gps;
 
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+
 import com.vividsolutions.jts.geom.MultiLineString;
 
 public class GpsTrace {
 	private int id;
 	private int trkId;
 	private double heading;
+	private CoordinateBuffer coordinates;
 	private MultiLineString geom;
 
 	public int getId() {
@@ -19,15 +22,31 @@ public class GpsTrace {
 		return heading;
 	}
 
+	/**
+	 * @return the coordinates of the trace, null if the trace has no
+	 *         geometry
+	 */
+	public CoordinateBuffer getCoordinates() {
+		return coordinates;
+	}
+
+	/**
+	 * The MultiLineString is created from the coordinates on the first call.
+	 * 
+	 * @return
+	 */
 	public MultiLineString getGeom() {
+		if (geom == null && coordinates != null) {
+			geom = coordinates.toMultiLineString();
+		}
 		return geom;
 	}
 
-	public GpsTrace(int id, int trkId, MultiLineString geom) {
+	public GpsTrace(int id, int trkId, CoordinateBuffer coordinates) {
 		super();
 		this.id = id;
 		this.trkId = trkId;
-		this.geom = geom;
+		this.coordinates = coordinates;
 	}
 
 }
@@ -1,7 +1,7 @@
 package osmgpxtool.inclinecalculator.gps;
 
 
-import com.vividsolutions.jts.geom.MultiLineString;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
 
 
 public class GpsTracePart extends GpsTrace {
@@ -11,28 +11,36 @@ public class GpsTracePart extends GpsTrace {
 	}
 
 	private int partId;
-	private MultiLineString geomSmoothed;
-
-	public MultiLineString getGeomSmoothed() {
-		return geomSmoothed;
+	// coordinates of each geometry variant, see GeometryVariants
+	private CoordinateBuffer[] variants;
+
+	/**
+	 * @param variant
+	 *            index of the variant in {@link GeometryVariants}
+	 * @return the coordinates of the variant, null if the trace has no
+	 *         geometry of this variant
+	 */
+	public CoordinateBuffer getVariant(int variant) {
+		return variants[variant];
 	}
 
-	public void setGeomSmoothed(MultiLineString geomSmoothed) {
-		this.geomSmoothed = geomSmoothed;
+	public int getNumVariants() {
+		return variants.length;
 	}
 
-	public GpsTracePart(int gpsId,int trkId, int partId, MultiLineString geom) {
-		super(gpsId,trkId, geom);
-		this.partId = partId;
+	public GpsTracePart(int gpsId,int trkId, int partId, CoordinateBuffer coordinates) {
+		this(gpsId, trkId, partId, new CoordinateBuffer[] { coordinates });
 	}
 
-	public GpsTracePart(int gpsId,int trkId,  int partId, MultiLineString geom, MultiLineString geomSmoothed) {
-		super(gpsId,trkId,  geom);
+	/**
+	 * @param variants
+	 *            coordinates of each geometry variant, the first one is
+	 *            returned by {@link #getCoordinates()}
+	 */
+	public GpsTracePart(int gpsId,int trkId,  int partId, CoordinateBuffer[] variants) {
+		super(gpsId,trkId,  variants[0]);
 		this.partId = partId;
-		this.geomSmoothed = geomSmoothed;
-	
-	
-	
+		this.variants = variants;
 	}
 
 	public int getPartId() {
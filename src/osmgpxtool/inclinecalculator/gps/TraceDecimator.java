@@ -0,0 +1,190 @@
+package osmgpxtool.inclinecalculator.gps;
+
+import java.util.Arrays;
+
+import osmgpxtool.inclinecalculator.InclineConfig;
+import osmgpxtool.inclinecalculator.linearref.LocalProjection;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+import osmgpxtool.inclinecalculator.util.Util;
+
+/**
+ * Removes redundant points of the clipped traces before their inclines are
+ * calculated. Traces recorded with 1 Hz contain many points with no or a
+ * very small distance to their predecessor, whose height differences are
+ * mostly noise.
+ * <ul>
+ * <li>distance: drops points closer than the tolerance to the last kept
+ * point. The last point of each line is always kept.</li>
+ * <li>douglas_peucker: Douglas-Peucker simplification in 3D with the
+ * tolerance in meters, the positions are projected to local meters.</li>
+ * </ul>
+ * The first and last point of each line are kept by both methods.
+ *
+ * An instance keeps its buffers between calls and must not be shared between
+ * threads.
+ *
+ */
+public class TraceDecimator {
+	public static final String NONE = "none";
+	public static final String DISTANCE = "distance";
+	public static final String DOUGLAS_PEUCKER = "douglas_peucker";
+
+	private final boolean douglasPeucker;
+	private final double tolerance;
+
+	// buffers of the Douglas-Peucker simplification
+	private double[] localX = new double[64];
+	private double[] localY = new double[64];
+	private boolean[] keep = new boolean[64];
+	private int[] stack = new int[128];
+
+	TraceDecimator(boolean douglasPeucker, double tolerance) {
+		this.douglasPeucker = douglasPeucker;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Creates the decimator configured by the keys "decimation" and
+	 * "decimationTolerance".
+	 *
+	 * @param config
+	 * @return the decimator or null, if no decimation is configured
+	 */
+	public static TraceDecimator create(InclineConfig config) {
+		String method = config.getDecimation();
+		if (method.equals(NONE)) {
+			return null;
+		}
+		double tolerance = config.getDecimationTolerance();
+		if (method.equals(DISTANCE)) {
+			return new TraceDecimator(false, tolerance);
+		} else if (method.equals(DOUGLAS_PEUCKER)) {
+			return new TraceDecimator(true, tolerance);
+		}
+		throw new IllegalArgumentException("Wrong argument in properties file. The key \"decimation\" must have value \""
+				+ NONE + "\", \"" + DISTANCE + "\" or \"" + DOUGLAS_PEUCKER + "\".");
+	}
+
+	/**
+	 * Copies the kept points of all parts of source to target.
+	 *
+	 * @param source
+	 * @param target
+	 *            is cleared first
+	 * @return number of dropped points
+	 */
+	public int decimate(CoordinateBuffer source, CoordinateBuffer target) {
+		target.clear();
+		double[] x = source.getX();
+		double[] y = source.getY();
+		double[] z = source.getZ();
+		for (int p = 0; p < source.getNumParts(); p++) {
+			int start = source.getPartStart(p);
+			int end = source.getPartEnd(p);
+			target.startPart();
+			if (end - start <= 2) {
+				for (int i = start; i < end; i++) {
+					target.add(x[i], y[i], z[i]);
+				}
+			} else if (douglasPeucker) {
+				simplify(x, y, z, start, end, target);
+			} else {
+				thin(x, y, z, start, end, target);
+			}
+		}
+		return source.size() - target.size();
+	}
+
+	private void thin(double[] x, double[] y, double[] z, int start, int end, CoordinateBuffer target) {
+		int last = start;
+		target.add(x[start], y[start], z[start]);
+		for (int i = start + 1; i < end - 1; i++) {
+			if (Util.calculateOrthometricDistance(x[last], y[last], x[i], y[i]) >= tolerance) {
+				target.add(x[i], y[i], z[i]);
+				last = i;
+			}
+		}
+		// keep the end of the line instead of a kept point close to it
+		if (last > start && Util.calculateOrthometricDistance(x[last], y[last], x[end - 1], y[end - 1]) < tolerance) {
+			target.removeLastPoint();
+		}
+		target.add(x[end - 1], y[end - 1], z[end - 1]);
+	}
+
+	private void simplify(double[] x, double[] y, double[] z, int start, int end, CoordinateBuffer target) {
+		int n = end - start;
+		if (localX.length < n) {
+			int length = Math.max(n, localX.length * 2);
+			localX = new double[length];
+			localY = new double[length];
+			keep = new boolean[length];
+		}
+		double scaleX = LocalProjection.METERS_PER_DEGREE * Math.cos(Math.toRadians(y[start]));
+		boolean hasZ = true;
+		for (int i = 0; i < n; i++) {
+			localX[i] = (x[start + i] - x[start]) * scaleX;
+			localY[i] = (y[start + i] - y[start]) * LocalProjection.METERS_PER_DEGREE;
+			keep[i] = false;
+			hasZ &= !Double.isNaN(z[start + i]);
+		}
+		keep[0] = true;
+		keep[n - 1] = true;
+
+		// iterative Douglas-Peucker with a stack of index ranges
+		int top = 0;
+		top = push(top, 0, n - 1);
+		while (top > 0) {
+			int last = stack[--top];
+			int first = stack[--top];
+			double maxDistance = -1;
+			int index = -1;
+			for (int i = first + 1; i < last; i++) {
+				double d = distanceSquared(i, first, last, z, start, hasZ);
+				if (d > maxDistance) {
+					maxDistance = d;
+					index = i;
+				}
+			}
+			if (index >= 0 && maxDistance > tolerance * tolerance) {
+				keep[index] = true;
+				top = push(top, first, index);
+				top = push(top, index, last);
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			if (keep[i]) {
+				target.add(x[start + i], y[start + i], z[start + i]);
+			}
+		}
+	}
+
+	private int push(int top, int first, int last) {
+		if (top + 2 > stack.length) {
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		}
+		stack[top++] = first;
+		stack[top++] = last;
+		return top;
+	}
+
+	/**
+	 * @return squared distance of point i to the segment from point a to b
+	 *         in local meters
+	 */
+	private double distanceSquared(int i, int a, int b, double[] z, int start, boolean hasZ) {
+		double za = hasZ ? z[start + a] : 0;
+		double dx = localX[b] - localX[a];
+		double dy = localY[b] - localY[a];
+		double dz = hasZ ? z[start + b] - za : 0;
+		double px = localX[i] - localX[a];
+		double py = localY[i] - localY[a];
+		double pz = hasZ ? z[start + i] - za : 0;
+		double lengthSquared = dx * dx + dy * dy + dz * dz;
+		double t = lengthSquared > 0 ? (px * dx + py * dy + pz * dz) / lengthSquared : 0;
+		t = Math.max(0, Math.min(1, t));
+		double ex = px - t * dx;
+		double ey = py - t * dy;
+		double ez = pz - t * dz;
+		return ex * ex + ey * ey + ez * ez;
+	}
+}
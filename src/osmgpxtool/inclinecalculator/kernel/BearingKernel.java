@@ -0,0 +1,125 @@
+package osmgpxtool.inclinecalculator.kernel;
+
+
+import osmgpxtool.inclinecalculator.InclineConfig;
+import osmgpxtool.inclinecalculator.estimator.InclineSamples;
+import osmgpxtool.inclinecalculator.linearref.StreetCoverage;
+import osmgpxtool.inclinecalculator.linearref.StreetMeasure;
+import osmgpxtool.inclinecalculator.profile.SectionProfile;
+import osmgpxtool.inclinecalculator.util.BearingVector;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+import osmgpxtool.inclinecalculator.util.SegmentDistances;
+
+/**
+ * Uses a trace line, if its mean bearing is within bearingThreshold of the
+ * mean bearing of the street, or of the opposite direction. The incline of
+ * the line is the mean of the inclines of its segments weighted by their
+ * length.
+ *
+ */
+public class BearingKernel implements InclineKernel {
+	public static final String NAME = "bearing";
+
+	// cosine of bearingThreshold
+	private final double minAlignment;
+	private final BearingVector lineDirection = new BearingVector();
+	private final SegmentDistances distances;
+	// length of the segments of the current part
+	private double[] segmentLengths = new double[64];
+
+	public BearingKernel(InclineConfig config) {
+		this.minAlignment = config.getMinAlignment();
+		this.distances = SegmentDistances.create(config);
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public int addTrace(StreetContext street, CoordinateBuffer geom, InclineSamples samples) {
+		int rejectedByBearing = 0;
+		double[] x = geom.getX();
+		double[] y = geom.getY();
+		double[] z = geom.getZ();
+		// loop through all linestring in Multilinestring
+		for (int i = 0; i < geom.getNumParts(); i++) {
+			int start = geom.getPartStart(i);
+			int end = geom.getPartEnd(i);
+			if (segmentLengths.length < end - start) {
+				segmentLengths = new double[Math.max(end - start, segmentLengths.length * 2)];
+			}
+			distances.compute(x, y, start, end, segmentLengths);
+			double lineLength = 0;
+			for (int a = 0; a < end - start - 1; a++) {
+				lineLength += segmentLengths[a];
+			}
+			// rounded like Util.calculateOrthometricLength
+			lineLength = (double) Math.round(lineLength * 100) / 100;
+			// calculate bearing
+			lineDirection.clear();
+			lineDirection.addLine(x, y, start, end);
+			double cosAngle = lineDirection.cosAngleTo(street.getDirection());
+			// calculate delta_H
+			double weightedIncline = 0;
+
+			for (int a = start; a < end - 1; a++) {
+
+				// calculate delta H
+				double deltaH = z[a + 1] - z[a];
+				double dis = segmentLengths[a - start];
+				if (dis > 0.0) {
+					double incline = deltaH / dis * 100;
+					weightedIncline += incline * (dis / lineLength);
+				}
+			}
+
+			// adjust deltaH to bearing of street element
+			if (cosAngle > minAlignment) {
+				samples.add(weightedIncline, lineLength);
+				addToStreet(street, x, y, z, start, end, 1);
+			} else if (cosAngle < -minAlignment) {
+				samples.add(weightedIncline * -1, lineLength);
+				addToStreet(street, x, y, z, start, end, -1);
+			} else {
+				// both bearing are not similar within the threshold, or
+				// the line has no length
+				rejectedByBearing++;
+			}
+
+		}
+		return rejectedByBearing;
+	}
+
+	/**
+	 * Marks the part of the current street, onto which the line projects, as
+	 * covered and adds the inclines of the line to the section profile. The
+	 * lengths of the segments of the line must be in segmentLengths.
+	 *
+	 * @param direction
+	 *            1, if the line has the direction of the street, -1 if it is
+	 *            opposite
+	 */
+	private void addToStreet(StreetContext street, double[] x, double[] y, double[] z, int start, int end,
+			int direction) {
+		if (end - start < 1) {
+			return;
+		}
+		StreetMeasure streetMeasure = street.getMeasure();
+		StreetCoverage streetCoverage = street.getCoverage();
+		SectionProfile gpsSections = street.getSections();
+		double previous = streetMeasure.project(x[start], y[start]);
+		for (int a = start + 1; a < end; a++) {
+			double m = streetMeasure.project(x[a], y[a]);
+			streetCoverage.cover(previous, m);
+			if (gpsSections != null) {
+				double dis = segmentLengths[a - 1 - start];
+				if (dis > 0.0) {
+					gpsSections.add((previous + m) / 2, (z[a] - z[a - 1]) / dis * 100 * direction, dis);
+				}
+			}
+			previous = m;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package osmgpxtool.inclinecalculator.kernel;
+
+import osmgpxtool.inclinecalculator.estimator.InclineSamples;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+
+/**
+ * Calculates the incline values of GPS traces along a street. A kernel only
+ * works on primitive coordinate buffers, so it can be run on recorded inputs
+ * without database (see {@link ReplayHarness}).
+ *
+ * Kernels are created by {@link InclineKernels} and may keep scratch
+ * buffers, therefore an instance must not be shared between threads.
+ *
+ */
+public interface InclineKernel {
+
+	/**
+	 * @return the name of the kernel in the properties file
+	 */
+	String getName();
+
+	/**
+	 * Adds the incline [%] and length of the lines of the trace, which run
+	 * along the street, to the samples. The kernel also marks the covered
+	 * part of the street and fills the section profile of the context, if
+	 * present.
+	 *
+	 * @param street
+	 * @param trace
+	 *            clipped trace, one part per line
+	 * @param samples
+	 * @return number of lines not used because of their direction
+	 */
+	int addTrace(StreetContext street, CoordinateBuffer trace, InclineSamples samples);
+}
@@ -0,0 +1,92 @@
+package osmgpxtool.inclinecalculator.kernel;
+
+import osmgpxtool.inclinecalculator.InclineConfig;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the {@link InclineKernel}s. The kernel is selected by the key
+ * "inclineKernel" of the properties file, either by the name of a registered
+ * kernel or by the class name of a kernel with a public constructor taking
+ * the {@link InclineConfig}. Additional kernels can be registered with
+ * {@link #register(String, Factory)}.
+ *
+ */
+public class InclineKernels {
+
+	/**
+	 * Creates a kernel from the configuration.
+	 */
+	public interface Factory {
+		InclineKernel create(InclineConfig config);
+	}
+
+	private static final Map<String, Factory> FACTORIES = new LinkedHashMap<String, Factory>();
+
+	static {
+		register(BearingKernel.NAME, BearingKernel::new);
+		register(ProjectionKernel.NAME, ProjectionKernel::new);
+	}
+
+	/**
+	 * Registers a kernel. A kernel with the same name is replaced.
+	 *
+	 * @param name
+	 * @param factory
+	 */
+	public static synchronized void register(String name, Factory factory) {
+		FACTORIES.put(name, factory);
+	}
+
+	/**
+	 * @return names of all registered kernels
+	 */
+	public static synchronized List<String> getNames() {
+		return new ArrayList<String>(FACTORIES.keySet());
+	}
+
+	/**
+	 * Creates the configured kernel. Defaults to {@link BearingKernel}, if
+	 * "inclineKernel" is not set.
+	 *
+	 * @param config
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the kernel is unknown
+	 */
+	public static InclineKernel create(InclineConfig config) {
+		return create(config.getInclineKernel(), config);
+	}
+
+	/**
+	 * Creates a new kernel by name or class name.
+	 *
+	 * @param name
+	 * @param config
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the kernel is unknown
+	 */
+	public static InclineKernel create(String name, InclineConfig config) {
+		Factory factory;
+		synchronized (InclineKernels.class) {
+			factory = FACTORIES.get(name);
+		}
+		if (factory != null) {
+			return factory.create(config);
+		}
+		if (name.indexOf('.') >= 0) {
+			try {
+				return Class.forName(name).asSubclass(InclineKernel.class).getConstructor(InclineConfig.class)
+						.newInstance(config);
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				throw new IllegalArgumentException("Could not create incline kernel " + name, e);
+			}
+		}
+		throw new IllegalArgumentException("Wrong argument in properties file. The key \"inclineKernel\" must be one of "
+				+ getNames() + " or the class name of a kernel.");
+	}
+}
@@ -0,0 +1,90 @@
+package osmgpxtool.inclinecalculator.kernel;
+
+
+import osmgpxtool.inclinecalculator.InclineConfig;
+import osmgpxtool.inclinecalculator.estimator.InclineSamples;
+import osmgpxtool.inclinecalculator.linearref.StreetCoverage;
+import osmgpxtool.inclinecalculator.linearref.StreetMeasure;
+import osmgpxtool.inclinecalculator.profile.SectionProfile;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+import osmgpxtool.inclinecalculator.util.SegmentDistances;
+import osmgpxtool.inclinecalculator.util.Util;
+
+/**
+ * Projects each vertex of the trace lines to its measure on the street. The
+ * direction of each line segment follows from the order of the measures of
+ * its vertices, so lines along curved streets are used as well. Segments
+ * whose angle to the street is above bearingThreshold, e.g. crossing the
+ * street or beyond its ends, are not used. Lines without any used segment
+ * are counted as rejected.
+ *
+ */
+public class ProjectionKernel implements InclineKernel {
+	public static final String NAME = "projection";
+
+	// cosine of bearingThreshold
+	private final double minAlignment;
+	private final SegmentDistances distances;
+	private double[] measures = new double[64];
+	// length of the segments of the current part
+	private double[] segmentLengths = new double[64];
+
+	public ProjectionKernel(InclineConfig config) {
+		this.minAlignment = config.getMinAlignment();
+		this.distances = SegmentDistances.create(config);
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public int addTrace(StreetContext street, CoordinateBuffer geom, InclineSamples samples) {
+		StreetMeasure streetMeasure = street.getMeasure();
+		StreetCoverage streetCoverage = street.getCoverage();
+		SectionProfile gpsSections = street.getSections();
+		int rejected = 0;
+		double[] x = geom.getX();
+		double[] y = geom.getY();
+		double[] z = geom.getZ();
+		if (measures.length < geom.size()) {
+			measures = new double[Math.max(geom.size(), measures.length * 2)];
+		}
+		if (segmentLengths.length < geom.size()) {
+			segmentLengths = new double[Math.max(geom.size(), segmentLengths.length * 2)];
+		}
+		for (int i = 0; i < geom.size(); i++) {
+			measures[i] = streetMeasure.project(x[i], y[i]);
+		}
+		for (int i = 0; i < geom.getNumParts(); i++) {
+			int start = geom.getPartStart(i);
+			int end = geom.getPartEnd(i);
+			double sumInclineTimesLength = 0;
+			double sumLength = 0;
+			distances.compute(x, y, start, end, segmentLengths);
+			for (int a = start; a < end - 1; a++) {
+				double dis = segmentLengths[a - start];
+				double deltaM = measures[a + 1] - measures[a];
+				if (dis > 0.0 && Math.abs(deltaM) >= dis * minAlignment) {
+					double incline = (z[a + 1] - z[a]) / dis * 100;
+					if (deltaM < 0) {
+						incline = -incline;
+					}
+					sumInclineTimesLength += incline * dis;
+					sumLength += dis;
+					streetCoverage.cover(measures[a], measures[a + 1]);
+					if (gpsSections != null) {
+						gpsSections.add((measures[a] + measures[a + 1]) / 2, incline, dis);
+					}
+				}
+			}
+			if (sumLength > 0) {
+				samples.add(sumInclineTimesLength / sumLength, Util.round(sumLength, 2));
+			} else {
+				rejected++;
+			}
+		}
+		return rejected;
+	}
+}
@@ -0,0 +1,135 @@
+package osmgpxtool.inclinecalculator.kernel;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+
+/**
+ * Binary file of recorded kernel inputs. After a header (magic "INCR" and
+ * version) it contains one record per street:
+ *
+ * <pre>
+ * int street id, int n, n * (double x, double y),
+ * int number of traces, per trace:
+ *   int gpx id, int number of parts p, (p + 1) * int part offset,
+ *   int number of points m, m * (double x, double y, double z)
+ * </pre>
+ *
+ */
+public class ReplayFile {
+	static final int MAGIC = 0x494E4352;
+	static final int VERSION = 1;
+
+	/**
+	 * A recorded street and the geometries of its traces.
+	 */
+	public static class Street {
+		public final int id;
+		public final double[] xy;
+		public final int numPoints;
+		public final List<CoordinateBuffer> traces;
+
+		Street(int id, double[] xy, int numPoints, List<CoordinateBuffer> traces) {
+			this.id = id;
+			this.xy = xy;
+			this.numPoints = numPoints;
+			this.traces = traces;
+		}
+	}
+
+	static void writeHeader(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	static void writeStreet(DataOutputStream out, int id, double[] xy, int numPoints) throws IOException {
+		out.writeInt(id);
+		out.writeInt(numPoints);
+		for (int i = 0; i < 2 * numPoints; i++) {
+			out.writeDouble(xy[i]);
+		}
+	}
+
+	static void writeTrace(DataOutputStream out, int gpxId, CoordinateBuffer trace) throws IOException {
+		out.writeInt(gpxId);
+		out.writeInt(trace.getNumParts());
+		for (int part = 0; part < trace.getNumParts(); part++) {
+			out.writeInt(trace.getPartStart(part));
+		}
+		// end of the last part
+		out.writeInt(trace.size());
+		out.writeInt(trace.size());
+		for (int i = 0; i < trace.size(); i++) {
+			out.writeDouble(trace.getX()[i]);
+			out.writeDouble(trace.getY()[i]);
+			out.writeDouble(trace.getZ()[i]);
+		}
+	}
+
+	/**
+	 * Reads all records of a file.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<Street> read(File file) throws IOException {
+		List<Street> streets = new ArrayList<Street>();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(file + " is no replay file of this version.");
+			}
+			while (true) {
+				int id;
+				try {
+					id = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				int numPoints = in.readInt();
+				double[] xy = new double[2 * numPoints];
+				for (int i = 0; i < xy.length; i++) {
+					xy[i] = in.readDouble();
+				}
+				int numTraces = in.readInt();
+				List<CoordinateBuffer> traces = new ArrayList<CoordinateBuffer>(numTraces);
+				for (int t = 0; t < numTraces; t++) {
+					in.readInt();
+					traces.add(readTrace(in));
+				}
+				streets.add(new Street(id, xy, numPoints, traces));
+			}
+		} finally {
+			in.close();
+		}
+		return streets;
+	}
+
+	private static CoordinateBuffer readTrace(DataInputStream in) throws IOException {
+		int numParts = in.readInt();
+		int[] offsets = new int[numParts + 1];
+		for (int part = 0; part <= numParts; part++) {
+			offsets[part] = in.readInt();
+		}
+		int size = in.readInt();
+		CoordinateBuffer trace = new CoordinateBuffer(Math.max(size, 1));
+		int part = 0;
+		for (int i = 0; i < size; i++) {
+			while (part < numParts && offsets[part] == i) {
+				trace.startPart();
+				part++;
+			}
+			trace.add(in.readDouble(), in.readDouble(), in.readDouble());
+		}
+		return trace;
+	}
+}
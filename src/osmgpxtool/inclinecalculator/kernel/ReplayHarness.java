@@ -0,0 +1,137 @@
+package osmgpxtool.inclinecalculator.kernel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import osmgpxtool.inclinecalculator.InclineConfig;
+import osmgpxtool.inclinecalculator.estimator.InclineEstimator;
+import osmgpxtool.inclinecalculator.estimator.InclineEstimators;
+import osmgpxtool.inclinecalculator.estimator.InclineSamples;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+
+/**
+ * Runs kernels on the inputs recorded by {@link ReplayRecorder} without
+ * database and compares their run time and results. The first kernel is the
+ * reference of the comparison.
+ *
+ * Usage: ReplayHarness &lt;replay file&gt; &lt;kernel&gt;[:&lt;segmentMath&gt;]
+ * [&lt;kernel&gt;[:&lt;segmentMath&gt;] ...]
+ *
+ * The kernels and the estimator are configured by
+ * inclinecalculator.properties. The optional segmentMath overrides the key
+ * of the same name, e.g. "bearing:scalar bearing:vector" compares the
+ * vectorized segment lengths with the scalar ones. Streets whose incline
+ * differs from the reference by more than {@link #TOLERANCE} are counted.
+ *
+ */
+public class ReplayHarness {
+	static Logger LOGGER = LoggerFactory.getLogger(ReplayHarness.class);
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int ITERATIONS = 10;
+	// maximum difference of equal results in percent of incline
+	static final double TOLERANCE = 1e-6;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: ReplayHarness <replay file> <kernel>[:<segmentMath>] [<kernel>[:<segmentMath>] ...]");
+			System.out.println("Registered kernels: " + InclineKernels.getNames());
+			System.exit(1);
+		}
+		Properties p = new Properties();
+		p.load(ReplayHarness.class.getResourceAsStream("/inclinecalculator.properties"));
+
+		List<ReplayFile.Street> streets = ReplayFile.read(new File(args[0]));
+		int numTraces = 0;
+		for (ReplayFile.Street s : streets) {
+			numTraces += s.traces.size();
+		}
+		LOGGER.info("Replaying " + streets.size() + " streets with " + numTraces + " traces.");
+
+		double[] reference = null;
+		for (int k = 1; k < args.length; k++) {
+			String kernelName = args[k];
+			Properties kernelProperties = new Properties();
+			kernelProperties.putAll(p);
+			int separator = kernelName.indexOf(':');
+			if (separator >= 0) {
+				kernelProperties.setProperty("segmentMath", kernelName.substring(separator + 1));
+				kernelName = kernelName.substring(0, separator);
+			}
+			InclineConfig config = InclineConfig.create(kernelProperties);
+			InclineKernel kernel = InclineKernels.create(kernelName, config);
+			double[] inclines = new double[streets.size()];
+			for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+				run(kernel, config, streets, inclines);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				run(kernel, config, streets, inclines);
+			}
+			double microsPerStreet = (System.nanoTime() - start) / 1000.0 / ITERATIONS / Math.max(1, streets.size());
+			LOGGER.info(String.format("%s: %.2f us per street", args[k], microsPerStreet));
+
+			if (reference == null) {
+				reference = inclines;
+			} else {
+				compare(args[k], reference, inclines);
+			}
+		}
+	}
+
+	/**
+	 * Calculates the gps incline of all streets.
+	 *
+	 * @param inclines
+	 *            filled with the incline per street, NaN if no trace line was
+	 *            used
+	 */
+	private static void run(InclineKernel kernel, InclineConfig config, List<ReplayFile.Street> streets, double[] inclines) {
+		StreetContext context = new StreetContext(0);
+		InclineSamples samples = new InclineSamples();
+		InclineEstimator estimator = InclineEstimators.create(config);
+		for (int i = 0; i < streets.size(); i++) {
+			ReplayFile.Street s = streets.get(i);
+			context.setStreet(s.xy, s.numPoints);
+			samples.clear();
+			for (CoordinateBuffer trace : s.traces) {
+				kernel.addTrace(context, trace, samples);
+			}
+			inclines[i] = samples.isEmpty() ? Double.NaN : estimator.estimate(samples);
+		}
+	}
+
+	private static void compare(String name, double[] reference, double[] inclines) {
+		int compared = 0;
+		int onlyReference = 0;
+		int onlyKernel = 0;
+		int outOfTolerance = 0;
+		double sumDiff = 0;
+		double maxDiff = 0;
+		for (int i = 0; i < reference.length; i++) {
+			boolean hasReference = !Double.isNaN(reference[i]);
+			boolean hasKernel = !Double.isNaN(inclines[i]);
+			if (hasReference && hasKernel) {
+				double diff = Math.abs(reference[i] - inclines[i]);
+				sumDiff += diff;
+				maxDiff = Math.max(maxDiff, diff);
+				if (diff > TOLERANCE) {
+					outOfTolerance++;
+				}
+				compared++;
+			} else if (hasReference) {
+				onlyReference++;
+			} else if (hasKernel) {
+				onlyKernel++;
+			}
+		}
+		LOGGER.info(String.format(
+				"%s: mean abs. difference %.4f %%, max. %.4f %% on %d streets, %d above %.0e %%; %d streets only with reference, %d only with %s",
+				name, compared > 0 ? sumDiff / compared : 0, maxDiff, compared, outOfTolerance, TOLERANCE,
+				onlyReference, onlyKernel, name));
+	}
+}
@@ -0,0 +1,125 @@
+package osmgpxtool.inclinecalculator.kernel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import osmgpxtool.inclinecalculator.InclineConfig;
+import osmgpxtool.inclinecalculator.StreetSegment;
+import osmgpxtool.inclinecalculator.gps.GpsTracePart;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+
+/**
+ * Records the street and the clipped traces of a sample of the streets to a
+ * {@link ReplayFile}, if "replayFile" is set. The sample is the fraction
+ * "replaySampleRate" of the streets chosen by a hash of the street id, so
+ * repeated runs record the same streets.
+ *
+ * Recording is synchronized, so a recorder can be shared by parallel
+ * workers.
+ *
+ */
+public class ReplayRecorder {
+	static Logger LOGGER = LoggerFactory.getLogger(ReplayRecorder.class);
+
+	private DataOutputStream out;
+	private File file;
+	private int threshold;
+	private int recorded = 0;
+
+	private ReplayRecorder(File file, double sampleRate) throws IOException {
+		this.file = file;
+		this.threshold = (int) Math.round(Math.max(0, Math.min(1, sampleRate)) * 10000);
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		ReplayFile.writeHeader(out);
+	}
+
+	/**
+	 * Creates the recorder configured by "replayFile" and
+	 * "replaySampleRate".
+	 *
+	 * @param config
+	 * @return the recorder or null, if "replayFile" is not set or cannot be
+	 *         created
+	 */
+	public static ReplayRecorder create(InclineConfig config) {
+		String path = config.getReplayFile();
+		if (path == null) {
+			return null;
+		}
+		try {
+			return new ReplayRecorder(new File(path), config.getReplaySampleRate());
+		} catch (IOException e) {
+			LOGGER.error("Could not create replay file " + path);
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private boolean isSampled(int streetId) {
+		int h = streetId * 0x9E3779B9;
+		h ^= h >>> 16;
+		return ((h & 0x7fffffff) % 10000) < threshold;
+	}
+
+	/**
+	 * Records the street, if it belongs to the sample.
+	 *
+	 * @param s
+	 * @param traces
+	 *            the primary geometry variant of the traces is recorded
+	 */
+	public void record(StreetSegment s, List<GpsTracePart> traces) {
+		if (!isSampled(s.getId())) {
+			return;
+		}
+		synchronized (this) {
+			if (out == null) {
+				return;
+			}
+			try {
+				ReplayFile.writeStreet(out, s.getId(), s.getCoordinates(), s.getNumPoints());
+				int numTraces = 0;
+				for (GpsTracePart t : traces) {
+					if (t.getVariant(0) != null) {
+						numTraces++;
+					}
+				}
+				out.writeInt(numTraces);
+				for (GpsTracePart t : traces) {
+					CoordinateBuffer geom = t.getVariant(0);
+					if (geom != null) {
+						ReplayFile.writeTrace(out, t.getId(), geom);
+					}
+				}
+				recorded++;
+			} catch (IOException e) {
+				LOGGER.error("Could not write replay file, recording stopped.");
+				e.printStackTrace();
+				closeQuietly();
+			}
+		}
+	}
+
+	public synchronized void close() {
+		if (out != null) {
+			closeQuietly();
+			LOGGER.info(recorded + " streets recorded to " + file);
+		}
+	}
+
+	private void closeQuietly() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		out = null;
+	}
+}
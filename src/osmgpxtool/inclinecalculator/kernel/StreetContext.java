@@ -0,0 +1,85 @@
+package osmgpxtool.inclinecalculator.kernel;
+
+import osmgpxtool.inclinecalculator.linearref.StreetCoverage;
+import osmgpxtool.inclinecalculator.linearref.StreetMeasure;
+import osmgpxtool.inclinecalculator.profile.SectionProfile;
+import osmgpxtool.inclinecalculator.util.BearingVector;
+
+/**
+ * The current street of an {@link InclineKernel}: its packed coordinates,
+ * linear reference and mean direction, together with the coverage and the
+ * section profile, which the kernel fills.
+ *
+ * The context is reused between streets, therefore an instance must not be
+ * shared between threads.
+ *
+ */
+public class StreetContext {
+	private double[] xy;
+	private int numPoints;
+	private final StreetMeasure measure = new StreetMeasure();
+	private final BearingVector direction = new BearingVector();
+	private final StreetCoverage coverage = new StreetCoverage(1.0);
+	private final SectionProfile sections;
+	private final double sectionLength;
+
+	/**
+	 * @param sectionLength
+	 *            length of the sections of the profile in meters or 0, if no
+	 *            profile is calculated
+	 */
+	public StreetContext(double sectionLength) {
+		this.sectionLength = sectionLength;
+		this.sections = sectionLength > 0 ? new SectionProfile() : null;
+	}
+
+	/**
+	 * Sets the street and resets coverage and profile.
+	 *
+	 * @param xy
+	 *            packed coordinates (x0, y0, x1, y1, ...) in EPSG:4326
+	 * @param numPoints
+	 */
+	public void setStreet(double[] xy, int numPoints) {
+		this.xy = xy;
+		this.numPoints = numPoints;
+		measure.setStreet(xy, numPoints);
+		direction.clear();
+		direction.addLine(xy, numPoints);
+		coverage.reset(measure.getLength());
+		if (sections != null) {
+			sections.reset(measure.getLength(), sectionLength);
+		}
+	}
+
+	public double[] getCoordinates() {
+		return xy;
+	}
+
+	public int getNumPoints() {
+		return numPoints;
+	}
+
+	public StreetMeasure getMeasure() {
+		return measure;
+	}
+
+	public BearingVector getDirection() {
+		return direction;
+	}
+
+	public StreetCoverage getCoverage() {
+		return coverage;
+	}
+
+	/**
+	 * @return the section profile or null, if no profile is calculated
+	 */
+	public SectionProfile getSections() {
+		return sections;
+	}
+
+	public double getSectionLength() {
+		return sectionLength;
+	}
+}
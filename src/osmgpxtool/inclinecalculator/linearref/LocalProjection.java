@@ -0,0 +1,54 @@
+package osmgpxtool.inclinecalculator.linearref;
+
+/**
+ * Local equirectangular projection of positions in EPSG:4326 to meters
+ * around an origin. The scale of the longitude is fixed at the mean latitude
+ * of the projected line, which is accurate to well below a meter within the
+ * extent of a street and its buffer.
+ *
+ */
+public class LocalProjection {
+	/**
+	 * length of one degree of latitude in meters on a sphere with the mean
+	 * earth radius used by the orthometric distances
+	 */
+	public static final double METERS_PER_DEGREE = 6371000 * Math.PI / 180;
+
+	private double originX;
+	private double originY;
+	private double scaleX = METERS_PER_DEGREE;
+
+	/**
+	 * Sets the origin to the first point and the scale of the longitude to
+	 * the mean latitude of the points.
+	 *
+	 * @param xy
+	 *            packed coordinates (x0, y0, x1, y1, ...)
+	 * @param numPoints
+	 */
+	public void setLine(double[] xy, int numPoints) {
+		double sumY = 0;
+		for (int i = 0; i < numPoints; i++) {
+			sumY += xy[2 * i + 1];
+		}
+		originX = xy[0];
+		originY = xy[1];
+		scaleX = METERS_PER_DEGREE * Math.cos(Math.toRadians(sumY / numPoints));
+	}
+
+	public double toLocalX(double lon) {
+		return (lon - originX) * scaleX;
+	}
+
+	public double toLocalY(double lat) {
+		return (lat - originY) * METERS_PER_DEGREE;
+	}
+
+	public double toLon(double localX) {
+		return originX + localX / scaleX;
+	}
+
+	public double toLat(double localY) {
+		return originY + localY / METERS_PER_DEGREE;
+	}
+}
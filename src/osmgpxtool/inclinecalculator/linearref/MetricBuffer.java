@@ -0,0 +1,121 @@
+package osmgpxtool.inclinecalculator.linearref;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateFilter;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.operation.buffer.BufferParameters;
+
+/**
+ * Buffers streets given in EPSG:4326 with a width in meters. The street is
+ * buffered in a {@link LocalProjection} and the buffer is transformed back,
+ * so the width is the same in all directions and at all latitudes, unlike a
+ * buffer with a width in degrees.
+ *
+ * Streets with a single segment are buffered directly as rectangle with
+ * semicircles at the ends (or without with a flat cap), which is by far the
+ * most common case and avoids the offset curve computation.
+ *
+ * An instance must not be shared between threads.
+ *
+ */
+public class MetricBuffer {
+	// coordinate arrays instead of the packed sequences of Geometries, as
+	// the buffer is transformed with a CoordinateFilter
+	private final GeometryFactory geomF = new GeometryFactory(new PrecisionModel(), 4326);
+	private final LocalProjection projection = new LocalProjection();
+	private final CoordinateFilter toWgs84 = new CoordinateFilter() {
+		@Override
+		public void filter(Coordinate c) {
+			c.x = projection.toLon(c.x);
+			c.y = projection.toLat(c.y);
+		}
+	};
+
+	private final double meters;
+	private final int quadrantSegments;
+	private final int endCapStyle;
+
+	/**
+	 * @param meters
+	 *            width of the buffer on each side of the street
+	 * @param quadrantSegments
+	 *            number of segments of a quarter circle
+	 * @param endCapStyle
+	 *            {@link BufferParameters#CAP_ROUND} or
+	 *            {@link BufferParameters#CAP_FLAT}
+	 */
+	public MetricBuffer(double meters, int quadrantSegments, int endCapStyle) {
+		this.meters = meters;
+		this.quadrantSegments = quadrantSegments;
+		this.endCapStyle = endCapStyle;
+	}
+
+	/**
+	 * Buffers the street.
+	 *
+	 * @param xy
+	 *            packed coordinates (x0, y0, x1, y1, ...) in EPSG:4326
+	 * @param numPoints
+	 * @return polygon in EPSG:4326
+	 */
+	public Geometry buffer(double[] xy, int numPoints) {
+		projection.setLine(xy, numPoints);
+		Coordinate[] local = new Coordinate[numPoints];
+		for (int i = 0; i < numPoints; i++) {
+			local[i] = new Coordinate(projection.toLocalX(xy[2 * i]), projection.toLocalY(xy[2 * i + 1]));
+		}
+		Geometry buffer;
+		if (numPoints == 2 && !local[0].equals2D(local[1])) {
+			buffer = bufferSegment(local[0], local[1]);
+		} else {
+			buffer = geomF.createLineString(local).buffer(meters, quadrantSegments, endCapStyle);
+		}
+		buffer.apply(toWgs84);
+		buffer.geometryChanged();
+		buffer.setSRID(4326);
+		return buffer;
+	}
+
+	/**
+	 * Creates the buffer of a single segment in local coordinates.
+	 */
+	private Geometry bufferSegment(Coordinate a, Coordinate b) {
+		double dx = b.x - a.x;
+		double dy = b.y - a.y;
+		double len = Math.sqrt(dx * dx + dy * dy);
+		// unit normal to the left
+		double nx = -dy / len;
+		double ny = dx / len;
+		boolean round = endCapStyle != BufferParameters.CAP_FLAT;
+		int capPoints = round ? 2 * quadrantSegments - 1 : 0;
+		Coordinate[] ring = new Coordinate[5 + 2 * capPoints];
+		int n = 0;
+		// counter clockwise: right side from a to b, cap at b, left side back
+		ring[n++] = new Coordinate(a.x - nx * meters, a.y - ny * meters);
+		ring[n++] = new Coordinate(b.x - nx * meters, b.y - ny * meters);
+		n = addCap(ring, n, b, -nx, -ny, capPoints);
+		ring[n++] = new Coordinate(b.x + nx * meters, b.y + ny * meters);
+		ring[n++] = new Coordinate(a.x + nx * meters, a.y + ny * meters);
+		n = addCap(ring, n, a, nx, ny, capPoints);
+		ring[n++] = new Coordinate(ring[0]);
+		return geomF.createPolygon(geomF.createLinearRing(ring), null);
+	}
+
+	/**
+	 * Adds the inner points of a semicircle around center, starting at the
+	 * direction (sx, sy) and turning counter clockwise.
+	 */
+	private int addCap(Coordinate[] ring, int n, Coordinate center, double sx, double sy, int capPoints) {
+		double step = Math.PI / (capPoints + 1);
+		for (int i = 1; i <= capPoints; i++) {
+			double cos = Math.cos(i * step);
+			double sin = Math.sin(i * step);
+			double ux = sx * cos - sy * sin;
+			double uy = sx * sin + sy * cos;
+			ring[n++] = new Coordinate(center.x + ux * meters, center.y + uy * meters);
+		}
+		return n;
+	}
+}
@@ -0,0 +1,72 @@
+package osmgpxtool.inclinecalculator.linearref;
+
+import java.util.Arrays;
+
+/**
+ * Records which part of a street is covered by GPS traces. The street is
+ * divided into bins of equal length along its measure. A bin is covered, if
+ * any covered interval touches it.
+ *
+ */
+public class StreetCoverage {
+	/**
+	 * Maximal number of bins per street
+	 */
+	private static final int MAX_BINS = 1024;
+
+	private final double binLength;
+	private long[] bits = new long[MAX_BINS / 64];
+	private int numBins;
+	private double currentBinLength;
+
+	/**
+	 * @param binLength
+	 *            length of a bin in meters. Long streets use longer bins, so
+	 *            that the number of bins does not exceed 1024.
+	 */
+	public StreetCoverage(double binLength) {
+		this.binLength = binLength;
+	}
+
+	/**
+	 * Starts recording the coverage of a new street.
+	 *
+	 * @param streetLength
+	 *            length of the street in meters
+	 */
+	public void reset(double streetLength) {
+		numBins = (int) Math.max(1, Math.min(MAX_BINS, Math.ceil(streetLength / binLength)));
+		currentBinLength = streetLength > 0 ? streetLength / numBins : 1;
+		Arrays.fill(bits, 0);
+	}
+
+	/**
+	 * Marks the interval between the two measures as covered.
+	 *
+	 * @param m1
+	 * @param m2
+	 */
+	public void cover(double m1, double m2) {
+		int from = bin(Math.min(m1, m2));
+		int to = bin(Math.max(m1, m2));
+		for (int b = from; b <= to; b++) {
+			bits[b >>> 6] |= 1L << b;
+		}
+	}
+
+	private int bin(double m) {
+		int b = (int) (m / currentBinLength);
+		return b < 0 ? 0 : (b >= numBins ? numBins - 1 : b);
+	}
+
+	/**
+	 * @return fraction of covered bins between 0 and 1
+	 */
+	public double getCoveredFraction() {
+		int covered = 0;
+		for (int i = 0; i < (numBins + 63) >>> 6; i++) {
+			covered += Long.bitCount(bits[i]);
+		}
+		return (double) covered / numBins;
+	}
+}
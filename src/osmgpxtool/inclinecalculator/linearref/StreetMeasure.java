@@ -0,0 +1,268 @@
+package osmgpxtool.inclinecalculator.linearref;
+
+import java.util.Arrays;
+
+/**
+ * Linear reference of a street. Positions given in EPSG:4326 are projected
+ * to their measure, i.e. the distance in meters from the start of the street
+ * to the closest point on the street.
+ *
+ * Distances are computed in a {@link LocalProjection} around the street.
+ *
+ * The closest segment is searched in a tree of bounding boxes over ranges of
+ * consecutive segments, so a projection costs O(log m) for a street with m
+ * segments. The search starts with the segment of the previous projection,
+ * which is usually the closest one for consecutive points of a trace.
+ *
+ * The arrays are reused between streets, therefore an instance must not be
+ * shared between threads.
+ *
+ */
+public class StreetMeasure {
+	/**
+	 * maximal number of segments in a leaf of the tree
+	 */
+	private static final int LEAF_SIZE = 4;
+
+	// local coordinates of the street vertices in meters
+	private double[] px = new double[64];
+	private double[] py = new double[64];
+	// measure of the street vertices
+	private double[] measure = new double[64];
+	private int numPoints;
+
+	private LocalProjection projection = new LocalProjection();
+
+	// tree nodes: bounding box and range of segments [from, to)
+	private double[] nodeMinX = new double[32];
+	private double[] nodeMinY = new double[32];
+	private double[] nodeMaxX = new double[32];
+	private double[] nodeMaxY = new double[32];
+	private int[] nodeFrom = new int[32];
+	private int[] nodeTo = new int[32];
+	private int[] nodeLeft = new int[32];
+	private int[] nodeRight = new int[32];
+	private int numNodes;
+	private int[] stack = new int[64];
+
+	// result of the last projection
+	private int lastSegment;
+	private double lastDistance;
+	private boolean lastBeyondEnds;
+
+	/**
+	 * Sets the street to project on.
+	 *
+	 * @param xy
+	 *            packed coordinates (x0, y0, x1, y1, ...) in EPSG:4326
+	 * @param numPoints
+	 */
+	public void setStreet(double[] xy, int numPoints) {
+		if (px.length < numPoints) {
+			int newLength = Math.max(numPoints, px.length * 2);
+			px = Arrays.copyOf(px, newLength);
+			py = Arrays.copyOf(py, newLength);
+			measure = Arrays.copyOf(measure, newLength);
+		}
+		this.numPoints = numPoints;
+		projection.setLine(xy, numPoints);
+		for (int i = 0; i < numPoints; i++) {
+			px[i] = projection.toLocalX(xy[2 * i]);
+			py[i] = projection.toLocalY(xy[2 * i + 1]);
+			if (i == 0) {
+				measure[i] = 0;
+			} else {
+				double dx = px[i] - px[i - 1];
+				double dy = py[i] - py[i - 1];
+				measure[i] = measure[i - 1] + Math.sqrt(dx * dx + dy * dy);
+			}
+		}
+		buildTree();
+		lastSegment = 0;
+	}
+
+	private void buildTree() {
+		numNodes = 0;
+		int numSegments = numPoints - 1;
+		if (numSegments < 1) {
+			return;
+		}
+		// a tree over n segments has less than 2n nodes
+		int capacity = 2 * numSegments;
+		if (nodeFrom.length < capacity) {
+			nodeMinX = new double[capacity];
+			nodeMinY = new double[capacity];
+			nodeMaxX = new double[capacity];
+			nodeMaxY = new double[capacity];
+			nodeFrom = new int[capacity];
+			nodeTo = new int[capacity];
+			nodeLeft = new int[capacity];
+			nodeRight = new int[capacity];
+		}
+		buildNode(0, numSegments);
+	}
+
+	/**
+	 * Builds the subtree of the segments [from, to).
+	 *
+	 * @return index of the node
+	 */
+	private int buildNode(int from, int to) {
+		int node = numNodes++;
+		nodeFrom[node] = from;
+		nodeTo[node] = to;
+		if (to - from <= LEAF_SIZE) {
+			nodeLeft[node] = -1;
+			double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+			// segment i spans vertex i and i+1
+			for (int i = from; i <= to; i++) {
+				minX = Math.min(minX, px[i]);
+				minY = Math.min(minY, py[i]);
+				maxX = Math.max(maxX, px[i]);
+				maxY = Math.max(maxY, py[i]);
+			}
+			nodeMinX[node] = minX;
+			nodeMinY[node] = minY;
+			nodeMaxX[node] = maxX;
+			nodeMaxY[node] = maxY;
+		} else {
+			int mid = (from + to) >>> 1;
+			int left = buildNode(from, mid);
+			int right = buildNode(mid, to);
+			nodeLeft[node] = left;
+			nodeRight[node] = right;
+			nodeMinX[node] = Math.min(nodeMinX[left], nodeMinX[right]);
+			nodeMinY[node] = Math.min(nodeMinY[left], nodeMinY[right]);
+			nodeMaxX[node] = Math.max(nodeMaxX[left], nodeMaxX[right]);
+			nodeMaxY[node] = Math.max(nodeMaxY[left], nodeMaxY[right]);
+		}
+		return node;
+	}
+
+	/**
+	 * @return length of the street in meters
+	 */
+	public double getLength() {
+		return numPoints > 0 ? measure[numPoints - 1] : 0;
+	}
+
+	/**
+	 * Projects a position to the closest point of the street.
+	 *
+	 * @param lon
+	 * @param lat
+	 * @return measure of the closest point in meters
+	 */
+	public double project(double lon, double lat) {
+		if (numPoints < 2) {
+			lastDistance = Double.NaN;
+			lastBeyondEnds = true;
+			return 0;
+		}
+		double qx = projection.toLocalX(lon);
+		double qy = projection.toLocalY(lat);
+
+		// start with the segment of the last projection
+		int bestSegment = lastSegment < numPoints - 1 ? lastSegment : 0;
+		double bestDistance = segmentDistance(bestSegment, qx, qy);
+
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			if (boxDistance(node, qx, qy) >= bestDistance) {
+				continue;
+			}
+			int left = nodeLeft[node];
+			if (left < 0) {
+				for (int i = nodeFrom[node]; i < nodeTo[node]; i++) {
+					double d = segmentDistance(i, qx, qy);
+					if (d < bestDistance) {
+						bestDistance = d;
+						bestSegment = i;
+					}
+				}
+			} else {
+				int right = nodeRight[node];
+				if (top + 2 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				// visit the closer child first
+				if (boxDistance(left, qx, qy) <= boxDistance(right, qx, qy)) {
+					stack[top++] = right;
+					stack[top++] = left;
+				} else {
+					stack[top++] = left;
+					stack[top++] = right;
+				}
+			}
+		}
+		lastSegment = bestSegment;
+		lastDistance = Math.sqrt(bestDistance);
+		lastBeyondEnds = isBeyondEnds(bestSegment, qx, qy);
+		return measureOnSegment(bestSegment, qx, qy);
+	}
+
+	/**
+	 * @return distance in meters between the last projected position and the
+	 *         street
+	 */
+	public double getLastDistance() {
+		return lastDistance;
+	}
+
+	/**
+	 * @return true, if the last projected position lies beyond the start or
+	 *         the end of the street, i.e. the perpendicular does not hit the
+	 *         street
+	 */
+	public boolean isLastBeyondEnds() {
+		return lastBeyondEnds;
+	}
+
+	private boolean isBeyondEnds(int i, double qx, double qy) {
+		if (i == 0 && (qx - px[0]) * (px[1] - px[0]) + (qy - py[0]) * (py[1] - py[0]) < 0) {
+			return true;
+		}
+		int last = numPoints - 1;
+		return i == last - 1
+				&& (qx - px[last]) * (px[last] - px[last - 1]) + (qy - py[last]) * (py[last] - py[last - 1]) > 0;
+	}
+
+	private double segmentParameter(int i, double qx, double qy) {
+		double dx = px[i + 1] - px[i];
+		double dy = py[i + 1] - py[i];
+		double len2 = dx * dx + dy * dy;
+		if (len2 == 0) {
+			return 0;
+		}
+		double t = ((qx - px[i]) * dx + (qy - py[i]) * dy) / len2;
+		return t < 0 ? 0 : (t > 1 ? 1 : t);
+	}
+
+	/**
+	 * @return squared distance between the position and segment i
+	 */
+	private double segmentDistance(int i, double qx, double qy) {
+		double t = segmentParameter(i, qx, qy);
+		double cx = px[i] + t * (px[i + 1] - px[i]) - qx;
+		double cy = py[i] + t * (py[i + 1] - py[i]) - qy;
+		return cx * cx + cy * cy;
+	}
+
+	private double measureOnSegment(int i, double qx, double qy) {
+		double t = segmentParameter(i, qx, qy);
+		return measure[i] + t * (measure[i + 1] - measure[i]);
+	}
+
+	/**
+	 * @return squared distance between the position and the bounding box of
+	 *         the node
+	 */
+	private double boxDistance(int node, double qx, double qy) {
+		double dx = qx < nodeMinX[node] ? nodeMinX[node] - qx : (qx > nodeMaxX[node] ? qx - nodeMaxX[node] : 0);
+		double dy = qy < nodeMinY[node] ? nodeMinY[node] - qy : (qy > nodeMaxY[node] ? qy - nodeMaxY[node] : 0);
+		return dx * dx + dy * dy;
+	}
+}
@@ -0,0 +1,124 @@
+package osmgpxtool.inclinecalculator.linearref;
+
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+
+/**
+ * Clips GPS traces to the surrounding of a street without building a buffer
+ * polygon. A point is inside, if its distance to the street is at most the
+ * buffer width. With a flat cap, points beyond the ends of the street are
+ * outside as well.
+ *
+ * Where a trace leaves or enters the surrounding, the boundary point is
+ * found by bisection on the segment and its height is interpolated. A
+ * segment with both points outside is dropped, even if it passes through the
+ * surrounding.
+ *
+ */
+public class TraceClipper {
+	private static final int BISECTION_STEPS = 24;
+
+	private StreetMeasure street;
+	private double maxDistance;
+	private boolean flatCap;
+
+	/**
+	 * @param maxDistance
+	 *            buffer width in meters
+	 * @param flatCap
+	 *            true, if the surrounding ends at the ends of the street
+	 */
+	public TraceClipper(double maxDistance, boolean flatCap) {
+		this.maxDistance = maxDistance;
+		this.flatCap = flatCap;
+	}
+
+	/**
+	 * Sets the street to clip to.
+	 *
+	 * @param street
+	 *            linear reference of the street
+	 */
+	public void setStreet(StreetMeasure street) {
+		this.street = street;
+	}
+
+	/**
+	 * Clips all parts of the trace.
+	 *
+	 * @param in
+	 * @param out
+	 *            cleared and filled with the parts inside the surrounding
+	 * @return true, if at least one part with two points is inside
+	 */
+	public boolean clip(CoordinateBuffer in, CoordinateBuffer out) {
+		out.clear();
+		if (in == null) {
+			return false;
+		}
+		double[] x = in.getX();
+		double[] y = in.getY();
+		double[] z = in.getZ();
+		for (int part = 0; part < in.getNumParts(); part++) {
+			int start = in.getPartStart(part);
+			int end = in.getPartEnd(part);
+			if (end - start < 2) {
+				continue;
+			}
+			boolean previousInside = isInside(x[start], y[start]);
+			if (previousInside) {
+				out.startPart();
+				out.add(x[start], y[start], z[start]);
+			}
+			for (int i = start + 1; i < end; i++) {
+				boolean inside = isInside(x[i], y[i]);
+				if (previousInside && inside) {
+					out.add(x[i], y[i], z[i]);
+				} else if (previousInside) {
+					// leaves the surrounding
+					addBoundary(x, y, z, i - 1, i, out);
+					endPart(out);
+				} else if (inside) {
+					// enters the surrounding
+					out.startPart();
+					addBoundary(x, y, z, i, i - 1, out);
+					out.add(x[i], y[i], z[i]);
+				}
+				previousInside = inside;
+			}
+			if (previousInside) {
+				endPart(out);
+			}
+		}
+		return !out.isEmpty();
+	}
+
+	private void endPart(CoordinateBuffer out) {
+		if (out.getLastPartSize() < 2) {
+			out.removeLastPart();
+		}
+	}
+
+	private boolean isInside(double x, double y) {
+		street.project(x, y);
+		return street.getLastDistance() <= maxDistance && !(flatCap && street.isLastBeyondEnds());
+	}
+
+	/**
+	 * Adds the boundary point between the inside point a and the outside
+	 * point b.
+	 */
+	private void addBoundary(double[] x, double[] y, double[] z, int a, int b, CoordinateBuffer out) {
+		double inside = 0;
+		double outside = 1;
+		for (int step = 0; step < BISECTION_STEPS; step++) {
+			double t = (inside + outside) / 2;
+			if (isInside(x[a] + t * (x[b] - x[a]), y[a] + t * (y[b] - y[a]))) {
+				inside = t;
+			} else {
+				outside = t;
+			}
+		}
+		double t = inside;
+		out.add(x[a] + t * (x[b] - x[a]), y[a] + t * (y[b] - y[a]), z[a] + t * (z[b] - z[a]));
+	}
+}
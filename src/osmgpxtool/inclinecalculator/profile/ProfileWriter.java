@@ -0,0 +1,146 @@
+package osmgpxtool.inclinecalculator.profile;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import osmgpxtool.inclinecalculator.StreetInclineResult;
+
+/**
+ * Writes the section profiles of streets to the table
+ * <code>&lt;incline table&gt;_profile</code>. Rows are collected in the
+ * COPY text format and written with one COPY command per block of rows, so
+ * that millions of profiles can be written without a statement per street.
+ *
+ * A COPY blocks the connection until it is finished. Rows are therefore only
+ * sent in {@link #flush()}, between the other statements on the connection.
+ *
+ */
+public class ProfileWriter {
+	static Logger LOGGER = LoggerFactory.getLogger(ProfileWriter.class);
+	/**
+	 * size of the buffered rows in characters, before they are copied
+	 */
+	private static final int FLUSH_SIZE = 4 * 1024 * 1024;
+
+	private Connection con;
+	private String table;
+	private String streetTable;
+	private String streetIdCol;
+	private CopyManager copyManager;
+	private StringBuilder rows = new StringBuilder(FLUSH_SIZE + 4096);
+	private long rowCount = 0;
+
+	/**
+	 * @param con
+	 * @param inclineTable
+	 *            name of the incline table, the profile table is named
+	 *            &lt;inclineTable&gt;_profile
+	 * @param streetTable
+	 * @param streetIdCol
+	 */
+	public ProfileWriter(Connection con, String inclineTable, String streetTable, String streetIdCol) {
+		this.con = con;
+		this.table = inclineTable + "_profile";
+		this.streetTable = streetTable;
+		this.streetIdCol = streetIdCol;
+	}
+
+	/**
+	 * Creates the profile table.
+	 *
+	 * @throws SQLException
+	 */
+	public void init() throws SQLException {
+		Statement s = con.createStatement();
+		s.addBatch("DROP TABLE IF EXISTS " + table + ";");
+		s.addBatch("CREATE TABLE " + table
+				+ " ( street_id integer NOT NULL, section_length double precision, incline_gps double precision[], incline_lidar double precision[], incline_srtm double precision[], CONSTRAINT "
+				+ table + "_pk PRIMARY KEY (street_id), CONSTRAINT " + table + "_fk FOREIGN KEY (street_id) REFERENCES "
+				+ streetTable + " (" + streetIdCol + ") MATCH SIMPLE ON UPDATE CASCADE ON DELETE CASCADE);");
+		s.executeBatch();
+		s.close();
+		copyManager = ((PGConnection) con).getCopyAPI();
+	}
+
+	/**
+	 * Adds the profiles of a street.
+	 *
+	 * @param result
+	 *            result with profiles
+	 * @throws SQLException
+	 */
+	public void write(StreetInclineResult result) throws SQLException {
+		rows.append(result.getStreetId()).append('\t').append(result.getProfileSectionLength()).append('\t');
+		appendArray(result.getProfileGps());
+		rows.append('\t');
+		appendArray(result.getProfileLidar());
+		rows.append('\t');
+		appendArray(result.getProfileSrtm());
+		rows.append('\n');
+		rowCount++;
+		if (rows.length() >= FLUSH_SIZE) {
+			flush();
+		}
+	}
+
+	/**
+	 * Appends the inclines as PostgreSQL array literal, e.g.
+	 * <code>{1.25,NULL,-0.5}</code>. NaN values are NULL, a missing profile
+	 * is \N.
+	 */
+	private void appendArray(double[] inclines) {
+		if (inclines == null) {
+			rows.append("\\N");
+			return;
+		}
+		rows.append('{');
+		for (int i = 0; i < inclines.length; i++) {
+			if (i > 0) {
+				rows.append(',');
+			}
+			if (Double.isNaN(inclines[i])) {
+				rows.append("NULL");
+			} else {
+				rows.append(inclines[i]);
+			}
+		}
+		rows.append('}');
+	}
+
+	/**
+	 * Copies all buffered rows to the database.
+	 *
+	 * @throws SQLException
+	 */
+	public void flush() throws SQLException {
+		if (rows.length() == 0) {
+			return;
+		}
+		try {
+			copyManager.copyIn("COPY " + table
+					+ " (street_id, section_length, incline_gps, incline_lidar, incline_srtm) FROM STDIN",
+					new StringReader(rows.toString()));
+		} catch (IOException e) {
+			throw new SQLException("Could not copy profiles to " + table, e);
+		}
+		rows.setLength(0);
+	}
+
+	/**
+	 * Flushes the remaining rows.
+	 *
+	 * @throws SQLException
+	 */
+	public void close() throws SQLException {
+		flush();
+		LOGGER.info(rowCount + " profiles written to " + table);
+	}
+}
@@ -0,0 +1,104 @@
+package osmgpxtool.inclinecalculator.profile;
+
+import java.util.Arrays;
+
+/**
+ * Incline profile of a street divided into sections of equal length along
+ * its linear reference. Each section holds the mean of all inclines added
+ * within it, weighted by their length.
+ *
+ * The arrays are reused between streets, therefore an instance must not be
+ * shared between threads.
+ *
+ */
+public class SectionProfile {
+	private double sectionLength;
+	private int numSections;
+	private double[] sumInclineTimesLength = new double[16];
+	private double[] sumLength = new double[16];
+
+	/**
+	 * Starts a new profile.
+	 *
+	 * @param streetLength
+	 *            length of the street in meters
+	 * @param sectionLength
+	 *            length of a section in meters
+	 */
+	public void reset(double streetLength, double sectionLength) {
+		this.sectionLength = sectionLength;
+		this.numSections = (int) Math.max(1, Math.ceil(streetLength / sectionLength));
+		if (sumLength.length < numSections) {
+			int newLength = Math.max(numSections, sumLength.length * 2);
+			sumInclineTimesLength = new double[newLength];
+			sumLength = new double[newLength];
+		} else {
+			Arrays.fill(sumInclineTimesLength, 0, numSections, 0);
+			Arrays.fill(sumLength, 0, numSections, 0);
+		}
+	}
+
+	/**
+	 * Adds an incline to the section at the given measure.
+	 *
+	 * @param measure
+	 *            position along the street in meters
+	 * @param incline
+	 *            incline [%]
+	 * @param length
+	 *            length of the line the incline was measured on
+	 */
+	public void add(double measure, double incline, double length) {
+		if (Double.isNaN(incline) || !(length > 0)) {
+			return;
+		}
+		int section = (int) (measure / sectionLength);
+		section = section < 0 ? 0 : (section >= numSections ? numSections - 1 : section);
+		sumInclineTimesLength[section] += incline * length;
+		sumLength[section] += length;
+	}
+
+	public int getNumSections() {
+		return numSections;
+	}
+
+	public double getSectionLength() {
+		return sectionLength;
+	}
+
+	/**
+	 * @param section
+	 * @return mean incline [%] of the section rounded to two decimal places
+	 *         or NaN, if no incline was added to the section
+	 */
+	public double getIncline(int section) {
+		if (sumLength[section] == 0) {
+			return Double.NaN;
+		}
+		return (double) Math.round(sumInclineTimesLength[section] / sumLength[section] * 100) / 100;
+	}
+
+	/**
+	 * @return true, if no incline was added to any section
+	 */
+	public boolean isEmpty() {
+		for (int i = 0; i < numSections; i++) {
+			if (sumLength[i] > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the mean inclines of all sections, NaN for sections without
+	 *         incline
+	 */
+	public double[] toArray() {
+		double[] inclines = new double[numSections];
+		for (int i = 0; i < numSections; i++) {
+			inclines[i] = getIncline(i);
+		}
+		return inclines;
+	}
+}
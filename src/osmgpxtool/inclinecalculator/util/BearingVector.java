@@ -0,0 +1,106 @@
+package osmgpxtool.inclinecalculator.util;
+
+/**
+ * Mean direction of lines in EPSG:4326, accumulated as sum of vectors
+ * (east, north) along the initial bearing of each segment.
+ *
+ * Bearings are circular: averaging the angles of segments heading north
+ * (e.g. 179° and -179°) gives south. The vector sum has no such wrap, and the
+ * angle between two directions follows from their dot product, independent
+ * of the quadrants.
+ *
+ * The vector of a segment is (sin Δλ cos φ2, cos φ1 sin φ2 - sin φ1 cos φ2 cos
+ * Δλ), the direction of the initial bearing scaled by the sine of the
+ * angular distance. For segments of streets and traces this is proportional
+ * to their length, so the mean direction is weighted by length without
+ * calculating any distance or angle.
+ *
+ * Reference: http://www.movable-type.co.uk/scripts/latlong.html
+ *
+ */
+public class BearingVector {
+	private double east;
+	private double north;
+
+	public void clear() {
+		east = 0;
+		north = 0;
+	}
+
+	/**
+	 * Adds the segment between two positions.
+	 *
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 */
+	public void add(double x1, double y1, double x2, double y2) {
+		double lat1 = Math.toRadians(y1);
+		double lat2 = Math.toRadians(y2);
+		double deltaLon = Math.toRadians(x2 - x1);
+		double cosLat2 = Math.cos(lat2);
+		east += Math.sin(deltaLon) * cosLat2;
+		north += Math.cos(lat1) * Math.sin(lat2) - Math.sin(lat1) * cosLat2 * Math.cos(deltaLon);
+	}
+
+	/**
+	 * Adds all segments of packed coordinates (x0, y0, x1, y1, ...).
+	 *
+	 * @param xy
+	 * @param numPoints
+	 */
+	public void addLine(double[] xy, int numPoints) {
+		for (int i = 0; i < numPoints - 1; i++) {
+			add(xy[2 * i], xy[2 * i + 1], xy[2 * i + 2], xy[2 * i + 3]);
+		}
+	}
+
+	/**
+	 * Adds all segments of the points start (inclusive) to end (exclusive).
+	 *
+	 * @param x
+	 * @param y
+	 * @param start
+	 * @param end
+	 */
+	public void addLine(double[] x, double[] y, int start, int end) {
+		for (int i = start; i < end - 1; i++) {
+			add(x[i], y[i], x[i + 1], y[i + 1]);
+		}
+	}
+
+	/**
+	 * @return true, if no segment with a length was added
+	 */
+	public boolean isEmpty() {
+		return east == 0 && north == 0;
+	}
+
+	/**
+	 * @return mean bearing between -180 and 180 or NaN, if no segment with a
+	 *         length was added
+	 */
+	public double getBearing() {
+		if (isEmpty()) {
+			return Double.NaN;
+		}
+		return Math.toDegrees(Math.atan2(east, north));
+	}
+
+	/**
+	 * Calculates the cosine of the angle between this and the other
+	 * direction. It is 1 for the same, 0 for perpendicular and -1 for
+	 * opposite directions.
+	 *
+	 * @param other
+	 * @return cosine or NaN, if one of the directions is empty
+	 */
+	public double cosAngleTo(BearingVector other) {
+		double norm = Math.sqrt((east * east + north * north) * (other.east * other.east + other.north * other.north));
+		if (norm == 0) {
+			return Double.NaN;
+		}
+		return (east * other.east + north * other.north) / norm;
+	}
+}
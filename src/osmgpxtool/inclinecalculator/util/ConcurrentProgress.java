@@ -0,0 +1,351 @@
+package osmgpxtool.inclinecalculator.util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe implementation of {@link ProgressListener} and
+ * {@link ProgressState}, which may be shared by several worker threads.
+ *
+ * Processed steps are counted in a {@link LongAdder}, so that
+ * {@link #increment()} does not contend between threads. Timestamps are not
+ * taken on every step, but sampled every {@value #SAMPLE_MASK}+1 steps per
+ * thread and at most every {@value #MIN_SAMPLE_INTERVAL_MILLIS} ms. Each
+ * sample updates the throughput and two exponentially weighted moving
+ * averages (EWMA) of the rate, which are used for a stable prediction of the
+ * remaining time.
+ *
+ * Whether a progress message is due (see {@link #pollReport()}) is decided
+ * during sampling as well, so that the caller only pays a volatile read per
+ * step.
+ *
+ */
+public class ConcurrentProgress implements ProgressListener, ProgressState {
+
+	/**
+	 * A sample is taken every SAMPLE_MASK + 1 steps of a thread. Must be a
+	 * power of two minus one.
+	 */
+	private static final int SAMPLE_MASK = 15;
+
+	/**
+	 * Minimal time between two samples in milliseconds
+	 */
+	private static final long MIN_SAMPLE_INTERVAL_MILLIS = 100;
+
+	/**
+	 * Time constants of the two EWMA rates in seconds
+	 */
+	private static final double SHORT_EWMA_SECONDS = 60;
+	private static final double LONG_EWMA_SECONDS = 300;
+
+	private final LongAdder processed = new LongAdder();
+
+	private final ThreadLocal<long[]> localSteps = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	/**
+	 * Steps of progress between two reports in percent
+	 */
+	private final int reportStepPercent;
+
+	private volatile int overall;
+
+	/**
+	 * The start time of a progress in nanoseconds (see System.nanoTime())
+	 */
+	private volatile long startNanos;
+
+	/**
+	 * Time of the last sample in nanoseconds. Used as lock for sampling.
+	 */
+	private final AtomicLong lastSampleNanos = new AtomicLong();
+
+	/*
+	 * The following fields are only written by the thread which won the
+	 * sampling race and are read by arbitrary threads.
+	 */
+	private volatile long sampledSteps;
+	private volatile long sampledElapsedNanos;
+	private volatile double shortEwmaRate = Double.NaN;
+	private volatile double longEwmaRate = Double.NaN;
+	private volatile long lastStepNanos;
+	private volatile int lastReportedStep = -1;
+
+	private final AtomicBoolean reportDue = new AtomicBoolean(false);
+
+	public ConcurrentProgress() {
+		this(5);
+	}
+
+	/**
+	 * @param reportStepPercent
+	 *            steps of progress in percent, after which
+	 *            {@link #pollReport()} returns true.
+	 */
+	public ConcurrentProgress(int reportStepPercent) {
+		if (reportStepPercent <= 0) {
+			throw new IllegalArgumentException("reportStepPercent must be positive");
+		}
+		this.reportStepPercent = reportStepPercent;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Setting the absolute count is not atomic with respect to concurrent
+	 * calls of {@link #increment()}.
+	 */
+	public void update(int current) {
+		processed.reset();
+		processed.add(current);
+		sample(System.nanoTime(), true);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void increment() {
+		processed.increment();
+		long[] steps = localSteps.get();
+		if ((++steps[0] & SAMPLE_MASK) == 0) {
+			sample(System.nanoTime(), false);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void start(int overall) {
+		this.overall = overall;
+		this.start();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void start() {
+		long now = System.nanoTime();
+		processed.reset();
+		startNanos = now;
+		lastSampleNanos.set(now);
+		lastStepNanos = 0;
+		sampledSteps = 0;
+		sampledElapsedNanos = 0;
+		shortEwmaRate = Double.NaN;
+		longEwmaRate = Double.NaN;
+		lastReportedStep = -1;
+		reportDue.set(false);
+	}
+
+	/**
+	 * Returns true exactly once after the progress passed the next reporting
+	 * step (see constructor). Cheap enough to be called after each step.
+	 *
+	 * @return true, if a progress message should be printed
+	 */
+	public boolean pollReport() {
+		return reportDue.get() && reportDue.compareAndSet(true, false);
+	}
+
+	/**
+	 * Takes a sample of the current state, if no other thread did so within
+	 * the minimal sampling interval.
+	 */
+	private void sample(long now, boolean force) {
+		long last = lastSampleNanos.get();
+		long dtNanos = now - last;
+		if (!force && dtNanos < MIN_SAMPLE_INTERVAL_MILLIS * 1000000L) {
+			return;
+		}
+		if (!lastSampleNanos.compareAndSet(last, now)) {
+			// another thread is sampling
+			return;
+		}
+		long steps = processed.sum();
+		long deltaSteps = steps - sampledSteps;
+
+		if (dtNanos > 0) {
+			double dtSeconds = dtNanos / 1e9;
+			double rate = deltaSteps / dtSeconds;
+			shortEwmaRate = ewma(shortEwmaRate, rate, dtSeconds, SHORT_EWMA_SECONDS);
+			longEwmaRate = ewma(longEwmaRate, rate, dtSeconds, LONG_EWMA_SECONDS);
+			if (deltaSteps > 0) {
+				lastStepNanos = dtNanos / deltaSteps;
+			}
+		}
+		sampledSteps = steps;
+		sampledElapsedNanos = now - startNanos;
+
+		int total = overall;
+		if (total > 0) {
+			int step = (int) (100L * steps / total) / reportStepPercent;
+			if (step != lastReportedStep) {
+				lastReportedStep = step;
+				reportDue.set(true);
+			}
+		}
+	}
+
+	private static double ewma(double old, double rate, double dtSeconds, double tauSeconds) {
+		if (Double.isNaN(old)) {
+			return rate;
+		}
+		double alpha = 1 - Math.exp(-dtSeconds / tauSeconds);
+		return old + alpha * (rate - old);
+	}
+
+	/**
+	 * Gets the average throughput since start.
+	 *
+	 * @return processed steps per second
+	 */
+	public double getThroughput() {
+		long elapsed = getElapsedTime();
+		if (elapsed > 0) {
+			return getProcessedStepsLong() * 1000d / elapsed;
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * Gets the exponentially weighted moving average of the rate with a time
+	 * constant of one minute.
+	 *
+	 * @return steps per second, NaN if no sample was taken yet
+	 */
+	public double getShortTermRate() {
+		return shortEwmaRate;
+	}
+
+	/**
+	 * Gets the exponentially weighted moving average of the rate with a time
+	 * constant of five minutes.
+	 *
+	 * @return steps per second, NaN if no sample was taken yet
+	 */
+	public double getLongTermRate() {
+		return longEwmaRate;
+	}
+
+	/**
+	 * Gets the processed steps without truncation to int.
+	 *
+	 * @return processed steps
+	 */
+	public long getProcessedStepsLong() {
+		return processed.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getProcessedSteps() {
+		return (int) Math.min(Integer.MAX_VALUE, processed.sum());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getTotalSteps() {
+		return overall;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getRemainingSteps() {
+		return Math.max(0, getTotalSteps() - getProcessedSteps());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public double getProgressPercent() {
+		if (getTotalSteps() > 0) {
+			double percent = 100d * getProcessedSteps() / getTotalSteps();
+			if (percent < 0)
+				percent = 0;
+			if (percent > 100)
+				percent = 100;
+			return percent;
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getElapsedTime() {
+		if (startNanos == 0)
+			return 0;
+		return (System.nanoTime() - startNanos) / 1000000L;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The prediction is based on the long term EWMA rate, which is less
+	 * sensitive to short stalls than the overall average. Before the first
+	 * sample the overall average is used.
+	 */
+	public long getPredictedRemainingTime() {
+		double rate = longEwmaRate;
+		if (Double.isNaN(rate) || rate <= 0) {
+			rate = getThroughput();
+		}
+		if (rate > 0) {
+			return Math.round(getRemainingSteps() / rate * 1000);
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getAverageTimePerStep() {
+		long steps = getProcessedStepsLong();
+		if (steps > 0) {
+			return getElapsedTime() / steps;
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * As timestamps are sampled, this is the average time per step within the
+	 * last sampling interval.
+	 */
+	public long getCurrentStepTime() {
+		return lastStepNanos / 1000000L;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getProgressMessage() {
+		String message = "step=" + getProcessedSteps() + "/" + getTotalSteps() + " (" + Math.round(getProgressPercent())
+				+ "%)";
+		message += "\n";
+		message += "elapsed time=" + TimeTools.convertMillisToHourMinuteSecond(getElapsedTime()) + ", current time="
+				+ TimeTools.getLogTime();
+		message += "\n";
+		message += "throughput=" + Util.round(getThroughput(), 2) + " steps/s, rate 1min="
+				+ Util.round(getShortTermRate(), 2) + " steps/s, rate 5min=" + Util.round(getLongTermRate(), 2)
+				+ " steps/s";
+		message += "\n";
+		message += "remaining time=" + TimeTools.convertMillisToHourMinuteSecond(getPredictedRemainingTime())
+				+ ", remaining steps=" + getRemainingSteps();
+		return message;
+	}
+}
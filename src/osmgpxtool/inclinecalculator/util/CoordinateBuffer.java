@@ -0,0 +1,178 @@
+package osmgpxtool.inclinecalculator.util;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+
+/**
+ * Growable buffer of 3D coordinates of a (multi) line, stored as separate
+ * x, y and z arrays. The points of part i are stored between
+ * {@link #getPartStart(int)} (inclusive) and {@link #getPartEnd(int)}
+ * (exclusive). Missing z values are NaN.
+ *
+ * A buffer can be reused by calling {@link #clear()}.
+ *
+ */
+public class CoordinateBuffer {
+	private double[] x;
+	private double[] y;
+	private double[] z;
+	private int size;
+
+	/**
+	 * partOffsets[i] is the index of the first point of part i,
+	 * partOffsets[partCount] is the size of the buffer.
+	 */
+	private int[] partOffsets = new int[4];
+	private int partCount;
+
+	public CoordinateBuffer() {
+		this(16);
+	}
+
+	public CoordinateBuffer(int initialCapacity) {
+		x = new double[initialCapacity];
+		y = new double[initialCapacity];
+		z = new double[initialCapacity];
+	}
+
+	public void clear() {
+		size = 0;
+		partCount = 0;
+	}
+
+	/**
+	 * Starts a new part. All points added afterwards belong to this part.
+	 */
+	public void startPart() {
+		if (partCount + 2 > partOffsets.length) {
+			partOffsets = Arrays.copyOf(partOffsets, partOffsets.length * 2);
+		}
+		partOffsets[partCount] = size;
+		partCount++;
+		partOffsets[partCount] = size;
+	}
+
+	/**
+	 * Removes the last part and its points.
+	 */
+	public void removeLastPart() {
+		if (partCount > 0) {
+			partCount--;
+			size = partOffsets[partCount];
+		}
+	}
+
+	/**
+	 * Removes the last point of the current part.
+	 */
+	public void removeLastPoint() {
+		if (getLastPartSize() > 0) {
+			size--;
+			partOffsets[partCount] = size;
+		}
+	}
+
+	/**
+	 * @return number of points of the current part
+	 */
+	public int getLastPartSize() {
+		return partCount > 0 ? size - partOffsets[partCount - 1] : 0;
+	}
+
+	/**
+	 * Reduces the capacity to the number of points to save memory, if the
+	 * buffer is kept.
+	 */
+	public void trimToSize() {
+		if (x.length > size) {
+			x = Arrays.copyOf(x, size);
+			y = Arrays.copyOf(y, size);
+			z = Arrays.copyOf(z, size);
+		}
+		if (partOffsets.length > partCount + 2) {
+			partOffsets = Arrays.copyOf(partOffsets, partCount + 2);
+		}
+	}
+
+	/**
+	 * Adds a point to the current part.
+	 */
+	public void add(double px, double py, double pz) {
+		if (size == x.length) {
+			int newLength = Math.max(16, x.length * 2);
+			x = Arrays.copyOf(x, newLength);
+			y = Arrays.copyOf(y, newLength);
+			z = Arrays.copyOf(z, newLength);
+		}
+		x[size] = px;
+		y[size] = py;
+		z[size] = pz;
+		size++;
+		partOffsets[partCount] = size;
+	}
+
+	public double[] getX() {
+		return x;
+	}
+
+	public double[] getY() {
+		return y;
+	}
+
+	public double[] getZ() {
+		return z;
+	}
+
+	/**
+	 * @return number of points of all parts
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getNumParts() {
+		return partCount;
+	}
+
+	public int getPartStart(int part) {
+		return partOffsets[part];
+	}
+
+	public int getPartEnd(int part) {
+		return partOffsets[part + 1];
+	}
+
+	/**
+	 * Creates a MultiLineString in EPSG:4326 with one LineString per part,
+	 * see {@link Geometries}.
+	 *
+	 * @return
+	 */
+	public MultiLineString toMultiLineString() {
+		return toMultiLineString(Geometries.FACTORY);
+	}
+
+	/**
+	 * Creates a MultiLineString with one LineString per part. The
+	 * coordinates are stored as packed sequences.
+	 *
+	 * @param geomF
+	 * @return
+	 */
+	public MultiLineString toMultiLineString(GeometryFactory geomF) {
+		LineString[] lines = new LineString[partCount];
+		for (int p = 0; p < partCount; p++) {
+			lines[p] = geomF.createLineString(Geometries.createSequence(x, y, z, getPartStart(p), getPartEnd(p)));
+		}
+		MultiLineString multiLine = geomF.createMultiLineString(lines);
+		multiLine.setSRID(4326);
+		return multiLine;
+	}
+}
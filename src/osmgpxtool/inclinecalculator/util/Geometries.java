@@ -0,0 +1,72 @@
+package osmgpxtool.inclinecalculator.util;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.PrecisionModel;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
+
+/**
+ * Shared factory of the street and trace geometries in EPSG:4326. The
+ * coordinates are stored in packed double arrays instead of one
+ * {@link com.vividsolutions.jts.geom.Coordinate} object per point, which
+ * needs less than half of the memory per point.
+ *
+ * Geometries of this factory must not be modified with a
+ * {@link com.vividsolutions.jts.geom.CoordinateFilter}, as the coordinates
+ * returned by a packed sequence are copies.
+ *
+ */
+public final class Geometries {
+	public static final GeometryFactory FACTORY = new GeometryFactory(new PrecisionModel(), 4326,
+			PackedCoordinateSequenceFactory.DOUBLE_FACTORY);
+
+	private Geometries() {
+	}
+
+	/**
+	 * Creates a 2D LineString.
+	 *
+	 * @param xy
+	 *            packed coordinates (x0, y0, x1, y1, ...), which are copied
+	 * @param numPoints
+	 * @return
+	 */
+	public static LineString createLineString(double[] xy, int numPoints) {
+		LineString line = FACTORY.createLineString(new PackedCoordinateSequence.Double(
+				Arrays.copyOf(xy, 2 * numPoints), 2));
+		line.setSRID(4326);
+		return line;
+	}
+
+	/**
+	 * Creates a 3D LineString from the points start (inclusive) to end
+	 * (exclusive).
+	 *
+	 * @return
+	 */
+	public static LineString createLineString(double[] x, double[] y, double[] z, int start, int end) {
+		LineString line = FACTORY.createLineString(createSequence(x, y, z, start, end));
+		line.setSRID(4326);
+		return line;
+	}
+
+	/**
+	 * Creates a packed 3D sequence from the points start (inclusive) to end
+	 * (exclusive).
+	 *
+	 * @return
+	 */
+	public static CoordinateSequence createSequence(double[] x, double[] y, double[] z, int start, int end) {
+		double[] xyz = new double[3 * (end - start)];
+		for (int i = start, j = 0; i < end; i++) {
+			xyz[j++] = x[i];
+			xyz[j++] = y[i];
+			xyz[j++] = z[i];
+		}
+		return new PackedCoordinateSequence.Double(xyz, 3);
+	}
+}
@@ -0,0 +1,437 @@
+package osmgpxtool.inclinecalculator.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming decoders for LineString and MultiLineString geometries in
+ * GeoJSON and (E)WKB format. Coordinates are read directly into a
+ * {@link CoordinateBuffer} (one part per LineString) or a packed double
+ * array, without building a JSON tree or JTS geometries.
+ *
+ */
+public class GeometryDecoder {
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private static final int WKB_LINESTRING = 2;
+	private static final int WKB_MULTILINESTRING = 5;
+	private static final int WKB_GEOMETRYCOLLECTION = 7;
+
+	/**
+	 * Decodes a GeoJSON LineString or MultiLineString into the buffer. The
+	 * buffer is cleared first.
+	 *
+	 * @param json
+	 * @param buffer
+	 * @return false, if json is null or the geometry is no (Multi)LineString,
+	 *         e.g. an empty GeometryCollection or a Point
+	 * @throws IllegalArgumentException
+	 *             if the json is malformed
+	 */
+	public static boolean decodeGeoJson(CharSequence json, CoordinateBuffer buffer) {
+		buffer.clear();
+		if (json == null) {
+			return false;
+		}
+		JsonCursor c = new JsonCursor(json);
+		c.expect('{');
+		String type = null;
+		int coordinatesPos = -1;
+		boolean decoded = false;
+		while (true) {
+			c.skipWhitespace();
+			if (c.peek() == '}') {
+				break;
+			}
+			if (c.peek() == ',') {
+				c.pos++;
+				continue;
+			}
+			if (c.matchKey("type")) {
+				type = c.readString();
+			} else if (c.matchKey("coordinates")) {
+				if (type != null) {
+					if (!isLineType(type)) {
+						return false;
+					}
+					readCoordinates(c, buffer);
+					decoded = true;
+				} else {
+					// type follows, decode later
+					coordinatesPos = c.pos;
+					c.skipValue();
+				}
+			} else {
+				c.readString();
+				c.skipWhitespace();
+				c.expect(':');
+				c.skipValue();
+			}
+		}
+		if (type == null || !isLineType(type)) {
+			return false;
+		}
+		if (!decoded && coordinatesPos >= 0) {
+			c.pos = coordinatesPos;
+			readCoordinates(c, buffer);
+			decoded = true;
+		}
+		return decoded;
+	}
+
+	private static boolean isLineType(String type) {
+		return type.equals("LineString") || type.equals("MultiLineString");
+	}
+
+	/**
+	 * Reads the coordinates array of a LineString ([[x,y,z],...]) or a
+	 * MultiLineString ([[[x,y,z],...],...]).
+	 */
+	private static void readCoordinates(JsonCursor c, CoordinateBuffer buffer) {
+		c.expect('[');
+		c.skipWhitespace();
+		if (c.peek() == ']') {
+			c.pos++;
+			return;
+		}
+		int firstChild = c.pos;
+		c.expect('[');
+		c.skipWhitespace();
+		boolean multi = c.peek() == '[';
+		c.pos = firstChild;
+		if (multi) {
+			// MultiLineString, the first child is the first line
+			while (true) {
+				c.expect('[');
+				buffer.startPart();
+				readPositions(c, buffer);
+				c.skipWhitespace();
+				if (c.peek() == ',') {
+					c.pos++;
+					c.skipWhitespace();
+				} else {
+					c.expect(']');
+					return;
+				}
+			}
+		} else {
+			// LineString, the first child is the first position
+			buffer.startPart();
+			readPositions(c, buffer);
+		}
+	}
+
+	/**
+	 * Reads positions until the closing bracket of the enclosing array.
+	 */
+	private static void readPositions(JsonCursor c, CoordinateBuffer buffer) {
+		c.skipWhitespace();
+		if (c.peek() == ']') {
+			c.pos++;
+			return;
+		}
+		while (true) {
+			c.expect('[');
+			double px = c.readNumber();
+			c.expect(',');
+			double py = c.readNumber();
+			double pz = Double.NaN;
+			c.skipWhitespace();
+			if (c.peek() == ',') {
+				c.pos++;
+				pz = c.readNumber();
+				c.skipWhitespace();
+				// ignore further ordinates
+				while (c.peek() == ',') {
+					c.pos++;
+					c.readNumber();
+					c.skipWhitespace();
+				}
+			}
+			c.expect(']');
+			buffer.add(px, py, pz);
+			c.skipWhitespace();
+			if (c.peek() == ',') {
+				c.pos++;
+			} else {
+				c.expect(']');
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Minimal JSON cursor. Numbers are parsed without creating Strings for
+	 * the common case of up to 15 significant digits.
+	 */
+	private static class JsonCursor {
+		final CharSequence s;
+		final int len;
+		int pos;
+
+		JsonCursor(CharSequence s) {
+			this.s = s;
+			this.len = s.length();
+		}
+
+		char peek() {
+			if (pos >= len) {
+				throw new IllegalArgumentException("Problem parsing json, unexpected end");
+			}
+			return s.charAt(pos);
+		}
+
+		void skipWhitespace() {
+			while (pos < len && s.charAt(pos) <= ' ') {
+				pos++;
+			}
+		}
+
+		void expect(char ch) {
+			skipWhitespace();
+			if (peek() != ch) {
+				throw new IllegalArgumentException("Problem parsing json, expected '" + ch + "' at position " + pos);
+			}
+			pos++;
+		}
+
+		/**
+		 * Consumes "key": if the next key equals the given key.
+		 */
+		boolean matchKey(String key) {
+			skipWhitespace();
+			int n = key.length();
+			if (pos + n + 2 > len || s.charAt(pos) != '"' || s.charAt(pos + n + 1) != '"') {
+				return false;
+			}
+			for (int i = 0; i < n; i++) {
+				if (s.charAt(pos + 1 + i) != key.charAt(i)) {
+					return false;
+				}
+			}
+			pos += n + 2;
+			expect(':');
+			return true;
+		}
+
+		String readString() {
+			expect('"');
+			StringBuilder sb = new StringBuilder();
+			while (peek() != '"') {
+				char ch = s.charAt(pos++);
+				if (ch == '\\') {
+					ch = s.charAt(pos++);
+				}
+				sb.append(ch);
+			}
+			pos++;
+			return sb.toString();
+		}
+
+		void skipValue() {
+			skipWhitespace();
+			char ch = peek();
+			if (ch == '"') {
+				readString();
+			} else if (ch == '[' || ch == '{') {
+				int depth = 0;
+				boolean inString = false;
+				do {
+					ch = s.charAt(pos++);
+					if (inString) {
+						if (ch == '\\') {
+							pos++;
+						} else if (ch == '"') {
+							inString = false;
+						}
+					} else if (ch == '"') {
+						inString = true;
+					} else if (ch == '[' || ch == '{') {
+						depth++;
+					} else if (ch == ']' || ch == '}') {
+						depth--;
+					}
+				} while (depth > 0);
+			} else {
+				while (pos < len && ",}] \t\r\n".indexOf(s.charAt(pos)) < 0) {
+					pos++;
+				}
+			}
+		}
+
+		double readNumber() {
+			skipWhitespace();
+			int start = pos;
+			boolean negative = false;
+			if (pos < len && s.charAt(pos) == '-') {
+				negative = true;
+				pos++;
+			}
+			long mantissa = 0;
+			int digits = 0;
+			int scale = 0;
+			boolean fast = true;
+			char ch;
+			while (pos < len && (ch = s.charAt(pos)) >= '0' && ch <= '9') {
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (ch - '0');
+					if (mantissa != 0) {
+						digits++;
+					}
+				} else {
+					fast = false;
+				}
+				pos++;
+			}
+			if (pos < len && s.charAt(pos) == '.') {
+				pos++;
+				while (pos < len && (ch = s.charAt(pos)) >= '0' && ch <= '9') {
+					if (digits < 18) {
+						mantissa = mantissa * 10 + (ch - '0');
+						if (mantissa != 0) {
+							digits++;
+						}
+						scale++;
+					} else {
+						fast = false;
+					}
+					pos++;
+				}
+			}
+			if (pos < len && ((ch = s.charAt(pos)) == 'e' || ch == 'E')) {
+				fast = false;
+				pos++;
+				if (pos < len && ((ch = s.charAt(pos)) == '+' || ch == '-')) {
+					pos++;
+				}
+				while (pos < len && (ch = s.charAt(pos)) >= '0' && ch <= '9') {
+					pos++;
+				}
+			}
+			if (pos == start || (negative && pos == start + 1)) {
+				throw new IllegalArgumentException("Problem parsing json, expected number at position " + start);
+			}
+			if (fast && digits <= 15 && scale < POWERS_OF_TEN.length) {
+				// exact: mantissa and power of ten are representable, one
+				// correctly rounded division
+				double value = mantissa / POWERS_OF_TEN[scale];
+				return negative ? -value : value;
+			}
+			return Double.parseDouble(s.subSequence(start, pos).toString());
+		}
+	}
+
+	/**
+	 * Decodes a (E)WKB LineString, MultiLineString or GeometryCollection of
+	 * these into the buffer. The buffer is cleared first. Missing z values
+	 * are set to NaN.
+	 *
+	 * @param wkb
+	 * @param buffer
+	 * @return false, if wkb is null or contains other geometry types
+	 */
+	public static boolean decodeWkb(byte[] wkb, CoordinateBuffer buffer) {
+		buffer.clear();
+		if (wkb == null) {
+			return false;
+		}
+		return readWkbGeometry(ByteBuffer.wrap(wkb), buffer);
+	}
+
+	private static boolean readWkbGeometry(ByteBuffer buf, CoordinateBuffer buffer) {
+		int[] header = readWkbHeader(buf);
+		int type = header[0];
+		boolean hasZ = header[1] != 0;
+		boolean hasM = header[2] != 0;
+		switch (type) {
+		case WKB_LINESTRING:
+			buffer.startPart();
+			readWkbPoints(buf, buffer, hasZ, hasM);
+			return true;
+		case WKB_MULTILINESTRING:
+		case WKB_GEOMETRYCOLLECTION:
+			int n = buf.getInt();
+			for (int i = 0; i < n; i++) {
+				if (!readWkbGeometry(buf, buffer)) {
+					return false;
+				}
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static void readWkbPoints(ByteBuffer buf, CoordinateBuffer buffer, boolean hasZ, boolean hasM) {
+		int numPoints = buf.getInt();
+		for (int i = 0; i < numPoints; i++) {
+			double px = buf.getDouble();
+			double py = buf.getDouble();
+			double pz = hasZ ? buf.getDouble() : Double.NaN;
+			if (hasM) {
+				buf.getDouble();
+			}
+			buffer.add(px, py, pz);
+		}
+	}
+
+	/**
+	 * Reads byte order and geometry type and skips the SRID.
+	 *
+	 * @return {base type, hasZ, hasM}
+	 */
+	private static int[] readWkbHeader(ByteBuffer buf) {
+		buf.order(buf.get() == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		int type = buf.getInt();
+		// EWKB flags
+		boolean hasZ = (type & 0x80000000) != 0;
+		boolean hasM = (type & 0x40000000) != 0;
+		if ((type & 0x20000000) != 0) {
+			// skip SRID
+			buf.getInt();
+		}
+		type &= 0x0FFFFFFF;
+		// ISO WKB dimensions
+		if (type >= 3000) {
+			hasZ = true;
+			hasM = true;
+		} else if (type >= 2000) {
+			hasM = true;
+		} else if (type >= 1000) {
+			hasZ = true;
+		}
+		return new int[] { type % 1000, hasZ ? 1 : 0, hasM ? 1 : 0 };
+	}
+
+	/**
+	 * Decodes a (E)WKB LineString to packed 2D coordinates (x0, y0, x1, y1,
+	 * ...). Z and M values are skipped.
+	 *
+	 * @param wkb
+	 * @return coordinates or null, if wkb is null or the geometry is no
+	 *         LineString
+	 */
+	public static double[] decodeWkbLineString2D(byte[] wkb) {
+		if (wkb == null) {
+			return null;
+		}
+		ByteBuffer buf = ByteBuffer.wrap(wkb);
+		int[] header = readWkbHeader(buf);
+		if (header[0] != WKB_LINESTRING) {
+			return null;
+		}
+		int skip = (header[1] != 0 ? 8 : 0) + (header[2] != 0 ? 8 : 0);
+		int numPoints = buf.getInt();
+		double[] coordinates = new double[numPoints * 2];
+		for (int i = 0; i < numPoints; i++) {
+			coordinates[2 * i] = buf.getDouble();
+			coordinates[2 * i + 1] = buf.getDouble();
+			if (skip > 0) {
+				buf.position(buf.position() + skip);
+			}
+		}
+		return coordinates;
+	}
+}
@@ -0,0 +1,22 @@
+package osmgpxtool.inclinecalculator.util;
+
+/**
+ * Calculates the segment lengths one after another with
+ * {@link Util#calculateOrthometricDistance(double, double, double, double)}.
+ * This is the reference of the other implementations.
+ *
+ */
+public class ScalarSegmentDistances implements SegmentDistances {
+
+	@Override
+	public String getName() {
+		return SCALAR;
+	}
+
+	@Override
+	public void compute(double[] x, double[] y, int start, int end, double[] out) {
+		for (int i = start; i < end - 1; i++) {
+			out[i - start] = Util.calculateOrthometricDistance(x[i], y[i], x[i + 1], y[i + 1]);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package osmgpxtool.inclinecalculator.util;
+
+import org.slf4j.LoggerFactory;
+
+import osmgpxtool.inclinecalculator.InclineConfig;
+
+/**
+ * Calculates the orthometric lengths of all segments of a line in one call.
+ * The kernels use it to work on a whole trace part at once instead of point
+ * by point.
+ *
+ * The implementation is selected by the key "segmentMath": "scalar" uses
+ * {@link Util#calculateOrthometricDistance(double, double, double, double)},
+ * "vector" uses the Vector API of JDK 16 and newer (see
+ * VectorSegmentDistances in src-jdk16). If the Vector API is not available,
+ * the scalar implementation is used.
+ *
+ */
+public interface SegmentDistances {
+	String SCALAR = "scalar";
+	String VECTOR = "vector";
+
+	String getName();
+
+	/**
+	 * Calculates the length in meters of the segments between the points
+	 * start (inclusive) and end (exclusive) given in SRID EPSG:4326.
+	 *
+	 * @param x
+	 * @param y
+	 * @param start
+	 * @param end
+	 * @param out
+	 *            out[k] is set to the length of the segment from point
+	 *            start+k to start+k+1, must hold at least end-start-1 values
+	 */
+	void compute(double[] x, double[] y, int start, int end, double[] out);
+
+	/**
+	 * @param config
+	 * @return the implementation of the key "segmentMath"
+	 */
+	static SegmentDistances create(InclineConfig config) {
+		String name = config.getSegmentMath();
+		if (name.equals(SCALAR)) {
+			return new ScalarSegmentDistances();
+		} else if (name.equals(VECTOR)) {
+			try {
+				return (SegmentDistances) Class.forName("osmgpxtool.inclinecalculator.util.VectorSegmentDistances")
+						.getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// not compiled (JDK 8) or started without
+				// --add-modules jdk.incubator.vector
+				LoggerFactory.getLogger(SegmentDistances.class).warn(
+						"Vector API is not available, using scalar segment math: " + e);
+				return new ScalarSegmentDistances();
+			}
+		}
+		throw new IllegalArgumentException("Wrong argument in properties file. The key \"segmentMath\" must have value either \""
+				+ SCALAR + "\" or \"" + VECTOR + "\".");
+	}
+}
@@ -3,16 +3,11 @@ package osmgpxtool.inclinecalculator.util;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.GeodeticCalculator;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.NoSuchAuthorityCodeException;
@@ -24,11 +19,9 @@ import org.slf4j.LoggerFactory;
 
 import com.vividsolutions.jts.densify.Densifier;
 import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.MultiLineString;
 import com.vividsolutions.jts.geom.Polygon;
-import com.vividsolutions.jts.geom.PrecisionModel;
 
 /**
  * Utility class for different geometric or non-geometric operations
@@ -38,32 +31,6 @@ import com.vividsolutions.jts.geom.PrecisionModel;
 public class Util {
 	static Logger LOGGER = LoggerFactory.getLogger(Util.class);
 
-	/**
-	 * Parses an hstore object, retrieved from PostgresQL database to a map. It
-	 * return null is the hstore object is null as well.
-	 * 
-	 * @param hstore
-	 * @returns
-	 */
-	public static Map<String, String> hstoreToMap(Object hstore) {
-		if (hstore == null) {
-			return null;
-		} else {
-			Map<String, String> tags = new HashMap<String, String>();
-
-			String[] kvpairs = hstore.toString().split("\", \"");
-
-			for (String kvpair : kvpairs) {
-				String key = kvpair.split("=>")[0].replaceAll("\"", "");
-				String value = kvpair.split("=>")[1].replaceAll("\"", "");
-
-				tags.put(key, value);
-
-			}
-			return tags;
-		}
-	}
-
 	/**
 	 * This method buffers a line in the CRS WGS84 with a buffer distance given
 	 * in meters. To create the buffer-geometry, the input linestring is
@@ -141,6 +108,40 @@ public class Util {
 		return (double) Math.round(distance * 100) / 100;
 	}
 
+	/**
+	 * This method calculates the orthometric length in meters of packed
+	 * coordinates (x0, y0, x1, y1, ...) given in SRID EPSG:4326.
+	 * 
+	 * @param xy
+	 * @param numPoints
+	 * @return
+	 */
+	public static double calculateOrthometricLength(double[] xy, int numPoints) {
+		double distance = 0;
+		for (int i = 0; i < numPoints - 1; i++) {
+			distance += calculateOrthometricDistance(xy[2 * i], xy[2 * i + 1], xy[2 * i + 2], xy[2 * i + 3]);
+		}
+		return (double) Math.round(distance * 100) / 100;
+	}
+
+	/**
+	 * This method calculates the orthometric length in meters of the points
+	 * start (inclusive) to end (exclusive) given in SRID EPSG:4326.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public static double calculateOrthometricLength(double[] x, double[] y, int start, int end) {
+		double distance = 0;
+		for (int i = start; i < end - 1; i++) {
+			distance += calculateOrthometricDistance(x[i], y[i], x[i + 1], y[i + 1]);
+		}
+		return (double) Math.round(distance * 100) / 100;
+	}
+
 	/**
 	 * This method calculates the orthometric length in meters between two
 	 * coordinates given in SRID EPSG:4326.
@@ -150,12 +151,26 @@ public class Util {
 	 * @return
 	 */
 	public static double calculateOrthometricDistance(Coordinate p1, Coordinate p2) {
+		return calculateOrthometricDistance(p1.x, p1.y, p2.x, p2.y);
+	}
+
+	/**
+	 * This method calculates the orthometric length in meters between two
+	 * positions given in SRID EPSG:4326.
+	 * 
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @return
+	 */
+	public static double calculateOrthometricDistance(double x1, double y1, double x2, double y2) {
 
 		double r = 6371000; // metres
-		double lon1 = Math.toRadians(p1.x);
-		double lat1 = Math.toRadians(p1.y);
-		double lon2 = Math.toRadians(p2.x);
-		double lat2 = Math.toRadians(p2.y);
+		double lon1 = Math.toRadians(x1);
+		double lat1 = Math.toRadians(y1);
+		double lon2 = Math.toRadians(x2);
+		double lat2 = Math.toRadians(y2);
 		double delta_lat = lat2 - lat1;
 		double delta_lon = lon2 - lon1;
 
@@ -168,36 +183,57 @@ public class Util {
 	}
 
 	/**
-	 * This method computes the average heading of a LineString. The heading is
-	 * returned in a range between 0 and 180°. returns NaN, if LineString is
-	 * null. 
+	 * This method computes the average heading of a LineString as circular
+	 * mean of the bearings of its segments weighted by their length (see
+	 * {@link BearingVector}). The heading is returned in a range between -180
+	 * and 180°. returns NaN, if LineString is null or has no length.
 	 * 
 	 * @param geom
-	 * @param calc
 	 * @return
 	 */
 	public static Double calculateBearing(LineString geom) {
-		// compute bearing between the nodes of line segment and calculate the
-		// mean
-		double meanWeightedBearing = 0;
-		double lineLength = calculateOrthometricLength(geom);
 		if (geom != null) {
-
-			for (int i = 0; i < geom.getCoordinates().length - 1; i++) {
-				Coordinate p1 = geom.getCoordinates()[i];
-				Coordinate p2 = geom.getCoordinates()[i + 1];
-				double bearing = calculateBearing(p1, p2);
-				double distance = calculateOrthometricDistance(p1, p2);
-				meanWeightedBearing += bearing * (distance / lineLength);
+			BearingVector direction = new BearingVector();
+			Coordinate[] coords = geom.getCoordinates();
+			for (int i = 0; i < coords.length - 1; i++) {
+				direction.add(coords[i].x, coords[i].y, coords[i + 1].x, coords[i + 1].y);
 			}
-
-			return meanWeightedBearing;
-
+			return direction.getBearing();
 		} else {
 			return Double.NaN;
 		}
 	}
 
+	/**
+	 * This method computes the average heading of packed coordinates (x0, y0,
+	 * x1, y1, ...) like {@link #calculateBearing(LineString)}.
+	 * 
+	 * @param xy
+	 * @param numPoints
+	 * @return
+	 */
+	public static double calculateBearing(double[] xy, int numPoints) {
+		BearingVector direction = new BearingVector();
+		direction.addLine(xy, numPoints);
+		return direction.getBearing();
+	}
+
+	/**
+	 * This method computes the average heading of the points start
+	 * (inclusive) to end (exclusive) like {@link #calculateBearing(LineString)}.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public static double calculateBearing(double[] x, double[] y, int start, int end) {
+		BearingVector direction = new BearingVector();
+		direction.addLine(x, y, start, end);
+		return direction.getBearing();
+	}
+
 	/**
 	 * Reference: http://www.movable-type.co.uk/scripts/latlong.html
 	 * 
@@ -208,11 +244,26 @@ public class Util {
 	 * @return
 	 */
 	public static double calculateBearing(Coordinate p1, Coordinate p2) {
+		return calculateBearing(p1.x, p1.y, p2.x, p2.y);
+	}
 
-		double lon1 = Math.toRadians(p1.x);
-		double lat1 = Math.toRadians(p1.y);
-		double lon2 = Math.toRadians(p2.x);
-		double lat2 = Math.toRadians(p2.y);
+	/**
+	 * Reference: http://www.movable-type.co.uk/scripts/latlong.html
+	 * 
+	 * Returns bearing between -180 and 180
+	 * 
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @return
+	 */
+	public static double calculateBearing(double x1, double y1, double x2, double y2) {
+
+		double lon1 = Math.toRadians(x1);
+		double lat1 = Math.toRadians(y1);
+		double lon2 = Math.toRadians(x2);
+		double lat2 = Math.toRadians(y2);
 		double y = Math.sin(lon2 - lon1) * Math.cos(lat2);
 		double x = Math.cos(lat1) * Math.sin(lat2) - Math.sin(lat1) * Math.cos(lat2) * Math.cos(lon2 - lon1);
 		double brng = Math.atan2(y, x);
@@ -286,8 +337,7 @@ public class Util {
 					}
 					profileNodes[1] = new Coordinate(calc.getDestinationPosition().getCoordinate()[1], calc
 							.getDestinationPosition().getCoordinate()[0]);
-					GeometryFactory geomF = new GeometryFactory();
-					profiles.add(geomF.createLineString(profileNodes));
+					profiles.add(Geometries.FACTORY.createLineString(profileNodes));
 				}
 
 			} catch (TransformException e) {
@@ -301,66 +351,17 @@ public class Util {
 	 * Due to the clipping geometry might be returned as a linestring. in this
 	 * case create a multiLineString with one LineString
 	 * 
-	 * 
+	 * @see GeometryDecoder#decodeGeoJson(CharSequence, CoordinateBuffer)
 	 * @param json
 	 * @return
 	 */
 	public static MultiLineString parseJson(String json) {
-
-		if (json == null) {
+		CoordinateBuffer buffer = new CoordinateBuffer();
+		if (!GeometryDecoder.decodeGeoJson(json, buffer)) {
+			// LOGGER.warn("Geometry is no MultiLineString or no LineString.");
 			return null;
 		}
-
-		JSONObject obj = null;
-		MultiLineString multiLine = null;
-		List<LineString> lineList;
-		GeometryFactory geomF = new GeometryFactory(new PrecisionModel(), 4326);
-		try {
-			obj = new JSONObject(json);
-			String type = obj.getString("type");
-
-			if (type.equals("MultiLineString")) {
-				lineList = new ArrayList<LineString>();
-				// get lines of MultiLineString
-				JSONArray lines = obj.getJSONArray("coordinates");
-				for (int i = 0; i < lines.length(); i++) {
-					// get points of line
-					JSONArray points = lines.getJSONArray(i);
-					List<Coordinate> pointList = new ArrayList<Coordinate>();
-					for (int a = 0; a < points.length(); a++) {
-						// get coordinate
-						JSONArray coord = points.getJSONArray(a);
-						pointList.add(new Coordinate(coord.getDouble(0), coord.getDouble(1), coord.getDouble(2)));
-					}
-					lineList.add(geomF.createLineString(pointList.toArray(new Coordinate[pointList.size()])));
-				}
-				multiLine = geomF.createMultiLineString(lineList.toArray(new LineString[lineList.size()]));
-				multiLine.setSRID(4326);
-			} else if (type.equals("LineString")) {
-				lineList = new ArrayList<LineString>();
-				// get lines of MultiLineString
-				JSONArray points = obj.getJSONArray("coordinates");
-				List<Coordinate> pointList = new ArrayList<Coordinate>();
-				for (int i = 0; i < points.length(); i++) {
-					// get coordinate
-					JSONArray coord = points.getJSONArray(i);
-					pointList.add(new Coordinate(coord.getDouble(0), coord.getDouble(1), coord.getDouble(2)));
-				}
-				lineList.add(geomF.createLineString(pointList.toArray(new Coordinate[pointList.size()])));
-			} else {
-				// LOGGER.warn("Geometry is no MultiLineString or no LineString.");
-				return null;
-			}
-			multiLine = geomF.createMultiLineString(lineList.toArray(new LineString[lineList.size()]));
-			multiLine.setSRID(4326);
-
-		} catch (JSONException e) {
-			e.printStackTrace();
-			throw new IllegalArgumentException("Problem parsing json");
-		}
-
-		return multiLine;
-
+		return buffer.toMultiLineString();
 	}
 
 	private static double getDirection(Coordinate node, Coordinate next_node) {
@@ -0,0 +1,131 @@
+package osmgpxtool.inclinecalculator;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import osmgpxtool.inclinecalculator.kernel.ProjectionKernel;
+
+/**
+ * Checks that invalid settings are rejected when the properties file is
+ * parsed, before any table is created.
+ *
+ */
+public class InclineConfigTest extends TestCase {
+	private Properties p;
+
+	@Override
+	protected void setUp() throws Exception {
+		p = new Properties();
+		p.load(InclineConfigTest.class.getResourceAsStream("/inclinecalculator.properties"));
+	}
+
+	private void assertRejected(String key, String value) {
+		p.setProperty(key, value);
+		try {
+			InclineConfig.create(p);
+			fail(key + "=" + value + " accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("\"" + key + "\""));
+		}
+	}
+
+	public void testTemplateIsValid() {
+		InclineConfig.create(p);
+	}
+
+	public void testBearingThreshold() {
+		assertRejected("bearingThreshold", "NaN");
+		assertRejected("bearingThreshold", "91");
+	}
+
+	public void testBufferDistance() {
+		p.remove("streetBufferMeters");
+		assertRejected("streetBufferDistance", "0");
+		assertRejected("streetBufferDistance", "-0.0001");
+		assertRejected("streetBufferDistance", "NaN");
+	}
+
+	public void testBufferMeters() {
+		assertRejected("streetBufferMeters", "0");
+		assertRejected("streetBufferMeters", "NaN");
+	}
+
+	public void testInsertTargetMillis() {
+		assertRejected("insertTargetMillis", "0");
+	}
+
+	public void testProfileSectionLength() {
+		p.setProperty("profileSectionLength", "0");
+		InclineConfig.create(p);
+		assertRejected("profileSectionLength", "-20");
+		assertRejected("profileSectionLength", "NaN");
+	}
+
+	public void testKernel() {
+		p.setProperty("inclineKernel", ProjectionKernel.NAME);
+		InclineConfig.create(p);
+		p.setProperty("inclineKernel", ProjectionKernel.class.getName());
+		InclineConfig.create(p);
+		assertRejected("inclineKernel", "slope");
+	}
+
+	public void testKernelClassIsNoKernel() {
+		assertRejected("inclineKernel", String.class.getName());
+	}
+
+	public void testEstimator() {
+		assertRejected("inclineEstimator", "median");
+	}
+
+	public void testDecimation() {
+		assertRejected("decimation", "simplify");
+	}
+
+	public void testDecimationTolerance() {
+		p.setProperty("decimationTolerance", "0");
+		InclineConfig.create(p);
+		assertRejected("decimationTolerance", "-1");
+	}
+
+	public void testTrimFraction() {
+		p.setProperty("estimatorTrimFraction", "0");
+		InclineConfig.create(p);
+		assertRejected("estimatorTrimFraction", "0.5");
+	}
+
+	public void testReplaySampleRate() {
+		p.setProperty("replaySampleRate", "1");
+		InclineConfig.create(p);
+		assertRejected("replaySampleRate", "1.5");
+	}
+
+	public void testStreetConnections() {
+		assertRejected("streetConnections", "0");
+	}
+
+	public void testVirtualConcurrency() {
+		assertTrue(InclineConfig.create(p).getVirtualConcurrency() >= 1);
+		assertRejected("virtualConcurrency", "0");
+	}
+
+	public void testServerMode() {
+		p.setProperty("executionMode", InclineConfig.MODE_SERVER);
+		InclineConfig.create(p);
+		assertRejected("decimation", "distance");
+		p.setProperty("decimation", "none");
+		assertRejected("stagingTables", "true");
+		p.setProperty("stagingTables", "false");
+		assertRejected("streetConnections", "4");
+	}
+
+	public void testRegionWorkers() {
+		assertRejected("regionWorkers", "0");
+	}
+
+	public void testDensifyDistanceWithDem() {
+		p.setProperty("streetDensifyDistance", "0");
+		InclineConfig.create(p);
+		p.setProperty("pathToSrtm", "srtm.tif");
+		assertRejected("streetDensifyDistance", "0");
+	}
+}
@@ -0,0 +1,52 @@
+package osmgpxtool.inclinecalculator;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import osmgpxtool.inclinecalculator.gps.GeometryVariants;
+
+/**
+ * Checks that the statements and batches of {@link InclineWriter} stay
+ * within the parameter limit of the driver.
+ *
+ */
+public class InclineWriterTest extends TestCase {
+
+	private static InclineWriter writer(String usedGeom) {
+		Properties p = new Properties();
+		p.setProperty("usedGeom", usedGeom);
+		// without upsert the connection is not used until the first write
+		return new InclineWriter(null, "incline", GeometryVariants.create(p), 500, false);
+	}
+
+	public void testRowsPerStatement() {
+		assertEquals(1927, InclineWriter.getMaxRowsPerStatement(17));
+		for (int columns = 1; columns <= 40; columns++) {
+			int rows = InclineWriter.getMaxRowsPerStatement(columns);
+			assertTrue(rows * columns <= InclineWriter.MAX_PARAMETERS);
+			assertTrue((rows + 1) * columns > InclineWriter.MAX_PARAMETERS);
+		}
+	}
+
+	public void testBatchSizeCappedAtOneStatement() {
+		for (String usedGeom : new String[] { "raw", "raw,smoothed", "raw,smoothed,a,b,c,d" }) {
+			InclineWriter w = writer(usedGeom);
+			int maxRows = InclineWriter.getMaxRowsPerStatement(w.getNumColumns());
+			for (int i = 0; i < 20; i++) {
+				// fast database
+				w.adaptBatchSize(0);
+				assertTrue(w.getBatchSize() <= maxRows);
+			}
+			assertEquals(maxRows, w.getBatchSize());
+			assertTrue(w.getBatchSize() * w.getNumColumns() <= InclineWriter.MAX_PARAMETERS);
+		}
+	}
+
+	public void testBatchSizeDecreases() {
+		InclineWriter w = writer("raw");
+		for (int i = 0; i < 20; i++) {
+			w.adaptBatchSize(10000);
+		}
+		assertEquals(50, w.getBatchSize());
+	}
+}
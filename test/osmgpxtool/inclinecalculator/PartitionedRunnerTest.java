@@ -0,0 +1,271 @@
+package osmgpxtool.inclinecalculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+import osmgpxtool.inclinecalculator.datasource.StreetSource;
+import osmgpxtool.inclinecalculator.datasource.TraceSource;
+import osmgpxtool.inclinecalculator.dem.DemInclineCalculator;
+import osmgpxtool.inclinecalculator.gps.GpsTracePart;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+import osmgpxtool.inclinecalculator.util.Util;
+
+/**
+ * Checks that the id ranges of the readers cover every street id exactly
+ * once, and that the partitioned run calculates the same inclines as the
+ * run with a single connection, with streets and traces held in memory.
+ *
+ */
+public class PartitionedRunnerTest extends TestCase {
+
+	/**
+	 * First id of each of numRanges tiles of the sorted ids, like ntile() in
+	 * {@link osmgpxtool.inclinecalculator.datasource.StreetDataSource#getIdRanges}.
+	 */
+	private static int[] ntileStarts(int[] ids, int numRanges) {
+		int n = Math.min(numRanges, ids.length);
+		int[] starts = new int[n];
+		int size = ids.length / n;
+		int larger = ids.length % n;
+		int first = 0;
+		for (int i = 0; i < n; i++) {
+			starts[i] = ids[first];
+			first += size + (i < larger ? 1 : 0);
+		}
+		return starts;
+	}
+
+	private static int countRanges(int[] starts, int id) {
+		int count = 0;
+		for (int i = 0; i < starts.length; i++) {
+			Integer[] range = PartitionedRunner.getIdRange(starts, i);
+			if ((range[0] == null || id >= range[0]) && (range[1] == null || id < range[1])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static void assertCoveredOnce(int[] ids, int numRanges) {
+		int[] starts = ntileStarts(ids, numRanges);
+		for (int i = 1; i < starts.length; i++) {
+			assertTrue("starts not ascending", starts[i - 1] < starts[i]);
+		}
+		// ids of the table, between them and outside of them
+		for (int id = ids[0] - 10; id <= ids[ids.length - 1] + 10; id++) {
+			assertEquals("id " + id + " in " + Arrays.toString(starts), 1, countRanges(starts, id));
+		}
+	}
+
+	public void testConsecutiveIds() {
+		int[] ids = new int[100];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = i + 1;
+		}
+		assertCoveredOnce(ids, 4);
+		assertCoveredOnce(ids, 7);
+	}
+
+	public void testIdsWithGaps() {
+		Random random = new Random(42);
+		int[] ids = new int[500];
+		int id = -50;
+		for (int i = 0; i < ids.length; i++) {
+			id += 1 + random.nextInt(20);
+			ids[i] = id;
+		}
+		for (int numRanges = 1; numRanges <= 16; numRanges++) {
+			assertCoveredOnce(ids, numRanges);
+		}
+	}
+
+	public void testMoreRangesThanStreets() {
+		assertCoveredOnce(new int[] { 3, 8, 9 }, 8);
+	}
+
+	public void testSingleRangeIsUnbounded() {
+		Integer[] range = PartitionedRunner.getIdRange(new int[] { 17 }, 0);
+		assertNull(range[0]);
+		assertNull(range[1]);
+	}
+
+	/**
+	 * Streets with minId &lt;= id &lt; maxId of a list ordered by id.
+	 */
+	private static class MemoryStreets implements StreetSource {
+		private List<StreetSegment> streets = new ArrayList<StreetSegment>();
+		private int current = -1;
+
+		MemoryStreets(List<StreetSegment> all, Integer minId, Integer maxId) {
+			for (StreetSegment s : all) {
+				if ((minId == null || s.getId() >= minId) && (maxId == null || s.getId() < maxId)) {
+					streets.add(s);
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return ++current < streets.size();
+		}
+
+		@Override
+		public StreetSegment getCurrentStreet() {
+			return streets.get(current);
+		}
+
+		@Override
+		public int getSize() {
+			return streets.size();
+		}
+	}
+
+	/**
+	 * Traces along each street, the same for each call. Some traces go in
+	 * the opposite direction or across the street.
+	 */
+	private static class MemoryTraces implements TraceSource {
+		@Override
+		public List<GpsTracePart> getClippedTracesWithinBufferOf(StreetSegment s) {
+			Random random = new Random(s.getId());
+			double[] c = s.getCoordinates();
+			double dx = c[2] - c[0];
+			double dy = c[3] - c[1];
+			double rise = random.nextDouble() * 10 - 5;
+			List<GpsTracePart> traces = new ArrayList<GpsTracePart>();
+			int numTraces = random.nextInt(6);
+			for (int t = 0; t < numTraces; t++) {
+				boolean reverse = random.nextBoolean();
+				boolean across = random.nextInt(5) == 0;
+				CoordinateBuffer b = new CoordinateBuffer();
+				b.startPart();
+				for (int i = 0; i <= 10; i++) {
+					double f = reverse ? 1 - i / 10.0 : i / 10.0;
+					double x = across ? c[0] + dx / 2 - dy * (f - 0.5) : c[0] + dx * f;
+					double y = across ? c[1] + dy / 2 + dx * (f - 0.5) : c[1] + dy * f;
+					b.add(x, y, 100 + rise * f + random.nextGaussian() * 0.3);
+				}
+				traces.add(new GpsTracePart(s.getId() * 10 + t, 1, 1, b));
+			}
+			return traces;
+		}
+	}
+
+	private static List<StreetSegment> createStreets(int n) {
+		Random random = new Random(7);
+		List<StreetSegment> streets = new ArrayList<StreetSegment>();
+		int id = 0;
+		for (int i = 0; i < n; i++) {
+			id += 1 + random.nextInt(5);
+			double x = 8.6 + random.nextDouble() * 0.1;
+			double y = 49.4 + random.nextDouble() * 0.1;
+			double bearing = random.nextDouble() * 2 * Math.PI;
+			double[] coordinates = new double[] { x, y, x + Math.sin(bearing) * 0.0015, y + Math.cos(bearing) * 0.001 };
+			StreetSegment s = new StreetSegment(id, (byte) 0, coordinates, 2);
+			s.setOrthometricLength(Util.calculateOrthometricLength(coordinates, 2));
+			streets.add(s);
+		}
+		return streets;
+	}
+
+	/**
+	 * Calculator collecting the results instead of writing them.
+	 */
+	private static class Collector extends InclineCalculator {
+		Map<Integer, StreetInclineResult> results = new TreeMap<Integer, StreetInclineResult>();
+
+		Collector(Properties p) {
+			super(null, p);
+		}
+
+		@Override
+		void write(StreetInclineResult result) {
+			assertNull("street " + result.getStreetId() + " written twice", results.put(result.getStreetId(), result));
+		}
+	}
+
+	/**
+	 * Exact comparison, NaN equals NaN.
+	 */
+	private static void assertSameValue(String message, double expected, double actual) {
+		assertEquals(message, Double.valueOf(expected), Double.valueOf(actual));
+	}
+
+	public void testPartitionedMatchesSingleConnection() throws Exception {
+		Properties p = new Properties();
+		p.load(PartitionedRunnerTest.class.getResourceAsStream("/inclinecalculator.properties"));
+		final InclineConfig config = InclineConfig.create(p);
+		final List<StreetSegment> streets = createStreets(300);
+
+		Collector single = new Collector(p);
+		single.runStreets(new MemoryStreets(streets, null, null), new MemoryTraces(),
+				new StreetProcessor(config, new DemInclineCalculator(config)));
+		assertTrue(single.results.size() > 100);
+
+		for (final int readers : new int[] { 1, 3, 8 }) {
+			Collector partitioned = new Collector(p);
+			PartitionedRunner.Sources sources = new PartitionedRunner.Sources() {
+				@Override
+				public int[] getIdRanges(int numRanges) {
+					int[] ids = new int[streets.size()];
+					for (int i = 0; i < ids.length; i++) {
+						ids[i] = streets.get(i).getId();
+					}
+					return ntileStarts(ids, numRanges);
+				}
+
+				@Override
+				public int countStreets() {
+					return streets.size();
+				}
+
+				@Override
+				public PartitionedRunner.ReaderSources open(final Integer minId, final Integer maxId) {
+					return new PartitionedRunner.ReaderSources() {
+						private StreetSource s = new MemoryStreets(streets, minId, maxId);
+						private TraceSource t = new MemoryTraces();
+
+						@Override
+						public StreetSource getStreets() {
+							return s;
+						}
+
+						@Override
+						public TraceSource getTraces() {
+							return t;
+						}
+
+						@Override
+						public InclineWriter getStage() {
+							return null;
+						}
+
+						@Override
+						public void close() {
+						}
+					};
+				}
+			};
+			new PartitionedRunner(config, sources, partitioned, readers).run();
+
+			assertEquals(single.results.keySet(), partitioned.results.keySet());
+			for (StreetInclineResult expected : single.results.values()) {
+				StreetInclineResult actual = partitioned.results.get(expected.getStreetId());
+				String street = readers + " readers, street " + expected.getStreetId();
+				assertSameValue(street, expected.getInclineGps(), actual.getInclineGps());
+				assertSameValue(street, expected.getInclineGpsStdDev(), actual.getInclineGpsStdDev());
+				assertEquals(street, expected.getNrOfTraces(), actual.getNrOfTraces());
+				assertSameValue(street, expected.getGpsLengthUsed(), actual.getGpsLengthUsed());
+				assertEquals(street, expected.getNrRejectedByBearing(), actual.getNrRejectedByBearing());
+				assertSameValue(street, expected.getInclineGpsMin(), actual.getInclineGpsMin());
+				assertSameValue(street, expected.getInclineGpsMax(), actual.getInclineGpsMax());
+			}
+		}
+	}
+}
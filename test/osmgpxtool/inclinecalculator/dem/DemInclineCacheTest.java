@@ -0,0 +1,99 @@
+package osmgpxtool.inclinecalculator.dem;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+/**
+ * Writes and reads a {@link DemInclineCache}, including streets without DEM
+ * incline.
+ *
+ */
+public class DemInclineCacheTest extends TestCase {
+	private File dir;
+	private File dem;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = Files.createTempDirectory("demcache").toFile();
+		dem = new File(dir, "dem.tif");
+		FileOutputStream out = new FileOutputStream(dem);
+		out.write(new byte[] { 1, 2, 3 });
+		out.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	private DemInclineCache open() throws IOException {
+		return new DemInclineCache(dir, "dem", dem.getPath(), 1.0);
+	}
+
+	public void testNaNInclineIsCached() throws IOException {
+		DemInclineCache cache = open();
+		assertEquals(-1, cache.find(1, 11));
+		cache.put(1, 11, 2.5);
+		// street not covered by the DEM
+		cache.put(2, 22, Double.NaN);
+		cache.close();
+
+		cache = open();
+		long index = cache.find(1, 11);
+		assertTrue(index >= 0);
+		assertEquals(2.5, cache.getIncline(index), 0);
+		index = cache.find(2, 22);
+		assertTrue("NaN incline not found", index >= 0);
+		assertTrue(Double.isNaN(cache.getIncline(index)));
+		assertEquals(2, cache.getHits());
+		assertEquals(0, cache.getMisses());
+	}
+
+	public void testChangedGeometryIsMissing() throws IOException {
+		DemInclineCache cache = open();
+		cache.put(1, 11, 2.5);
+		cache.put(3, 33, -1.0);
+		cache.close();
+
+		cache = open();
+		assertEquals(-1, cache.find(1, 12));
+		assertEquals(-1, cache.find(2, 22));
+		assertTrue(cache.find(3, 33) >= 0);
+		assertEquals(2, cache.getMisses());
+	}
+
+	public void testMergeKeepsOldRecords() throws IOException {
+		DemInclineCache cache = open();
+		cache.put(5, 55, 1.0);
+		cache.put(1, 11, Double.NaN);
+		cache.close();
+
+		cache = open();
+		// new geometry of street 5 and a new street 3
+		cache.put(5, 56, 2.0);
+		cache.put(3, 33, 3.0);
+		cache.close();
+
+		cache = open();
+		assertTrue(Double.isNaN(cache.getIncline(cache.find(1, 11))));
+		assertEquals(3.0, cache.getIncline(cache.find(3, 33)), 0);
+		assertEquals(-1, cache.find(5, 55));
+		assertEquals(2.0, cache.getIncline(cache.find(5, 56)), 0);
+	}
+
+	public void testChangedDensifyDistanceIgnoresFile() throws IOException {
+		DemInclineCache cache = open();
+		cache.put(1, 11, 2.5);
+		cache.close();
+
+		cache = new DemInclineCache(dir, "dem", dem.getPath(), 2.0);
+		assertEquals(-1, cache.find(1, 11));
+	}
+}
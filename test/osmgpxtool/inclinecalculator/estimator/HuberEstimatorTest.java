@@ -0,0 +1,103 @@
+package osmgpxtool.inclinecalculator.estimator;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that {@link HuberEstimator} solves the weighted Huber estimating
+ * equation with the MAD scale, and falls back to the weighted median if the
+ * MAD is zero.
+ *
+ */
+public class HuberEstimatorTest extends TestCase {
+	private static final double K = 1.345;
+	private static final double MAD_TO_SIGMA = 1.4826;
+
+	private static InclineSamples samples(double[] values, double[] weights) {
+		InclineSamples samples = new InclineSamples();
+		for (int i = 0; i < values.length; i++) {
+			samples.add(values[i], weights[i]);
+		}
+		return samples;
+	}
+
+	private static double median(double[] values, double[] weights) {
+		double total = 0;
+		for (double w : weights) {
+			total += w;
+		}
+		return WeightedSelectionTest.sortedQuantile(values, weights, values.length, total / 2);
+	}
+
+	public void testSolvesEstimatingEquation() {
+		Random random = new Random(13);
+		for (int n = 3; n <= 50; n++) {
+			double[] values = new double[n];
+			double[] weights = new double[n];
+			for (int i = 0; i < n; i++) {
+				values[i] = random.nextGaussian() * 2 + (random.nextInt(5) == 0 ? 20 : 0);
+				weights[i] = 1 + random.nextInt(20);
+			}
+			double mu = new HuberEstimator(K).estimate(samples(values.clone(), weights.clone()));
+
+			double m = median(values, weights);
+			double[] residuals = new double[n];
+			for (int i = 0; i < n; i++) {
+				residuals[i] = Math.abs(values[i] - m);
+			}
+			double scale = MAD_TO_SIGMA * median(residuals, weights);
+			double threshold = K * scale;
+			// weighted sum of the clipped residuals is zero at the estimate
+			double psi = 0;
+			double total = 0;
+			for (int i = 0; i < n; i++) {
+				psi += weights[i] * Math.max(-threshold, Math.min(threshold, values[i] - mu));
+				total += weights[i];
+			}
+			assertEquals("n=" + n, 0, psi / total, 1e-4 * scale);
+		}
+	}
+
+	public void testMadFallbackReturnsMedian() {
+		// more than half of the weight at 1, so the MAD is 0
+		double[] values = { 1, 1, 1, 5, 100 };
+		double[] weights = { 1, 1, 1, 1, 1 };
+		assertEquals(1, new HuberEstimator(K).estimate(samples(values, weights)), 0);
+	}
+
+	public void testEqualValues() {
+		double[] values = { 2.5, 2.5, 2.5 };
+		double[] weights = { 3, 1, 2 };
+		assertEquals(2.5, new HuberEstimator(K).estimate(samples(values, weights)), 0);
+	}
+
+	public void testSingleValue() {
+		assertEquals(-4, new HuberEstimator(K).estimate(samples(new double[] { -4 }, new double[] { 2 })), 0);
+	}
+
+	public void testLargeKIsWeightedMean() {
+		double[] values = { 1, 2, 4, 8, 30 };
+		double[] weights = { 2, 1, 1, 3, 1 };
+		double mean = (1 * 2 + 2 + 4 + 8 * 3 + 30) / 8.0;
+		assertEquals(mean, new HuberEstimator(1e6).estimate(samples(values, weights)), 1e-6);
+	}
+
+	public void testOutlierIsDownweighted() {
+		double[] values = { 0.9, 1, 1.1, 1, 0.95, 1.05, 40 };
+		double[] weights = { 1, 1, 1, 1, 1, 1, 1 };
+		double mu = new HuberEstimator(K).estimate(samples(values, weights));
+		assertTrue("estimate " + mu, Math.abs(mu - 1) < 0.1);
+	}
+
+	public void testWrongK() {
+		for (double k : new double[] { 0, -1, Double.NaN }) {
+			try {
+				new HuberEstimator(k);
+				fail("k " + k + " accepted");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package osmgpxtool.inclinecalculator.estimator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks {@link TrimmedMeanEstimator} against a trimmed mean of the sorted
+ * values, in which the values at the cut points contribute with the part of
+ * their weight within the kept range.
+ *
+ */
+public class TrimmedMeanEstimatorTest extends TestCase {
+	private static final double DELTA = 1e-9;
+
+	private static double sortedTrimmedMean(double[] values, double[] weights, double trim) {
+		int n = values.length;
+		Integer[] order = new Integer[n];
+		double total = 0;
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+			total += weights[i];
+		}
+		Arrays.sort(order, (x, y) -> Double.compare(values[x], values[y]));
+		double a = trim * total;
+		double b = (1 - trim) * total;
+		double cumulative = 0;
+		double sum = 0;
+		double kept = 0;
+		for (int i = 0; i < n; i++) {
+			double w = weights[order[i]];
+			double k = Math.max(0, Math.min(cumulative + w, b) - Math.max(cumulative, a));
+			sum += values[order[i]] * k;
+			kept += k;
+			cumulative += w;
+		}
+		return sum / kept;
+	}
+
+	private static InclineSamples samples(double[] values, double[] weights) {
+		InclineSamples samples = new InclineSamples();
+		for (int i = 0; i < values.length; i++) {
+			samples.add(values[i], weights[i]);
+		}
+		return samples;
+	}
+
+	private static double estimate(double trim, double[] values, double[] weights) {
+		return new TrimmedMeanEstimator(trim).estimate(samples(values, weights));
+	}
+
+	public void testMatchesSortWithTies() {
+		Random random = new Random(11);
+		for (int n = 1; n <= 40; n++) {
+			for (double trim : new double[] { 0, 0.1, 0.25, 0.4, 0.49 }) {
+				double[] values = new double[n];
+				double[] weights = new double[n];
+				for (int i = 0; i < n; i++) {
+					values[i] = random.nextInt(n % 3 == 0 ? 3 : 20) * 0.5;
+					weights[i] = 1 + random.nextInt(30) * random.nextDouble();
+				}
+				double expected = sortedTrimmedMean(values, weights, trim);
+				assertEquals("n=" + n + " trim=" + trim, expected, estimate(trim, values, weights), DELTA);
+			}
+		}
+	}
+
+	public void testPartialWeightAtCutPoints() {
+		// total 10, trim 0.25 keeps the weight within [2.5, 7.5]: 0.5 of
+		// the first value, all of the second and 2.5 of the third
+		double[] values = { 1, 2, 3 };
+		double[] weights = { 3, 2, 5 };
+		double expected = (1 * 0.5 + 2 * 2 + 3 * 2.5) / 5;
+		assertEquals(expected, estimate(0.25, values, weights), DELTA);
+	}
+
+	public void testNoTrimIsWeightedMean() {
+		double[] values = { 4, -1, 7, 2 };
+		double[] weights = { 1, 2, 3, 4 };
+		double expected = (4 * 1 - 1 * 2 + 7 * 3 + 2 * 4) / 10.0;
+		assertEquals(expected, estimate(0, values, weights), DELTA);
+	}
+
+	public void testEqualValues() {
+		assertEquals(-3.5, estimate(0.2, new double[] { -3.5, -3.5, -3.5 }, new double[] { 1, 5, 2 }), 0);
+	}
+
+	public void testSingleValue() {
+		assertEquals(6, estimate(0.1, new double[] { 6 }, new double[] { 12 }), 0);
+	}
+
+	public void testTrimRemovesOutlier() {
+		double[] values = { 1, 1.2, 0.8, 1.1, 0.9, 1, 1, 1.05, 0.95, 50 };
+		double[] weights = new double[values.length];
+		Arrays.fill(weights, 1);
+		assertEquals(sortedTrimmedMean(values, weights, 0.1), estimate(0.1, values, weights), DELTA);
+		assertTrue(estimate(0.1, values, weights) < 1.1);
+	}
+
+	public void testWrongTrim() {
+		for (double trim : new double[] { -0.1, 0.5, Double.NaN }) {
+			try {
+				new TrimmedMeanEstimator(trim);
+				fail("trim " + trim + " accepted");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package osmgpxtool.inclinecalculator.estimator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the weighted quickselect of {@link WeightedSelection} and the
+ * weighted median against a sort, with many ties. The weights are integers,
+ * so the cumulative weights are exact in any order of summation.
+ *
+ */
+public class WeightedSelectionTest extends TestCase {
+
+	/**
+	 * @return the smallest value, whose cumulative weight in sorted order is
+	 *         greater than or equal to target
+	 */
+	static double sortedQuantile(double[] values, double[] weights, int n, double target) {
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		final double[] v = values;
+		Arrays.sort(order, (x, y) -> Double.compare(v[x], v[y]));
+		double cumulative = 0;
+		for (int i = 0; i < n; i++) {
+			cumulative += weights[order[i]];
+			if (cumulative >= target) {
+				return values[order[i]];
+			}
+		}
+		return values[order[n - 1]];
+	}
+
+	/**
+	 * Values from a small range, so many of them are equal.
+	 */
+	private static void fill(Random random, double[] values, double[] weights, int n, int distinct) {
+		for (int i = 0; i < n; i++) {
+			values[i] = random.nextInt(distinct) - distinct / 2;
+			weights[i] = 1 + random.nextInt(10);
+		}
+	}
+
+	public void testSelectMatchesSort() {
+		Random random = new Random(3);
+		for (int n = 1; n <= 40; n++) {
+			for (int distinct : new int[] { 1, 3, 1000 }) {
+				double[] values = new double[n];
+				double[] weights = new double[n];
+				fill(random, values, weights, n, distinct);
+				double total = 0;
+				for (int i = 0; i < n; i++) {
+					total += weights[i];
+				}
+				for (double target = 0; target <= total; target += 0.5) {
+					double expected = sortedQuantile(values, weights, n, target);
+					double[] v = values.clone();
+					double[] w = weights.clone();
+					int index = WeightedSelection.select(v, w, 0, n, target);
+					assertEquals("n=" + n + " target=" + target, expected, v[index], 0);
+					// the pairs are only permuted
+					assertPermutation(values, weights, v, w, n);
+					// the selected value is at its sorted position
+					for (int i = 0; i < index; i++) {
+						assertTrue(v[i] <= v[index]);
+					}
+					for (int i = index + 1; i < n; i++) {
+						assertTrue(v[i] >= v[index]);
+					}
+				}
+			}
+		}
+	}
+
+	private static void assertPermutation(double[] values, double[] weights, double[] v, double[] w, int n) {
+		double[] expected = new double[n];
+		double[] actual = new double[n];
+		for (int i = 0; i < n; i++) {
+			expected[i] = values[i] * 100 + weights[i];
+			actual[i] = v[i] * 100 + w[i];
+		}
+		Arrays.sort(expected);
+		Arrays.sort(actual);
+		assertTrue(Arrays.equals(expected, actual));
+	}
+
+	public void testMedianMatchesSort() {
+		Random random = new Random(5);
+		for (int n = 1; n <= 60; n++) {
+			double[] values = new double[n];
+			double[] weights = new double[n];
+			fill(random, values, weights, n, n % 2 == 0 ? 4 : 50);
+			double total = 0;
+			for (int i = 0; i < n; i++) {
+				total += weights[i];
+			}
+			double expected = sortedQuantile(values, weights, n, total / 2);
+			assertEquals("n=" + n, expected, WeightedSelection.median(values, weights, n), 0);
+		}
+	}
+
+	public void testMedianOfSingleValue() {
+		assertEquals(2.5, WeightedSelection.median(new double[] { 2.5 }, new double[] { 7 }, 1), 0);
+	}
+
+	public void testMedianOfEqualValues() {
+		double[] values = { 4, 4, 4, 4, 4 };
+		assertEquals(4, WeightedSelection.median(values, new double[] { 1, 2, 3, 4, 5 }, 5), 0);
+	}
+
+	public void testMedianFollowsWeight() {
+		// 1 has more than half of the weight
+		double[] values = { 9, 1, 5, 1 };
+		double[] weights = { 1, 3, 1, 3 };
+		assertEquals(1, WeightedSelection.median(values, weights, 4), 0);
+	}
+
+	public void testWeightedMedianEstimator() {
+		InclineSamples samples = new InclineSamples();
+		samples.add(3, 1);
+		samples.add(-2, 1);
+		samples.add(8, 5);
+		samples.add(3, 1);
+		assertEquals(8, new WeightedMedianEstimator().estimate(samples), 0);
+	}
+}
@@ -0,0 +1,192 @@
+package osmgpxtool.inclinecalculator.gps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import osmgpxtool.inclinecalculator.InclineConfig;
+import osmgpxtool.inclinecalculator.StreetInclineResult;
+import osmgpxtool.inclinecalculator.StreetProcessor;
+import osmgpxtool.inclinecalculator.StreetSegment;
+import osmgpxtool.inclinecalculator.dem.DemInclineCalculator;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+import osmgpxtool.inclinecalculator.util.Util;
+
+/**
+ * Checks that both decimation methods keep the end points of each line,
+ * that "distance" replaces the last kept point by the end point close to it,
+ * that "douglas_peucker" falls back to 2D for lines with NaN heights, and
+ * that the dropped points are counted in nr_points_dropped.
+ *
+ */
+public class TraceDecimatorTest extends TestCase {
+	private static final double X = 8.6;
+	private static final double Y = 49.4;
+	// one meter northwards in degrees of latitude
+	private static final double METER = 1 / (6371000 * Math.PI / 180);
+	// between 4 and 5 meters, so rounding does not matter
+	private static final double TOLERANCE = 4.5;
+
+	/**
+	 * @return a line northwards with a point every meter, rising 0.1 m per
+	 *         point
+	 */
+	private static CoordinateBuffer line(int numPoints) {
+		CoordinateBuffer b = new CoordinateBuffer();
+		b.startPart();
+		for (int i = 0; i < numPoints; i++) {
+			b.add(X, Y + i * METER, 100 + i * 0.1);
+		}
+		return b;
+	}
+
+	/**
+	 * @return the meters of the points of part p northwards from Y
+	 */
+	private static int[] meters(CoordinateBuffer b, int p) {
+		int[] m = new int[b.getPartEnd(p) - b.getPartStart(p)];
+		for (int i = 0; i < m.length; i++) {
+			m[i] = (int) Math.round((b.getY()[b.getPartStart(p) + i] - Y) / METER);
+		}
+		return m;
+	}
+
+	private static void assertMeters(int[] expected, CoordinateBuffer b, int p) {
+		int[] actual = meters(b, p);
+		assertEquals(Arrays.toString(actual), expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(Arrays.toString(actual), expected[i], actual[i]);
+		}
+	}
+
+	public void testDistanceKeepsEndPoints() {
+		CoordinateBuffer target = new CoordinateBuffer();
+		int dropped = new TraceDecimator(false, TOLERANCE).decimate(line(101), target);
+		// every fifth meter, the end point is 5 m after the last kept point
+		int[] expected = new int[21];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = i * 5;
+		}
+		assertMeters(expected, target, 0);
+		assertEquals(80, dropped);
+	}
+
+	public void testDistanceSwapsLastKeptPointForEndPoint() {
+		CoordinateBuffer target = new CoordinateBuffer();
+		// 5 is kept, but the end point 8 is closer than the tolerance to it
+		int dropped = new TraceDecimator(false, TOLERANCE).decimate(line(9), target);
+		assertMeters(new int[] { 0, 8 }, target, 0);
+		assertEquals(7, dropped);
+		// the heights of the kept points are unchanged
+		assertEquals(100, target.getZ()[0], 1e-9);
+		assertEquals(100.8, target.getZ()[1], 1e-9);
+	}
+
+	public void testDistanceWithAllPointsCloserThanTolerance() {
+		CoordinateBuffer target = new CoordinateBuffer();
+		int dropped = new TraceDecimator(false, TOLERANCE).decimate(line(4), target);
+		assertMeters(new int[] { 0, 3 }, target, 0);
+		assertEquals(2, dropped);
+	}
+
+	public void testShortPartsAreCopied() {
+		CoordinateBuffer source = new CoordinateBuffer();
+		source.startPart();
+		source.add(X, Y, 100);
+		source.startPart();
+		source.add(X, Y, 100);
+		source.add(X, Y + METER, 101);
+		for (boolean douglasPeucker : new boolean[] { false, true }) {
+			CoordinateBuffer target = new CoordinateBuffer();
+			assertEquals(0, new TraceDecimator(douglasPeucker, TOLERANCE).decimate(source, target));
+			assertEquals(2, target.getNumParts());
+			assertEquals(3, target.size());
+		}
+	}
+
+	public void testDistanceCountsAllParts() {
+		CoordinateBuffer source = new CoordinateBuffer();
+		for (int numPoints : new int[] { 101, 9, 2 }) {
+			source.startPart();
+			for (int i = 0; i < numPoints; i++) {
+				source.add(X, Y + i * METER, 100);
+			}
+		}
+		CoordinateBuffer target = new CoordinateBuffer();
+		int dropped = new TraceDecimator(false, TOLERANCE).decimate(source, target);
+		assertEquals(3, target.getNumParts());
+		assertEquals(80 + 7, dropped);
+		assertEquals(source.size() - target.size(), dropped);
+		assertMeters(new int[] { 0, 8 }, target, 1);
+		assertMeters(new int[] { 0, 1 }, target, 2);
+	}
+
+	public void testDouglasPeuckerDropsCollinearPoints() {
+		CoordinateBuffer target = new CoordinateBuffer();
+		// straight in 3D, as the height rises linearly
+		int dropped = new TraceDecimator(true, 0.5).decimate(line(50), target);
+		assertMeters(new int[] { 0, 49 }, target, 0);
+		assertEquals(48, dropped);
+	}
+
+	public void testDouglasPeuckerKeepsHeightChanges() {
+		CoordinateBuffer source = line(21);
+		// a bump of 3 m in the middle of a straight line
+		source.getZ()[10] += 3;
+		CoordinateBuffer target = new CoordinateBuffer();
+		new TraceDecimator(true, 1).decimate(source, target);
+		assertMeters(new int[] { 0, 9, 10, 11, 20 }, target, 0);
+	}
+
+	public void testDouglasPeuckerWithNaNHeights() {
+		CoordinateBuffer source = line(21);
+		source.getZ()[10] += 3;
+		source.getZ()[5] = Double.NaN;
+		// zigzag of 2 m to the east at meter 15
+		source.getX()[15] += 2 * METER / Math.cos(Math.toRadians(Y));
+		CoordinateBuffer target = new CoordinateBuffer();
+		int dropped = new TraceDecimator(true, 1).decimate(source, target);
+		// heights are ignored, the bump at 10 is dropped, the zigzag and
+		// its neighbours, which are more than 1 m off the chords to it, are
+		// kept
+		assertMeters(new int[] { 0, 14, 15, 16, 20 }, target, 0);
+		assertEquals(16, dropped);
+		for (int i = 0; i < target.size(); i++) {
+			assertFalse(Double.isNaN(target.getX()[i]) || Double.isNaN(target.getY()[i]));
+		}
+	}
+
+	public void testDouglasPeuckerKeepsEndPointsWithNaN() {
+		CoordinateBuffer source = line(10);
+		source.getZ()[0] = Double.NaN;
+		source.getZ()[9] = Double.NaN;
+		CoordinateBuffer target = new CoordinateBuffer();
+		new TraceDecimator(true, 1).decimate(source, target);
+		assertMeters(new int[] { 0, 9 }, target, 0);
+		assertTrue(Double.isNaN(target.getZ()[0]));
+		assertTrue(Double.isNaN(target.getZ()[1]));
+	}
+
+	public void testPointsDroppedOfStreet() throws Exception {
+		Properties p = new Properties();
+		p.load(TraceDecimatorTest.class.getResourceAsStream("/inclinecalculator.properties"));
+		p.setProperty("decimation", TraceDecimator.DISTANCE);
+		p.setProperty("decimationTolerance", String.valueOf(TOLERANCE));
+		InclineConfig config = InclineConfig.create(p);
+		StreetProcessor processor = new StreetProcessor(config, new DemInclineCalculator(config));
+
+		double[] coordinates = { X, Y, X, Y + 100 * METER };
+		StreetSegment street = new StreetSegment(1, (byte) 0, coordinates, 2);
+		street.setOrthometricLength(Util.calculateOrthometricLength(coordinates, 2));
+		List<GpsTracePart> traces = new ArrayList<GpsTracePart>();
+		traces.add(new GpsTracePart(1, 1, 1, line(101)));
+		traces.add(new GpsTracePart(2, 1, 1, line(9)));
+		StreetInclineResult result = processor.process(street, traces);
+		assertNotNull(result);
+		assertEquals(80 + 7, result.getNrPointsDropped());
+		// the traces themselves are not changed
+		assertEquals(101, traces.get(0).getVariant(0).size());
+	}
+}
@@ -0,0 +1,118 @@
+package osmgpxtool.inclinecalculator.kernel;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import osmgpxtool.inclinecalculator.InclineConfig;
+import osmgpxtool.inclinecalculator.estimator.InclineSamples;
+import osmgpxtool.inclinecalculator.util.CoordinateBuffer;
+
+/**
+ * Checks that {@link BearingKernel} uses traces in the direction of the
+ * street and in the opposite direction with the correct sign of the incline
+ * for streets in all quadrants, and rejects perpendicular traces.
+ *
+ */
+public class BearingKernelTest extends TestCase {
+	private static final double X = 8.6;
+	private static final double Y = 49.4;
+	// length of street and trace in degrees of latitude, about 111 m
+	private static final double LENGTH = 0.001;
+
+	private BearingKernel kernel;
+	private StreetContext street = new StreetContext(0);
+	private InclineSamples samples = new InclineSamples();
+
+	@Override
+	protected void setUp() throws Exception {
+		Properties p = new Properties();
+		p.load(BearingKernelTest.class.getResourceAsStream("/inclinecalculator.properties"));
+		p.setProperty("bearingThreshold", "40");
+		kernel = new BearingKernel(InclineConfig.create(p));
+	}
+
+	/**
+	 * @return (dx, dy) of a line of LENGTH heading towards bearing
+	 */
+	private static double[] offset(double bearing) {
+		double b = Math.toRadians(bearing);
+		return new double[] { Math.sin(b) * LENGTH / Math.cos(Math.toRadians(Y)), Math.cos(b) * LENGTH };
+	}
+
+	private void setStreet(double bearing) {
+		double[] d = offset(bearing);
+		street.setStreet(new double[] { X, Y, X + d[0], Y + d[1] }, 2);
+	}
+
+	/**
+	 * @return a trace of 10 segments heading towards bearing, rising by rise
+	 *         meters
+	 */
+	private static CoordinateBuffer trace(double bearing, double rise) {
+		double[] d = offset(bearing);
+		CoordinateBuffer b = new CoordinateBuffer();
+		b.startPart();
+		for (int i = 0; i <= 10; i++) {
+			b.add(X + d[0] * i / 10, Y + d[1] * i / 10, 100 + rise * i / 10);
+		}
+		return b;
+	}
+
+	private double addTrace(double streetBearing, double traceBearing, double rise) {
+		setStreet(streetBearing);
+		samples.clear();
+		int rejected = kernel.addTrace(street, trace(traceBearing, rise), samples);
+		if (rejected > 0) {
+			assertTrue(samples.isEmpty());
+			return Double.NaN;
+		}
+		assertEquals(1, samples.size());
+		return samples.getValues()[0];
+	}
+
+	public void testSameDirectionInAllQuadrants() {
+		for (double bearing = -180; bearing < 360; bearing += 30) {
+			double incline = addTrace(bearing, bearing + 20, 5);
+			assertTrue("bearing " + bearing + ": " + incline, incline > 4 && incline < 5);
+		}
+	}
+
+	public void testOppositeDirectionInAllQuadrants() {
+		for (double bearing = -180; bearing < 360; bearing += 30) {
+			// uphill along the trace is downhill along the street
+			double incline = addTrace(bearing, bearing + 180 - 20, 5);
+			assertTrue("bearing " + bearing + ": " + incline, incline < -4 && incline > -5);
+		}
+	}
+
+	public void testPerpendicularRejected() {
+		for (double bearing = -180; bearing < 360; bearing += 30) {
+			assertTrue(Double.isNaN(addTrace(bearing, bearing + 90, 5)));
+			assertTrue(Double.isNaN(addTrace(bearing, bearing - 90, 5)));
+			// just outside the threshold of 40 degrees
+			assertTrue(Double.isNaN(addTrace(bearing, bearing + 41, 5)));
+			assertTrue(Double.isNaN(addTrace(bearing, bearing + 180 + 41, 5)));
+		}
+	}
+
+	public void testWrapAroundNorthAndSouth() {
+		// 350 and 10 degrees are 20 degrees apart
+		assertTrue(addTrace(350, 10, 5) > 0);
+		assertTrue(addTrace(-10, 370, 5) > 0);
+		// 170 and -170 degrees are 20 degrees apart
+		assertTrue(addTrace(170, -170, 5) > 0);
+		// 175 and -5 degrees are opposite
+		assertTrue(addTrace(175, -5, 5) < 0);
+	}
+
+	public void testTraceWithoutLengthRejected() {
+		setStreet(45);
+		CoordinateBuffer b = new CoordinateBuffer();
+		b.startPart();
+		b.add(X, Y, 100);
+		b.add(X, Y, 101);
+		samples.clear();
+		assertEquals(1, kernel.addTrace(street, b, samples));
+		assertTrue(samples.isEmpty());
+	}
+}
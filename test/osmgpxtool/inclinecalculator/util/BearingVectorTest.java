@@ -0,0 +1,136 @@
+package osmgpxtool.inclinecalculator.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the directions of {@link BearingVector} in all quadrants and across
+ * the wrap of longitudes and bearings.
+ *
+ */
+public class BearingVectorTest extends TestCase {
+	// the test segments are planar approximations of the bearing
+	private static final double DELTA = 1e-5;
+	private static final double DELTA_DEGREES = 1e-3;
+	// length of the test segments in degrees of latitude
+	private static final double LENGTH = 0.0001;
+
+	/**
+	 * @return a short segment starting at (x, y) heading towards bearing
+	 */
+	private static BearingVector segment(double x, double y, double bearing) {
+		double b = Math.toRadians(bearing);
+		double dx = Math.sin(b) * LENGTH / Math.cos(Math.toRadians(y));
+		double dy = Math.cos(b) * LENGTH;
+		BearingVector v = new BearingVector();
+		v.add(x, y, x + dx, y + dy);
+		return v;
+	}
+
+	private static double normalize(double bearing) {
+		double b = bearing % 360;
+		if (b > 180) {
+			b -= 360;
+		} else if (b <= -180) {
+			b += 360;
+		}
+		return b;
+	}
+
+	public void testBearingInAllQuadrants() {
+		for (int bearing = -180; bearing < 360; bearing += 15) {
+			BearingVector v = segment(8.6, 49.4, bearing);
+			double expected = normalize(bearing);
+			double actual = v.getBearing();
+			// 180 and -180 are the same direction
+			if (Math.abs(expected) == 180) {
+				actual = Math.abs(actual);
+				expected = 180;
+			}
+			assertEquals("bearing " + bearing, expected, actual, DELTA_DEGREES);
+		}
+	}
+
+	public void testCosAngleOfQuadrantPairs() {
+		double[] bearings = { 0, 30, 45, 90, 135, 170, 180, 190, 225, 270, 315, 350 };
+		for (double b1 : bearings) {
+			for (double b2 : bearings) {
+				double cos = segment(8.6, 49.4, b1).cosAngleTo(segment(8.6, 49.4, b2));
+				assertEquals(b1 + " to " + b2, Math.cos(Math.toRadians(b1 - b2)), cos, DELTA);
+			}
+		}
+	}
+
+	public void testSouthernAndWesternHemisphere() {
+		double[] bearings = { 20, 110, 200, 290 };
+		for (double b1 : bearings) {
+			for (double b2 : bearings) {
+				double cos = segment(-70.6, -33.4, b1).cosAngleTo(segment(-70.6, -33.4, b2));
+				assertEquals(b1 + " to " + b2, Math.cos(Math.toRadians(b1 - b2)), cos, DELTA);
+			}
+		}
+	}
+
+	public void testNorthAveragedAcrossZero() {
+		// 1 and 359 degrees average to north, not to south
+		BearingVector v = segment(8.6, 49.4, 1);
+		BearingVector other = segment(8.6, 49.4, 359);
+		v.add(8.6, 49.4, 8.6 + Math.sin(Math.toRadians(-1)) * LENGTH / Math.cos(Math.toRadians(49.4)),
+				49.4 + Math.cos(Math.toRadians(-1)) * LENGTH);
+		assertEquals(0, v.getBearing(), DELTA_DEGREES);
+		assertEquals(Math.cos(Math.toRadians(2)), segment(8.6, 49.4, 1).cosAngleTo(other), DELTA);
+	}
+
+	public void testSouthAveragedAcross180() {
+		// 179 and -179 degrees average to south, not to north
+		BearingVector v = new BearingVector();
+		for (double bearing : new double[] { 179, -179 }) {
+			double b = Math.toRadians(bearing);
+			v.add(8.6, 49.4, 8.6 + Math.sin(b) * LENGTH / Math.cos(Math.toRadians(49.4)), 49.4 + Math.cos(b) * LENGTH);
+		}
+		assertEquals(180, Math.abs(v.getBearing()), DELTA_DEGREES);
+		assertEquals(-1, v.cosAngleTo(segment(8.6, 49.4, 0)), DELTA);
+	}
+
+	public void testAntimeridian() {
+		// heading east across 180 degrees of longitude
+		BearingVector v = new BearingVector();
+		v.add(179.99995, 10, -179.99995, 10);
+		assertEquals(90, v.getBearing(), DELTA_DEGREES);
+		// heading west across 180 degrees of longitude
+		BearingVector w = new BearingVector();
+		w.add(-179.99995, 10, 179.99995, 10);
+		assertEquals(-90, w.getBearing(), DELTA_DEGREES);
+		assertEquals(-1, v.cosAngleTo(w), DELTA);
+	}
+
+	public void testLongitudesAbove180() {
+		// 359.99995 is the same meridian as -0.00005
+		BearingVector v = new BearingVector();
+		v.add(359.99995, 10, 0.00005, 10);
+		BearingVector w = new BearingVector();
+		w.add(-0.00005, 10, 0.00005, 10);
+		assertEquals(90, v.getBearing(), DELTA_DEGREES);
+		assertEquals(1, v.cosAngleTo(w), DELTA);
+	}
+
+	public void testEmptyVector() {
+		BearingVector empty = new BearingVector();
+		assertTrue(empty.isEmpty());
+		assertTrue(Double.isNaN(empty.getBearing()));
+		assertTrue(Double.isNaN(empty.cosAngleTo(segment(8.6, 49.4, 45))));
+		assertTrue(Double.isNaN(segment(8.6, 49.4, 45).cosAngleTo(empty)));
+		assertTrue(Double.isNaN(empty.cosAngleTo(empty)));
+
+		// a segment without length does not change the direction
+		empty.add(8.6, 49.4, 8.6, 49.4);
+		assertTrue(empty.isEmpty());
+		assertTrue(Double.isNaN(empty.cosAngleTo(segment(8.6, 49.4, 45))));
+	}
+
+	public void testClear() {
+		BearingVector v = segment(8.6, 49.4, 45);
+		v.clear();
+		assertTrue(v.isEmpty());
+		assertTrue(Double.isNaN(v.getBearing()));
+	}
+}
@@ -0,0 +1,97 @@
+package osmgpxtool.inclinecalculator.util;
+
+import java.util.Properties;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import osmgpxtool.inclinecalculator.InclineConfig;
+
+/**
+ * Checks that the vector segment math agrees with the scalar one within a
+ * tolerance, and that "segmentMath=vector" falls back to the scalar math if
+ * the Vector API is not available. The comparison is skipped, if
+ * VectorSegmentDistances is not compiled (profile "vector" of pom.xml) or
+ * the tests do not run with --add-modules jdk.incubator.vector.
+ *
+ */
+public class SegmentDistancesTest extends TestCase {
+	// meters, the vectorized sin, cos and atan2 differ in the last bits
+	private static final double DELTA = 1e-6;
+
+	private static SegmentDistances create(String segmentMath) throws Exception {
+		Properties p = new Properties();
+		p.load(SegmentDistancesTest.class.getResourceAsStream("/inclinecalculator.properties"));
+		p.setProperty("segmentMath", segmentMath);
+		return SegmentDistances.create(InclineConfig.create(p));
+	}
+
+	/**
+	 * @return a random walk of n points with steps of up to about 100 m
+	 */
+	private static double[][] trace(Random random, int n) {
+		double[] x = new double[n];
+		double[] y = new double[n];
+		x[0] = 8.6;
+		y[0] = 49.4;
+		for (int i = 1; i < n; i++) {
+			x[i] = x[i - 1] + (random.nextDouble() - 0.5) * 0.002;
+			y[i] = y[i - 1] + (random.nextDouble() - 0.5) * 0.002;
+		}
+		return new double[][] { x, y };
+	}
+
+	public void testScalarMatchesUtil() throws Exception {
+		SegmentDistances scalar = create(SegmentDistances.SCALAR);
+		assertEquals(SegmentDistances.SCALAR, scalar.getName());
+		double[][] t = trace(new Random(1), 20);
+		double[] out = new double[19];
+		scalar.compute(t[0], t[1], 0, 20, out);
+		for (int i = 0; i < 19; i++) {
+			assertEquals(Util.calculateOrthometricDistance(t[0][i], t[1][i], t[0][i + 1], t[1][i + 1]), out[i], 0);
+		}
+	}
+
+	public void testVectorMatchesScalar() throws Exception {
+		SegmentDistances vector = create(SegmentDistances.VECTOR);
+		if (!vector.getName().equals(SegmentDistances.VECTOR)) {
+			// Vector API not available
+			return;
+		}
+		SegmentDistances scalar = new ScalarSegmentDistances();
+		Random random = new Random(42);
+		// lengths around the vector width and offsets into the arrays
+		for (int n = 2; n <= 67; n++) {
+			double[][] t = trace(random, n + 3);
+			for (int start = 0; start <= 3; start += 3) {
+				double[] expected = new double[n - 1];
+				double[] actual = new double[n - 1];
+				scalar.compute(t[0], t[1], start, start + n, expected);
+				vector.compute(t[0], t[1], start, start + n, actual);
+				for (int i = 0; i < n - 1; i++) {
+					assertEquals("n=" + n + " start=" + start + " segment " + i, expected[i], actual[i], DELTA);
+				}
+			}
+		}
+	}
+
+	public void testVectorFallsBackToScalar() throws Exception {
+		SegmentDistances vector = create(SegmentDistances.VECTOR);
+		try {
+			Class.forName("jdk.incubator.vector.DoubleVector");
+			Class.forName("osmgpxtool.inclinecalculator.util.VectorSegmentDistances");
+		} catch (ClassNotFoundException e) {
+			assertTrue(vector instanceof ScalarSegmentDistances);
+			return;
+		}
+		assertEquals(SegmentDistances.VECTOR, vector.getName());
+	}
+
+	public void testWrongSegmentMath() throws Exception {
+		try {
+			create("simd");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}